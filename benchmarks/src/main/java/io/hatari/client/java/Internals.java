@@ -0,0 +1,26 @@
+package io.hatari.client.java;
+
+import io.hatari.client.java.exceptions.HatariException;
+
+import java.util.Map;
+
+/**
+ * Exposes the package-private steps of {@link HatariClient#addEvent(String, java.util.Map)} to the benchmarks, which
+ * live in their own package.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class Internals {
+
+    private Internals() {
+    }
+
+    /**
+     * Validates an event and merges in the global properties, without queueing it.
+     */
+    public static Map<String, Object> buildEvent(HatariClient client, String eventCollection,
+                                                 Map<String, Object> event) throws HatariException {
+        return client.validateAndBuildEvent(eventCollection, event, null);
+    }
+}
@@ -0,0 +1,114 @@
+package io.hatari.client.java.benchmarks;
+
+import io.hatari.client.java.HatariClient;
+import io.hatari.client.java.exceptions.HatariException;
+import io.hatari.client.java.io.WireFormat;
+import io.hatari.client.java.testkit.HatariStubServer;
+import io.hatari.client.java.util.UploadEventCallback;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link HatariClient#addEvent(String, java.util.Map, java.util.Map, UploadEventCallback)} against a
+ * {@link HatariStubServer}: how many events per second get delivered with a bounded number in flight, and how long a
+ * single event takes from being added until its callback hears that it was delivered, in each {@link WireFormat}.
+ * How many bytes per request the server received is printed at the end of each run.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AddEventBenchmark {
+
+    private static final int MAX_IN_FLIGHT = 256;
+
+    @Param({"json", "smile", "cbor"})
+    public String format;
+
+    private HatariStubServer server;
+    private HatariClient client;
+    private Map<String, Object> event;
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+    private final UploadEventCallback release = new UploadEventCallback() {
+        @Override
+        public void onSuccess() {
+            inFlight.release();
+        }
+
+        @Override
+        public void onError(String responseBody) {
+            inFlight.release();
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new HatariStubServer();
+        // the benchmark only counts bytes, and keeping millions of events and ids would skew it
+        server.setRecordLimit(0);
+        server.setDuplicateTracking(false);
+        client = new HatariClient("benchmark", "benchmark");
+        client.setEndpoints(server.getAddress());
+        client.setGlobalProperties(Events.globalProperties());
+        client.setWireFormat("smile".equals(format) ? WireFormat.SMILE : "cbor".equals(format) ? WireFormat.CBOR
+                : WireFormat.JSON);
+        event = Events.typical();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        inFlight.acquire(MAX_IN_FLIGHT);
+        client.close();
+        System.out.println(format + ": " + server.getRequestBytes() / Math.max(1, server.getRequestCount())
+                + " bytes per request");
+        server.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(4)
+    public void throughput() throws HatariException, InterruptedException {
+        inFlight.acquire();
+        client.addEvent("transactions", event, null, release);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency() throws HatariException, InterruptedException {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        client.addEvent("transactions", event, null, new UploadEventCallback() {
+            @Override
+            public void onSuccess() {
+                delivered.countDown();
+            }
+
+            @Override
+            public void onError(String responseBody) {
+                delivered.countDown();
+            }
+        });
+        delivered.await();
+    }
+}
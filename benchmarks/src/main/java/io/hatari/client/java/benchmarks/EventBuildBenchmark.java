@@ -0,0 +1,86 @@
+package io.hatari.client.java.benchmarks;
+
+import io.hatari.client.java.HatariClient;
+import io.hatari.client.java.Internals;
+import io.hatari.client.java.data.CacheableGlobalPropertiesEvaluator;
+import io.hatari.client.java.data.GlobalPropertiesEvaluator;
+import io.hatari.client.java.exceptions.HatariException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long it takes to build an event, i.e. validate it and merge in the global properties, and to build and
+ * serialize it, depending on where the global properties come from.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventBuildBenchmark {
+
+    /**
+     * none: no global properties; static: a global properties map; evaluator: an evaluator that builds a new map
+     * per event; cached: the same evaluator, cached for a minute.
+     */
+    @Param({"none", "static", "evaluator", "cached"})
+    public String globals;
+
+    private HatariClient client;
+    private Map<String, Object> event;
+
+    @Setup
+    public void setUp() {
+        client = new HatariClient("benchmark", "benchmark");
+        if ("static".equals(globals)) {
+            client.setGlobalProperties(Events.globalProperties());
+        } else if ("evaluator".equals(globals)) {
+            client.setGlobalPropertiesEvaluator(new GlobalPropertiesEvaluator() {
+                @Override
+                public Map<String, Object> getGlobalProperties(String eventCollection) {
+                    return Events.globalProperties();
+                }
+            });
+        } else if ("cached".equals(globals)) {
+            client.setGlobalPropertiesEvaluator(new CacheableGlobalPropertiesEvaluator() {
+                @Override
+                public Map<String, Object> getGlobalProperties(String eventCollection) {
+                    return Events.globalProperties();
+                }
+
+                @Override
+                public long getCacheTtlMillis(String eventCollection) {
+                    return 60000;
+                }
+            });
+        }
+        event = Events.typical();
+    }
+
+    @Benchmark
+    public Map<String, Object> build() throws HatariException {
+        return Internals.buildEvent(client, "transactions", event);
+    }
+
+    @Benchmark
+    public byte[] buildAndSerialize() throws HatariException, IOException {
+        return HatariClient.MAPPER.writeValueAsBytes(Internals.buildEvent(client, "transactions", event));
+    }
+}
@@ -0,0 +1,96 @@
+package io.hatari.client.java.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The events the benchmarks work with, shaped like the ones we see in production.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+final class Events {
+
+    private Events() {
+    }
+
+    /**
+     * A typical transaction event: a dozen flat properties and one small nested object.
+     */
+    static Map<String, Object> typical() {
+        Map<String, Object> card = new HashMap<String, Object>();
+        card.put("type", "visa");
+        card.put("bin", "411111");
+        card.put("country", "DE");
+
+        Map<String, Object> event = new HashMap<String, Object>();
+        event.put("transaction_id", "tx-8f14e45fceea167a5a36dedd4bea2543");
+        event.put("user_id", "u-1679091c5a880faf6fb5e6087eb1b2dc");
+        event.put("amount", 42.5);
+        event.put("currency", "EUR");
+        event.put("items", 3);
+        event.put("ip", "203.0.113.42");
+        event.put("user_agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)");
+        event.put("email_domain", "example.com");
+        event.put("first_purchase", false);
+        event.put("created_at", new Date(1400000000000L));
+        event.put("tags", Arrays.asList("web", "checkout", "promo"));
+        event.put("card", card);
+        return event;
+    }
+
+    /**
+     * A large event: the typical one plus a basket of 100 line items.
+     */
+    static Map<String, Object> large() {
+        Map<String, Object> event = typical();
+        List<Object> basket = new ArrayList<Object>();
+        for (int i = 0; i < 100; i++) {
+            Map<String, Object> item = new HashMap<String, Object>();
+            item.put("sku", "sku-" + i);
+            item.put("name", "Item number " + i + " with a reasonably descriptive name");
+            item.put("price", 9.99 + i);
+            item.put("quantity", 1 + i % 3);
+            basket.add(item);
+        }
+        event.put("basket", basket);
+        return event;
+    }
+
+    /**
+     * An event whose properties nest objects and lists of objects the given number of levels deep.
+     */
+    static Map<String, Object> nested(int depth) {
+        Map<String, Object> event = typical();
+        Map<String, Object> level = event;
+        for (int i = 0; i < depth; i++) {
+            Map<String, Object> child = new HashMap<String, Object>();
+            child.put("level", i);
+            child.put("label", "level " + i);
+            child.put("siblings", Arrays.<Object>asList(flat(), flat()));
+            level.put("child", child);
+            level = child;
+        }
+        return event;
+    }
+
+    static Map<String, Object> globalProperties() {
+        Map<String, Object> properties = new HashMap<String, Object>();
+        properties.put("app_version", "3.14.1");
+        properties.put("platform", "server");
+        properties.put("region", "eu-central-1");
+        properties.put("build", 20140513);
+        return properties;
+    }
+
+    private static Map<String, Object> flat() {
+        Map<String, Object> flat = new HashMap<String, Object>();
+        flat.put("id", 7);
+        flat.put("name", "sibling");
+        return flat;
+    }
+}
@@ -0,0 +1,72 @@
+package io.hatari.client.java.benchmarks;
+
+import io.hatari.client.java.HatariClient;
+import io.hatari.client.java.Internals;
+import io.hatari.client.java.exceptions.HatariException;
+import io.hatari.client.java.io.WireFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long it takes to serialize a built event, global properties included, to JSON with
+ * {@link HatariClient#MAPPER}, and to each {@link WireFormat}. The size of the event in each format is printed
+ * when the benchmark starts.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"typical", "large"})
+    public String size;
+
+    @Param({"json", "smile", "cbor"})
+    public String format;
+
+    private Map<String, Object> event;
+    private WireFormat wireFormat;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+
+    @Setup
+    public void setUp() throws HatariException, IOException {
+        HatariClient client = new HatariClient("benchmark", "benchmark");
+        client.setGlobalProperties(Events.globalProperties());
+        Map<String, Object> raw = "large".equals(size) ? Events.large() : Events.typical();
+        event = Internals.buildEvent(client, "transactions", raw);
+        wireFormat = "smile".equals(format) ? WireFormat.SMILE : "cbor".equals(format) ? WireFormat.CBOR
+                : WireFormat.JSON;
+        System.out.println(format + " " + size + ": " + encode().size() + " bytes");
+    }
+
+    @Benchmark
+    public byte[] mapper() throws IOException {
+        return HatariClient.MAPPER.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream encode() throws IOException {
+        out.reset();
+        wireFormat.writeValue(out, event);
+        return out;
+    }
+}
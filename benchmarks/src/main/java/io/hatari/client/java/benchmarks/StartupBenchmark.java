@@ -0,0 +1,154 @@
+package io.hatari.client.java.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.hatari.client.java.HatariClient;
+import io.hatari.client.java.exceptions.HatariException;
+import io.hatari.client.java.util.UploadEventCallback;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * What a freshly started JVM goes through before its first event is delivered, and how much of that
+ * {@link HatariClient#warmUp()} takes off the first event. Every measurement is a single shot in a new fork, so it
+ * includes loading the client's and Jackson's classes, building serializers and opening the first connection:
+ * <ul>
+ * <li><code>newClient</code>: creating the first client.</li>
+ * <li><code>firstEvent</code>: creating a client, adding an event and waiting until it was delivered, as a service
+ * does that takes traffic right after it started.</li>
+ * <li><code>warmUp</code>: creating a client and warming it up, as a service does at startup.</li>
+ * <li><code>firstEventAfterWarmUp</code>: adding an event to a client that was warmed up in the setup and waiting
+ * until it was delivered.</li>
+ * </ul>
+ * The server is a bare JDK HTTP server rather than the testkit's stub server, which uses Jackson itself and would
+ * load half of what is measured before the measurement starts.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Api {
+        private HttpServer server;
+        private String address;
+        // the client a benchmark created, closed after the measurement
+        private HatariClient client;
+
+        @Setup
+        public void setUp() throws IOException {
+            // like the stub server, so small responses aren't held back by Nagle's algorithm
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    InputStream in = exchange.getRequestBody();
+                    while (in.read() != -1) {
+                        // drain the body, so the connection can be reused
+                    }
+                    if ("HEAD".equals(exchange.getRequestMethod())) {
+                        exchange.sendResponseHeaders(200, -1);
+                    } else {
+                        byte[] body = "{\"created\":true}".getBytes("UTF-8");
+                        exchange.sendResponseHeaders(201, body.length);
+                        exchange.getResponseBody().write(body);
+                    }
+                    exchange.close();
+                }
+            });
+            server.start();
+            address = "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        @TearDown
+        public void tearDown() {
+            if (client != null) {
+                client.close();
+            }
+            server.stop(0);
+        }
+
+        private HatariClient newClient() {
+            client = new HatariClient("benchmark", "benchmark");
+            client.setEndpoints(address);
+            return client;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class WarmClient {
+        private HatariClient client;
+
+        @Setup
+        public void setUp(Api api) {
+            client = api.newClient();
+            if (!client.warmUp()) {
+                throw new IllegalStateException("The client could not be warmed up.");
+            }
+        }
+    }
+
+    @Benchmark
+    public HatariClient newClient(Api api) {
+        return api.newClient();
+    }
+
+    @Benchmark
+    public boolean firstEvent(Api api) throws HatariException, InterruptedException {
+        return deliver(api.newClient());
+    }
+
+    @Benchmark
+    public boolean warmUp(Api api) {
+        return api.newClient().warmUp();
+    }
+
+    @Benchmark
+    public boolean firstEventAfterWarmUp(WarmClient warmClient) throws HatariException, InterruptedException {
+        return deliver(warmClient.client);
+    }
+
+    private static boolean deliver(HatariClient client) throws HatariException, InterruptedException {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final AtomicBoolean success = new AtomicBoolean();
+        Map<String, Object> event = Events.typical();
+        client.addEvent("transactions", event, null, new UploadEventCallback() {
+            @Override
+            public void onSuccess() {
+                success.set(true);
+                delivered.countDown();
+            }
+
+            @Override
+            public void onError(String responseBody) {
+                delivered.countDown();
+            }
+        });
+        delivered.await();
+        return success.get();
+    }
+}
@@ -0,0 +1,55 @@
+package io.hatari.client.java.benchmarks;
+
+import io.hatari.client.java.exceptions.InvalidEventException;
+import io.hatari.client.java.validation.EventValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long it takes to validate an event, depending on how deeply it nests and whether approved property names
+ * are remembered.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    @Param({"0", "2", "6"})
+    public int depth;
+
+    @Param({"true", "false"})
+    public boolean cacheNames;
+
+    private EventValidator validator;
+    private Map<String, Object> event;
+
+    @Setup
+    public void setUp() {
+        validator = new EventValidator(cacheNames ? 4096 : 0);
+        event = Events.nested(depth);
+    }
+
+    @Benchmark
+    public Map<String, Object> validate() throws InvalidEventException {
+        validator.validateEvent("transactions", event);
+        return event;
+    }
+}
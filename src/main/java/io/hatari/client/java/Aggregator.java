@@ -0,0 +1,311 @@
+package io.hatari.client.java;
+
+import io.hatari.client.java.exceptions.HatariException;
+import io.hatari.client.java.exceptions.InvalidEventException;
+import io.hatari.client.java.metrics.EventOutcome;
+import io.hatari.client.java.metrics.QuantileSketch;
+import io.hatari.client.java.util.GeneralUtil;
+import io.hatari.client.java.util.HatariConfig;
+import io.hatari.client.java.util.HatariLogging;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rolls up {@link HatariClient#count(String, Map)} and {@link HatariClient#record(String, Map, double)} for a
+ * client, and sends one summary event per series, that is per collection and set of dimensions, and window.
+ * <p/>
+ * Every series of the current window has striped counters, so threads counting the same thing don't contend. At
+ * the end of a window, the next one takes over; the summaries are built once the threads that were still
+ * counting into the old window are done with it. A summary event has the series' dimensions as its properties,
+ * and an <code>aggregate</code> property with the count, and for recorded values their sum, minimum, maximum and
+ * {@link HatariConfig#AGGREGATION_PERCENTILES percentiles}. Its timestamp is the start of the window.
+ * <p/>
+ * Summaries skip the collection's traffic rules and the duplicate filter, since each stands for many events.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+final class Aggregator {
+
+    static final String AGGREGATE_PROPERTY = "aggregate";
+
+    private static final ScheduledExecutorService WINDOW_TIMER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "hatari-aggregation");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final HatariClient hatariClient;
+    private final int maxSeries;
+    private final double relativeAccuracy;
+    private final double[] percentiles;
+    private final String[] percentileNames;
+    private final ScheduledFuture<?> windowTask;
+    private volatile Window current;
+
+    Aggregator(HatariClient hatariClient, long windowMillis, int maxSeries, double relativeAccuracy,
+               double[] percentiles) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("An aggregation window must be longer than 0ms: " + windowMillis);
+        }
+        this.hatariClient = hatariClient;
+        this.maxSeries = maxSeries;
+        this.relativeAccuracy = relativeAccuracy;
+        this.percentiles = percentiles.clone();
+        this.percentileNames = new String[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            // e.g. p99_9, since property names can't have periods
+            String percentile = percentiles[i] == Math.rint(percentiles[i]) ? String.valueOf((long) percentiles[i])
+                    : String.valueOf(percentiles[i]).replace('.', '_');
+            percentileNames[i] = "p" + percentile;
+        }
+        long now = System.currentTimeMillis();
+        this.current = new Window(now);
+        // windows end on multiples of their length, so summaries from many machines line up
+        this.windowTask = WINDOW_TIMER.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    HatariLogging.log(GeneralUtil.getStackTraceFromThrowable(e));
+                }
+            }
+        }, windowMillis - now % windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Counts occurrences in a series.
+     */
+    void count(String eventCollection, Map<String, Object> dimensions, long increment) throws HatariException {
+        Window window = enter();
+        try {
+            Series series = window.series(eventCollection, dimensions);
+            if (series != null) {
+                series.count.add(increment);
+            }
+        } finally {
+            window.exited.increment();
+        }
+    }
+
+    /**
+     * Counts a value in a series and adds it to the series' distribution.
+     */
+    void record(String eventCollection, Map<String, Object> dimensions, double value) throws HatariException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new InvalidEventException("Only finite values can be recorded: " + value);
+        }
+        Window window = enter();
+        try {
+            Series series = window.series(eventCollection, dimensions);
+            if (series != null) {
+                series.record(value);
+            }
+        } finally {
+            window.exited.increment();
+        }
+    }
+
+    /**
+     * Ends the current window and sends a summary for each of its series.
+     */
+    synchronized void flush() {
+        Window window = current;
+        current = new Window(System.currentTimeMillis());
+        // threads that entered the old window before it was replaced finish counting into it
+        while (window.exited.sum() != window.entered.sum()) {
+            Thread.yield();
+        }
+        long windowMillis = System.currentTimeMillis() - window.startMillis;
+        for (Series series : window.series.values()) {
+            long count = series.count.sum();
+            if (count == 0) {
+                continue;
+            }
+            hatariClient.getMetrics().recordEvents(series.eventCollection, EventOutcome.AGGREGATED, count);
+            try {
+                hatariClient.enqueueSummaryEvent(series.eventCollection, summarize(series, count, windowMillis),
+                        window.startMillis);
+            } catch (HatariException e) {
+                HatariLogging.log("The summary of %s could not be queued: %s", series.eventCollection,
+                        e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sends the current window and stops starting new ones.
+     */
+    void close() {
+        windowTask.cancel(false);
+        flush();
+    }
+
+    private Window enter() {
+        while (true) {
+            Window window = current;
+            window.entered.increment();
+            if (window == current) {
+                return window;
+            }
+            // the window was just replaced; it may be summarized already
+            window.exited.increment();
+        }
+    }
+
+    private Map<String, Object> summarize(Series series, long count, long windowMillis) {
+        Map<String, Object> aggregate = new LinkedHashMap<String, Object>();
+        aggregate.put("count", count);
+        QuantileSketch sketch = series.sketch;
+        if (sketch != null) {
+            double min = Double.longBitsToDouble(series.min.get());
+            double max = Double.longBitsToDouble(series.max.get());
+            aggregate.put("sum", series.sum.sum());
+            aggregate.put("min", min);
+            aggregate.put("max", max);
+            double[] quantiles = sketch.getQuantiles(percentiles);
+            for (int i = 0; i < quantiles.length; i++) {
+                // the sketch's estimate may lie a little beyond the values that were actually seen
+                aggregate.put(percentileNames[i], Math.min(max, Math.max(min, quantiles[i])));
+            }
+        }
+        aggregate.put("window_millis", windowMillis);
+        Map<String, Object> event = new HashMap<String, Object>(series.dimensions);
+        event.put(AGGREGATE_PROPERTY, aggregate);
+        return event;
+    }
+
+    private final class Window {
+        private final long startMillis;
+        private final ConcurrentHashMap<SeriesKey, Series> series = new ConcurrentHashMap<SeriesKey, Series>();
+        // threads that started and finished counting into the window
+        private final LongAdder entered = new LongAdder();
+        private final LongAdder exited = new LongAdder();
+        private final AtomicBoolean overflowLogged = new AtomicBoolean();
+
+        private Window(long startMillis) {
+            this.startMillis = startMillis;
+        }
+
+        /**
+         * @return the series, created and checked if it is new to the window, or null if the window is full.
+         */
+        private Series series(String eventCollection, Map<String, Object> dimensions) throws HatariException {
+            if (dimensions == null) {
+                dimensions = Collections.emptyMap();
+            }
+            Series existing = series.get(new SeriesKey(eventCollection, dimensions));
+            if (existing != null) {
+                return existing;
+            }
+            hatariClient.validateEventCollection(eventCollection);
+            if (!dimensions.isEmpty()) {
+                if (dimensions.containsKey(AGGREGATE_PROPERTY)) {
+                    throw new InvalidEventException("Dimensions cannot contain a property named '"
+                            + AGGREGATE_PROPERTY + "'.");
+                }
+                hatariClient.getEventValidator().validateEvent(eventCollection, dimensions);
+            }
+            // a racy size check may overshoot by a few series, which is fine for a bound
+            if (series.size() >= maxSeries) {
+                hatariClient.getMetrics().recordEvents(eventCollection, EventOutcome.DROPPED, 1);
+                if (overflowLogged.compareAndSet(false, true)) {
+                    HatariLogging.log("Aggregation has %d series in this window already, so new ones are dropped.",
+                            maxSeries);
+                }
+                return null;
+            }
+            // a copy, so the caller may reuse or change the map
+            Map<String, Object> ownDimensions = new HashMap<String, Object>(dimensions);
+            Series newSeries = new Series(eventCollection, ownDimensions);
+            existing = series.putIfAbsent(new SeriesKey(eventCollection, ownDimensions), newSeries);
+            return existing == null ? newSeries : existing;
+        }
+    }
+
+    private final class Series {
+        private final String eventCollection;
+        private final Map<String, Object> dimensions;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+        private final AtomicLong min = new AtomicLong(Double.doubleToLongBits(Double.POSITIVE_INFINITY));
+        private final AtomicLong max = new AtomicLong(Double.doubleToLongBits(Double.NEGATIVE_INFINITY));
+        // only for series with recorded values
+        private volatile QuantileSketch sketch;
+
+        private Series(String eventCollection, Map<String, Object> dimensions) {
+            this.eventCollection = eventCollection;
+            this.dimensions = dimensions;
+        }
+
+        private void record(double value) {
+            QuantileSketch sketch = this.sketch;
+            if (sketch == null) {
+                synchronized (this) {
+                    sketch = this.sketch;
+                    if (sketch == null) {
+                        this.sketch = sketch = new QuantileSketch(relativeAccuracy);
+                    }
+                }
+            }
+            count.increment();
+            sum.add(value);
+            sketch.record(value);
+            long bits = Double.doubleToLongBits(value);
+            long currentMin = min.get();
+            while (value < Double.longBitsToDouble(currentMin) && !min.compareAndSet(currentMin, bits)) {
+                currentMin = min.get();
+            }
+            long currentMax = max.get();
+            while (value > Double.longBitsToDouble(currentMax) && !max.compareAndSet(currentMax, bits)) {
+                currentMax = max.get();
+            }
+        }
+    }
+
+    private static final class SeriesKey {
+        private final String eventCollection;
+        private final Map<String, Object> dimensions;
+        private final int hash;
+
+        private SeriesKey(String eventCollection, Map<String, Object> dimensions) {
+            this.eventCollection = eventCollection;
+            this.dimensions = dimensions;
+            this.hash = 31 * Objects.hashCode(eventCollection) + dimensions.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SeriesKey)) {
+                return false;
+            }
+            SeriesKey other = (SeriesKey) o;
+            return hash == other.hash && Objects.equals(eventCollection, other.eventCollection)
+                    && dimensions.equals(other.dimensions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.hatari.client.java;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The outcome of {@link HatariClient#addEvents(String, Iterable)}, for all events at once instead of one callback
+ * per event. Events are identified by their position in the input, starting at 0.
+ * <p/>
+ * When <code>addEvents</code> returns, every event was either accepted, i.e. handed to the upload pipeline, or
+ * rejected, e.g. because it was invalid. Accepted events are then delivered in the background; call
+ * {@link #awaitDelivery(long)} to wait until the Hatari API answered for all of them, after which
+ * {@link #getFailures()} holds the ones it didn't take.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class BulkAddReport {
+
+    private final String eventCollection;
+    private final AtomicLong acceptedEvents = new AtomicLong();
+    private final AtomicLong deliveredEvents = new AtomicLong();
+    private final AtomicLong pendingEvents = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, String> rejections = new ConcurrentSkipListMap<Long, String>();
+    private final ConcurrentSkipListMap<Long, String> failures = new ConcurrentSkipListMap<Long, String>();
+    private final Object deliveryLock = new Object();
+
+    BulkAddReport(String eventCollection) {
+        this.eventCollection = eventCollection;
+    }
+
+    public String getEventCollection() {
+        return eventCollection;
+    }
+
+    /**
+     * @return how many events were read from the input.
+     */
+    public long getEventCount() {
+        return acceptedEvents.get() + rejections.size();
+    }
+
+    /**
+     * @return how many events were handed to the upload pipeline.
+     */
+    public long getAcceptedCount() {
+        return acceptedEvents.get();
+    }
+
+    /**
+     * @return how many events were never handed to the upload pipeline.
+     */
+    public long getRejectedCount() {
+        return rejections.size();
+    }
+
+    /**
+     * @return why each rejected event was rejected, by its index in the input.
+     */
+    public SortedMap<Long, String> getRejections() {
+        return Collections.unmodifiableSortedMap(rejections);
+    }
+
+    /**
+     * @return how many accepted events the Hatari API took so far.
+     */
+    public long getDeliveredCount() {
+        return deliveredEvents.get();
+    }
+
+    /**
+     * @return how many accepted events failed for good so far.
+     */
+    public long getFailedCount() {
+        return failures.size();
+    }
+
+    /**
+     * @return why each failed event failed, by its index in the input: the error the API reported for it, or why
+     * its request failed.
+     */
+    public SortedMap<Long, String> getFailures() {
+        return Collections.unmodifiableSortedMap(failures);
+    }
+
+    /**
+     * @return how many accepted events are still waiting for an answer.
+     */
+    public long getPendingCount() {
+        return pendingEvents.get();
+    }
+
+    /**
+     * Waits until every accepted event was delivered or failed for good.
+     *
+     * @param timeoutMillis How long to wait at most.
+     * @return true if no event is pending anymore, false if the timeout passed first or the thread was interrupted.
+     */
+    public boolean awaitDelivery(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (deliveryLock) {
+            while (pendingEvents.get() > 0) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    return false;
+                }
+                try {
+                    deliveryLock.wait(remainingMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    void reject(long index, String reason) {
+        rejections.put(index, reason);
+    }
+
+    void accept(int count) {
+        // pending first, so an early answer can't take it below zero
+        pendingEvents.addAndGet(count);
+        acceptedEvents.addAndGet(count);
+    }
+
+    // an accepted event that couldn't be queued after all
+    void unaccept(long index, String reason) {
+        acceptedEvents.decrementAndGet();
+        rejections.put(index, reason);
+        settled();
+    }
+
+    void delivered() {
+        deliveredEvents.incrementAndGet();
+        settled();
+    }
+
+    void failed(long index, String reason) {
+        failures.put(index, reason == null ? "" : reason);
+        settled();
+    }
+
+    private void settled() {
+        if (pendingEvents.decrementAndGet() == 0) {
+            synchronized (deliveryLock) {
+                deliveryLock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BulkAddReport{eventCollection=" + eventCollection + ", accepted=" + getAcceptedCount()
+                + ", rejected=" + getRejectedCount() + ", delivered=" + getDeliveredCount()
+                + ", failed=" + getFailedCount() + ", pending=" + getPendingCount() + "}";
+    }
+}
@@ -0,0 +1,226 @@
+package io.hatari.client.java;
+
+import io.hatari.client.java.exceptions.HatariException;
+import io.hatari.client.java.exceptions.QueueFullException;
+import io.hatari.client.java.io.BatchCallback;
+import io.hatari.client.java.io.HatariBatchRequestRunnable;
+import io.hatari.client.java.metrics.EventOutcome;
+import io.hatari.client.java.metrics.HatariMetrics;
+import io.hatari.client.java.metrics.LatencyType;
+import io.hatari.client.java.util.HatariConfig;
+import io.hatari.client.java.util.UploadResponseCallback;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Adds a large number of events to one collection for {@link HatariClient#addEvents(String, Iterable)}.
+ * <p/>
+ * The input is read in chunks of {@link HatariConfig#BULK_CHUNK_EVENTS} events on the calling thread, since
+ * iterators can't be shared. Each chunk is validated and serialized on the fork-join common pool if it is big
+ * enough to be worth it, then cut into batches of at most {@link HatariConfig#BATCH_MAX_EVENTS} events and
+ * {@link HatariConfig#BATCH_MAX_BYTES} bytes for the upload queue. At most
+ * {@link HatariConfig#BULK_MAX_PENDING_BATCHES} batches wait for an answer at a time; once they do, reading more
+ * of the input waits too, so a backfill can't outrun the API or fill the upload queue. With a spill directory the
+ * events go to disk instead, which takes care of batching by itself.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+final class BulkEventLoader {
+
+    // how many events a fork-join task validates without splitting further
+    private static final int LEAF_EVENTS = 128;
+
+    private final HatariClient hatariClient;
+    private final String eventCollection;
+    private final BulkAddReport report;
+    private final Semaphore pendingBatches = new Semaphore(HatariConfig.BULK_MAX_PENDING_BATCHES);
+
+    BulkEventLoader(HatariClient hatariClient, String eventCollection) {
+        this.hatariClient = hatariClient;
+        this.eventCollection = eventCollection;
+        this.report = new BulkAddReport(eventCollection);
+    }
+
+    BulkAddReport load(Iterator<? extends Map<String, Object>> events) throws HatariException {
+        hatariClient.validateEventCollection(eventCollection);
+        List<Map<String, Object>> chunk = new ArrayList<Map<String, Object>>(HatariConfig.BULK_CHUNK_EVENTS);
+        long firstIndex = 0;
+        while (events.hasNext()) {
+            chunk.add(events.next());
+            if (chunk.size() == HatariConfig.BULK_CHUNK_EVENTS || !events.hasNext()) {
+                addChunk(firstIndex, chunk);
+                firstIndex += chunk.size();
+                chunk.clear();
+            }
+        }
+        return report;
+    }
+
+    private void addChunk(long firstIndex, List<Map<String, Object>> chunk) {
+        byte[][] serialized = new byte[chunk.size()][];
+        String[] problems = new String[chunk.size()];
+        PrepareTask prepare = new PrepareTask(chunk, serialized, problems, 0, chunk.size());
+        if (chunk.size() >= HatariConfig.BULK_PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(prepare);
+        } else {
+            prepare.compute();
+        }
+
+        boolean spilling = hatariClient.getSpillDirectory() != null;
+        List<byte[]> batch = new ArrayList<byte[]>();
+        List<Long> indexes = new ArrayList<Long>();
+        int batchBytes = 0;
+        for (int i = 0; i < serialized.length; i++) {
+            long index = firstIndex + i;
+            if (serialized[i] == null) {
+                report.reject(index, problems[i]);
+            } else if (spilling) {
+                addToSpillStore(index, serialized[i]);
+            } else {
+                batch.add(serialized[i]);
+                indexes.add(index);
+                batchBytes += serialized[i].length;
+                if (batch.size() >= HatariConfig.BATCH_MAX_EVENTS || batchBytes >= HatariConfig.BATCH_MAX_BYTES) {
+                    sendBatch(batch, indexes);
+                    batch = new ArrayList<byte[]>();
+                    indexes = new ArrayList<Long>();
+                    batchBytes = 0;
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            sendBatch(batch, indexes);
+        }
+    }
+
+    private void addToSpillStore(final long index, byte[] event) {
+        report.accept(1);
+        try {
+            hatariClient.addSerializedEvent(eventCollection, event, new UploadResponseCallback() {
+                @Override
+                public void onSuccess() {
+                    onResponse(0, true, null);
+                }
+
+                @Override
+                public void onError(String responseBody) {
+                    onResponse(0, false, responseBody);
+                }
+
+                @Override
+                public void onResponse(int statusCode, boolean success, String responseBody) {
+                    if (success) {
+                        report.delivered();
+                    } else {
+                        report.failed(index, responseBody);
+                    }
+                }
+            });
+        } catch (HatariException e) {
+            report.unaccept(index, e.getMessage());
+        }
+    }
+
+    private void sendBatch(List<byte[]> events, List<Long> indexes) {
+        // this is where a backfill waits for the API to catch up
+        pendingBatches.acquireUninterruptibly();
+        report.accept(events.size());
+        BulkBatchCallback callback = new BulkBatchCallback(indexes);
+        try {
+            hatariClient.enqueue(eventCollection, new HatariBatchRequestRunnable(hatariClient,
+                    hatariClient.getUploadQueue(), eventCollection, events, callback));
+        } catch (QueueFullException e) {
+            pendingBatches.release();
+            for (Long index : indexes) {
+                report.unaccept(index, e.getMessage());
+            }
+        }
+    }
+
+    private class PrepareTask extends RecursiveAction {
+        private final List<Map<String, Object>> events;
+        private final byte[][] serialized;
+        private final String[] problems;
+        private final int from;
+        private final int to;
+
+        private PrepareTask(List<Map<String, Object>> events, byte[][] serialized, String[] problems, int from,
+                            int to) {
+            this.events = events;
+            this.serialized = serialized;
+            this.problems = problems;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_EVENTS) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PrepareTask(events, serialized, problems, from, middle),
+                        new PrepareTask(events, serialized, problems, middle, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                try {
+                    serialized[i] = hatariClient.serializeEvent(
+                            hatariClient.validateAndBuildEvent(eventCollection, events.get(i), null));
+                } catch (HatariException e) {
+                    problems[i] = e.getMessage();
+                } catch (RuntimeException e) {
+                    problems[i] = "The event could not be added: " + e;
+                }
+            }
+        }
+    }
+
+    private class BulkBatchCallback implements BatchCallback {
+        private final List<Long> indexes;
+        private final long startNanos = System.nanoTime();
+        private int settled;
+
+        private BulkBatchCallback(List<Long> indexes) {
+            this.indexes = indexes;
+        }
+
+        @Override
+        public void onEventResult(int index, int statusCode, boolean success, String error) {
+            settle(index, success, error);
+            if (++settled == indexes.size()) {
+                pendingBatches.release();
+            }
+        }
+
+        @Override
+        public void onBatchError(int statusCode, String reason) {
+            for (int i = 0; i < indexes.size(); i++) {
+                settle(i, false, reason);
+            }
+            pendingBatches.release();
+        }
+
+        @Override
+        public void onBatchDropped(String reason) {
+            hatariClient.getMetrics().recordEvents(eventCollection, EventOutcome.DROPPED, indexes.size());
+            onBatchError(0, reason);
+        }
+
+        private void settle(int index, boolean success, String error) {
+            HatariMetrics metrics = hatariClient.getMetrics();
+            metrics.recordLatency(LatencyType.ENQUEUE_TO_ACK, System.nanoTime() - startNanos);
+            metrics.recordEvents(eventCollection, success ? EventOutcome.SENT : EventOutcome.FAILED, 1);
+            if (success) {
+                report.delivered();
+            } else {
+                report.failed(indexes.get(index), error);
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package io.hatari.client.java;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import io.hatari.client.java.data.SerializedProperties;
+import io.hatari.client.java.dedup.EventIds;
+import io.hatari.client.java.util.HatariConstants;
+import io.hatari.client.java.util.HatariTimestamps;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * An event as it will be sent: the user's properties, the global properties and the <code>hatari</code> block,
+ * merged only when the event is serialized.
+ * <p/>
+ * Nothing is copied when the event is built. The global properties are spliced in from their
+ * {@link SerializedProperties}, with the same precedence as before: the event's own properties win over those of
+ * the {@link io.hatari.client.java.data.GlobalPropertiesEvaluator}, which win over
+ * {@link HatariClient#getGlobalProperties()}. Reading the event as a Map still works, but builds the merged map
+ * on first use.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+class ComposedEvent extends AbstractMap<String, Object> implements JsonSerializable {
+
+    private static final SerializableString HATARI = new SerializedString("hatari");
+    private static final SerializableString TIMESTAMP = new SerializedString("timestamp");
+    private static final SerializableString SAMPLE_RATE = new SerializedString(HatariConstants.SAMPLE_RATE_PARAM);
+    private static final SerializableString ID = new SerializedString(HatariConstants.ID_PARAM);
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final Map<String, Object> event;
+    private final Map<String, Object> hatariProperties;
+    private final long timestamp;
+    private final long id;
+    private final double sampleRate;
+    private final SerializedProperties evaluatedProperties;
+    private final SerializedProperties globalProperties;
+    private Map<String, Object> merged;
+
+    ComposedEvent(Map<String, Object> event, Map<String, Object> hatariProperties, long timestamp, long id,
+                  double sampleRate, SerializedProperties evaluatedProperties, SerializedProperties globalProperties) {
+        this.event = event;
+        this.hatariProperties = hatariProperties;
+        this.timestamp = timestamp;
+        this.id = id;
+        this.sampleRate = sampleRate;
+        this.evaluatedProperties = evaluatedProperties;
+        this.globalProperties = globalProperties;
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider provider)
+            throws IOException, JsonProcessingException {
+        generator.writeStartObject();
+        for (Map.Entry<String, Object> property : event.entrySet()) {
+            generator.writeFieldName(property.getKey());
+            provider.defaultSerializeValue(property.getValue(), generator);
+        }
+        if (evaluatedProperties != null) {
+            for (int i = 0; i < evaluatedProperties.size(); i++) {
+                if (!event.containsKey(evaluatedProperties.getKey(i))) {
+                    evaluatedProperties.writeProperty(generator, i);
+                }
+            }
+        }
+        if (globalProperties != null) {
+            for (int i = 0; i < globalProperties.size(); i++) {
+                String key = globalProperties.getKey(i);
+                if (!event.containsKey(key) && (evaluatedProperties == null || !evaluatedProperties.containsKey(key))) {
+                    globalProperties.writeProperty(generator, i);
+                }
+            }
+        }
+
+        generator.writeFieldName(HATARI);
+        generator.writeStartObject();
+        if (hatariProperties != null) {
+            for (Map.Entry<String, Object> property : hatariProperties.entrySet()) {
+                generator.writeFieldName(property.getKey());
+                provider.defaultSerializeValue(property.getValue(), generator);
+            }
+        }
+        if (hatariProperties == null || !hatariProperties.containsKey("timestamp")) {
+            generator.writeFieldName(TIMESTAMP);
+            generator.writeString(HatariTimestamps.format(timestamp));
+        }
+        if (hatariProperties == null || !hatariProperties.containsKey(HatariConstants.ID_PARAM)) {
+            generator.writeFieldName(ID);
+            generator.writeString(EventIds.toString(id));
+        }
+        if (isSampled()) {
+            generator.writeFieldName(SAMPLE_RATE);
+            generator.writeNumber(sampleRate);
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSer)
+            throws IOException, JsonProcessingException {
+        // events are never serialized with type information
+        serialize(generator, provider);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (merged == null) {
+            merged = merge();
+        }
+        return merged.entrySet();
+    }
+
+    // the caller's own sample rate wins, e.g. for events sampled before they reached us
+    private boolean isSampled() {
+        return sampleRate < 1
+                && (hatariProperties == null || !hatariProperties.containsKey(HatariConstants.SAMPLE_RATE_PARAM));
+    }
+
+    private Map<String, Object> merge() {
+        Map<String, Object> merged = new LinkedHashMap<String, Object>();
+        if (globalProperties != null) {
+            merged.putAll(globalProperties.asMap());
+        }
+        if (evaluatedProperties != null) {
+            merged.putAll(evaluatedProperties.asMap());
+        }
+        merged.putAll(event);
+        Map<String, Object> hatari = new HashMap<String, Object>();
+        if (hatariProperties != null) {
+            hatari.putAll(hatariProperties);
+        }
+        if (!hatari.containsKey("timestamp")) {
+            Calendar calendar = Calendar.getInstance(UTC);
+            calendar.setTimeInMillis(timestamp);
+            hatari.put("timestamp", calendar);
+        }
+        if (!hatari.containsKey(HatariConstants.ID_PARAM)) {
+            hatari.put(HatariConstants.ID_PARAM, EventIds.toString(id));
+        }
+        if (isSampled()) {
+            hatari.put(HatariConstants.SAMPLE_RATE_PARAM, sampleRate);
+        }
+        merged.put("hatari", hatari);
+        return merged;
+    }
+}
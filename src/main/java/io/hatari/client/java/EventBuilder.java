@@ -0,0 +1,606 @@
+package io.hatari.client.java;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import io.hatari.client.java.data.SerializedProperties;
+import io.hatari.client.java.dedup.EventIds;
+import io.hatari.client.java.dedup.Fingerprints;
+import io.hatari.client.java.exceptions.HatariException;
+import io.hatari.client.java.exceptions.InvalidEventException;
+import io.hatari.client.java.sampling.TrafficRules;
+import io.hatari.client.java.util.HatariConstants;
+import io.hatari.client.java.util.HatariTimestamps;
+import io.hatari.client.java.util.UploadEventCallback;
+import io.hatari.client.java.util.UploadResult;
+import io.hatari.client.java.validation.CompiledSchema;
+import io.hatari.client.java.validation.EventValidator;
+import io.hatari.client.java.validation.PropertyType;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * EventBuilder builds an event property by property and serializes it as it goes, instead of building a Map that
+ * is copied, merged and then walked again by the serializer.
+ * <p/>
+ * Each thread reuses the same builder and the same {@link JsonGenerator} and buffer, property names are checked
+ * as they are added, and the timestamp comes from {@link System#currentTimeMillis()}, so building and sending an
+ * event allocates little more than the resulting byte array. Global properties are merged in when the event is
+ * sent, with the same precedence as {@link HatariClient#addEvent(String, java.util.Map)}, and root-level
+ * properties are checked against the collection's {@link io.hatari.client.java.validation.EventSchema}, if any.
+ * The collection's sampling policy and rate limit are applied when the event is sent, and so is the client's
+ * {@link io.hatari.client.java.dedup.DuplicateFilter}, which compares events by their properties in the order
+ * they were put.
+ * <p/>
+ * Example usage:
+ * <pre>
+ *     HatariClient.client().newEvent("transactions")
+ *             .put("amount", 42.5)
+ *             .put("items", 3)
+ *             .beginObject("card")
+ *                 .put("type", "visa")
+ *             .endObject()
+ *             .send();
+ * </pre>
+ * A builder must be used by the thread that created it, and not after {@link #send()} or {@link #discard()}.
+ * Invalid properties don't throw right away, the first problem is reported when the event is sent. A builder that
+ * might not be sent, e.g. because computing a property can throw, should be built in a try-with-resources block,
+ * which discards the event if it wasn't sent:
+ * <pre>
+ *     try (EventBuilder event = HatariClient.client().newEvent("transactions")) {
+ *         event.put("amount", computeAmount())
+ *                 .send();
+ *     }
+ * </pre>
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class EventBuilder implements AutoCloseable {
+
+    private static final SerializableString HATARI = new SerializedString("hatari");
+    private static final SerializableString TIMESTAMP = new SerializedString("timestamp");
+    private static final SerializableString SAMPLE_RATE = new SerializedString(HatariConstants.SAMPLE_RATE_PARAM);
+    private static final SerializableString ID = new SerializedString(HatariConstants.ID_PARAM);
+
+    private static final ThreadLocal<EventBuilder> BUILDERS = new ThreadLocal<EventBuilder>() {
+        @Override
+        protected EventBuilder initialValue() {
+            return new EventBuilder();
+        }
+    };
+
+    private final ByteArrayBuilder buffer = new ByteArrayBuilder(1024);
+    private final char[] timestampChars = new char[HatariTimestamps.LENGTH];
+    private final char[] idChars = new char[EventIds.LENGTH];
+    private JsonGenerator generator;
+
+    private HatariClient hatariClient;
+    private EventValidator validator;
+    private CompiledSchema schema;
+    private String eventCollection;
+    private long timestamp;
+    private boolean timestampSet;
+    private String problem;
+    private boolean inUse;
+    private TrafficRules trafficRules;
+    private String sampleKeyProperty;
+    private Object sampleKeyValue;
+    private double sampleRate;
+    // how many bytes the event's own properties take, for its fingerprint
+    private int propertiesLength;
+
+    // names of the root-level properties, to merge global properties without duplicates
+    private String[] rootKeys = new String[16];
+    private int rootKeyCount;
+    // whether each open level is an array rather than an object; level 0 is the event itself
+    private boolean[] arrayLevels = new boolean[8];
+    private int depth;
+
+    private EventBuilder() {
+        newGenerator();
+    }
+
+    static EventBuilder obtain(HatariClient hatariClient, String eventCollection) {
+        EventBuilder builder = BUILDERS.get();
+        if (builder.inUse) {
+            // somebody on this thread is still building another event, or abandoned it; the next event gets the
+            // new builder, so an abandoned one doesn't make every later event allocate its own
+            builder = new EventBuilder();
+            BUILDERS.set(builder);
+        }
+        try {
+            builder.start(hatariClient, eventCollection);
+        } catch (RuntimeException e) {
+            builder.release(false);
+            throw e;
+        }
+        return builder;
+    }
+
+    /**
+     * Overrides the event's timestamp, which defaults to the time the builder was created.
+     *
+     * @param epochMillis Milliseconds since the epoch, as returned by {@link System#currentTimeMillis()}.
+     */
+    public EventBuilder timestamp(long epochMillis) {
+        this.timestamp = epochMillis;
+        this.timestampSet = true;
+        return this;
+    }
+
+    public EventBuilder put(String key, String value) {
+        if (acceptKey(key, value == null ? null : PropertyType.STRING) && acceptValue(value)) {
+            if (isSampleKey(key)) {
+                sampleKeyValue = value;
+            }
+            try {
+                generator.writeStringField(key, value);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return this;
+    }
+
+    public EventBuilder put(String key, long value) {
+        if (acceptKey(key, PropertyType.NUMBER)) {
+            if (isSampleKey(key)) {
+                sampleKeyValue = value;
+            }
+            try {
+                generator.writeNumberField(key, value);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return this;
+    }
+
+    public EventBuilder put(String key, double value) {
+        if (acceptKey(key, PropertyType.NUMBER)) {
+            if (isSampleKey(key)) {
+                sampleKeyValue = value;
+            }
+            try {
+                generator.writeNumberField(key, value);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return this;
+    }
+
+    public EventBuilder put(String key, boolean value) {
+        if (acceptKey(key, PropertyType.BOOLEAN)) {
+            if (isSampleKey(key)) {
+                sampleKeyValue = value;
+            }
+            try {
+                generator.writeBooleanField(key, value);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds a property of any other type, e.g. a Map or a List, serialized and validated like the values passed to
+     * {@link HatariClient#addEvent(String, java.util.Map)}.
+     */
+    public EventBuilder put(String key, Object value) {
+        if (acceptKey(key, PropertyType.of(value)) && acceptValue(value)) {
+            if (isSampleKey(key)) {
+                sampleKeyValue = value;
+            }
+            try {
+                generator.writeObjectField(key, value);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Starts a nested object. Add its properties with <code>put</code> and close it with {@link #endObject()}.
+     */
+    public EventBuilder beginObject(String key) {
+        if (acceptKey(key, PropertyType.OBJECT)) {
+            try {
+                generator.writeObjectFieldStart(key);
+                open(false);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Starts a nested object as the next element of the current array.
+     */
+    public EventBuilder beginObject() {
+        if (acceptElement()) {
+            try {
+                generator.writeStartObject();
+                open(false);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return this;
+    }
+
+    public EventBuilder endObject() {
+        if (closeLevel(false)) {
+            try {
+                generator.writeEndObject();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Starts a nested array. Add its elements with <code>add</code> and close it with {@link #endArray()}.
+     */
+    public EventBuilder beginArray(String key) {
+        if (acceptKey(key, PropertyType.ARRAY)) {
+            try {
+                generator.writeArrayFieldStart(key);
+                open(true);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return this;
+    }
+
+    public EventBuilder endArray() {
+        if (closeLevel(true)) {
+            try {
+                generator.writeEndArray();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return this;
+    }
+
+    public EventBuilder add(String value) {
+        if (acceptElement() && acceptValue(value)) {
+            try {
+                generator.writeString(value);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return this;
+    }
+
+    public EventBuilder add(long value) {
+        if (acceptElement()) {
+            try {
+                generator.writeNumber(value);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return this;
+    }
+
+    public EventBuilder add(double value) {
+        if (acceptElement()) {
+            try {
+                generator.writeNumber(value);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return this;
+    }
+
+    public EventBuilder add(boolean value) {
+        if (acceptElement()) {
+            try {
+                generator.writeBoolean(value);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Sends the event without a callback. See {@link #send(UploadEventCallback)}.
+     */
+    public void send() throws HatariException {
+        send(null);
+    }
+
+    /**
+     * Merges in the global properties and hands the event to the {@link HatariClient} for upload, just like
+     * {@link HatariClient#addEvent(String, java.util.Map, java.util.Map, UploadEventCallback)}.
+     *
+     * @param callback Will invoke onSuccess when adding the event succeeds, onError when it fails. May be null.
+     * @throws HatariException if a property or the collection was invalid, or the event couldn't be queued.
+     */
+    public void send(UploadEventCallback callback) throws HatariException {
+        boolean sent = false;
+        try {
+            if (trafficRules != null) {
+                // sampled out and rate limited events are dropped before they are checked, like with addEvent
+                sampleRate = hatariClient.admit(eventCollection, trafficRules, sampleKeyValue, callback);
+                if (sampleRate == 0) {
+                    return;
+                }
+            }
+            if (problem == null && depth != 0) {
+                problem = "Every nested object and array of an event must be closed before it is sent.";
+            }
+            if (problem == null && rootKeyCount == 0) {
+                problem = "You must specify a non-null, non-empty event.";
+            }
+            if (problem == null && schema != null) {
+                problem = schema.checkRequired(rootKeys, rootKeyCount);
+            }
+            if (problem != null) {
+                throw new InvalidEventException(problem);
+            }
+            hatariClient.validateEventCollection(eventCollection);
+            boolean checkDuplicates = hatariClient.getDuplicateFilter() != null;
+            byte[] event = finish(checkDuplicates);
+            sent = true;
+            if (checkDuplicates) {
+                long fingerprint = Fingerprints.of(eventCollection, event, propertiesLength);
+                if (timestampSet) {
+                    fingerprint = Fingerprints.combine(fingerprint, timestamp);
+                }
+                if (hatariClient.discardDuplicate(eventCollection, fingerprint, callback)) {
+                    return;
+                }
+            }
+            hatariClient.addSerializedEvent(eventCollection, event, callback);
+        } finally {
+            release(sent);
+        }
+    }
+
+    /**
+     * Like {@link #send(UploadEventCallback)}, but returns a future that completes once the API answered for the
+     * event, see {@link HatariClient#addEventAsync(String, java.util.Map)}.
+     *
+     * @return a future for the outcome of the upload. It completes exceptionally with a {@link HatariException} if
+     *         the event is invalid or couldn't be queued.
+     */
+    public CompletableFuture<UploadResult> sendAsync() {
+        UploadFuture future = new UploadFuture();
+        try {
+            send(future);
+        } catch (HatariException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Throws away the event built so far and releases the builder.
+     */
+    public void discard() {
+        release(false);
+    }
+
+    /**
+     * Discards the event unless it was sent or discarded already, so a builder used in a try-with-resources block
+     * is released however the block is left. Don't close a builder after building another event on the same
+     * thread, it may be the same builder.
+     */
+    @Override
+    public void close() {
+        if (inUse) {
+            discard();
+        }
+    }
+
+    private void start(HatariClient hatariClient, String eventCollection) {
+        this.inUse = true;
+        this.hatariClient = hatariClient;
+        this.eventCollection = eventCollection;
+        this.validator = hatariClient.getEventValidator();
+        this.schema = validator.getSchema(eventCollection);
+        this.timestamp = System.currentTimeMillis();
+        this.timestampSet = false;
+        this.problem = null;
+        this.rootKeyCount = 0;
+        this.depth = 0;
+        this.arrayLevels[0] = false;
+        this.trafficRules = hatariClient.getTrafficShaper().getRules(eventCollection);
+        this.sampleKeyProperty = trafficRules == null ? null : trafficRules.getSampleKeyProperty();
+        this.sampleKeyValue = null;
+        this.sampleRate = 1;
+        try {
+            generator.writeStartObject();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private byte[] finish(boolean fingerprinted) throws InvalidEventException {
+        try {
+            if (fingerprinted) {
+                // everything after this point is added by the client
+                generator.flush();
+                propertiesLength = buffer.size();
+            }
+            // global properties go first in precedence order, skipping everything the event sets itself
+            SerializedProperties evaluated = hatariClient.evaluateGlobalProperties(eventCollection);
+            if (evaluated != null) {
+                for (int i = 0; i < evaluated.size(); i++) {
+                    if (!isRootKey(evaluated.getKey(i))) {
+                        evaluated.writeProperty(generator, i);
+                    }
+                }
+            }
+            SerializedProperties globalProperties = hatariClient.getSerializedGlobalProperties();
+            if (globalProperties != null) {
+                for (int i = 0; i < globalProperties.size(); i++) {
+                    String key = globalProperties.getKey(i);
+                    if (!isRootKey(key) && (evaluated == null || !evaluated.containsKey(key))) {
+                        globalProperties.writeProperty(generator, i);
+                    }
+                }
+            }
+
+            generator.writeFieldName(HATARI);
+            generator.writeStartObject();
+            generator.writeFieldName(TIMESTAMP);
+            generator.writeString(timestampChars, 0, HatariTimestamps.format(timestamp, timestampChars));
+            generator.writeFieldName(ID);
+            generator.writeString(idChars, 0, EventIds.format(EventIds.next(), idChars, 0));
+            if (sampleRate < 1) {
+                generator.writeFieldName(SAMPLE_RATE);
+                generator.writeNumber(sampleRate);
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+            generator.flush();
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new InvalidEventException("The event could not be serialized to JSON: " + e.getMessage());
+        }
+    }
+
+    private void release(boolean clean) {
+        if (!clean) {
+            // the generator is stuck somewhere inside the abandoned event
+            newGenerator();
+        }
+        buffer.reset();
+        hatariClient = null;
+        validator = null;
+        schema = null;
+        trafficRules = null;
+        sampleKeyValue = null;
+        inUse = false;
+    }
+
+    private void newGenerator() {
+        try {
+            if (generator != null) {
+                generator.close();
+            }
+            generator = HatariClient.MAPPER.getFactory().createGenerator(buffer);
+            // events follow each other in the same generator, but each one is sent on its own
+            generator.setRootValueSeparator(null);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create a JSON generator.", e);
+        }
+    }
+
+    // the sampling policy is keyed on a root-level property
+    private boolean isSampleKey(String key) {
+        return sampleKeyProperty != null && depth == 0 && sampleKeyProperty.equals(key);
+    }
+
+    private boolean acceptKey(String key, PropertyType type) {
+        if (problem != null) {
+            return false;
+        }
+        if (arrayLevels[depth]) {
+            problem = "Use add() for the elements of an array, not put().";
+            return false;
+        }
+        boolean declared = depth == 0 && schema != null && key != null && schema.isDeclared(key);
+        String keyProblem = declared ? null : validator.checkName(key);
+        if (keyProblem == null && depth == 0 && schema != null) {
+            keyProblem = schema.checkProperty(key, type);
+        }
+        if (keyProblem != null) {
+            problem = keyProblem;
+            return false;
+        }
+        if (depth == 0) {
+            if ("hatari".equals(key)) {
+                problem = "An event cannot contain a root-level property named 'hatari'.";
+                return false;
+            }
+            if (isRootKey(key)) {
+                problem = "An event cannot contain the property '" + key + "' more than once.";
+                return false;
+            }
+            if (rootKeyCount == rootKeys.length) {
+                String[] grown = new String[rootKeys.length * 2];
+                System.arraycopy(rootKeys, 0, grown, 0, rootKeyCount);
+                rootKeys = grown;
+            }
+            rootKeys[rootKeyCount++] = key;
+        }
+        return true;
+    }
+
+    private boolean acceptElement() {
+        if (problem != null) {
+            return false;
+        }
+        if (!arrayLevels[depth]) {
+            problem = "Use put() for the properties of an object, not add().";
+            return false;
+        }
+        return true;
+    }
+
+    private boolean acceptValue(Object value) {
+        if (problem != null) {
+            return false;
+        }
+        try {
+            validator.validateValue(value, depth + 1);
+            return true;
+        } catch (InvalidEventException e) {
+            problem = e.getMessage();
+            return false;
+        }
+    }
+
+    private void open(boolean array) {
+        depth++;
+        if (depth == arrayLevels.length) {
+            boolean[] grown = new boolean[arrayLevels.length * 2];
+            System.arraycopy(arrayLevels, 0, grown, 0, depth);
+            arrayLevels = grown;
+        }
+        arrayLevels[depth] = array;
+    }
+
+    private boolean closeLevel(boolean array) {
+        if (problem != null) {
+            return false;
+        }
+        if (depth == 0 || arrayLevels[depth] != array) {
+            problem = array ? "endArray() doesn't match an open array." : "endObject() doesn't match an open object.";
+            return false;
+        }
+        depth--;
+        return true;
+    }
+
+    private boolean isRootKey(String key) {
+        for (int i = 0; i < rootKeyCount; i++) {
+            if (rootKeys[i].equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void fail(IOException e) {
+        if (problem == null) {
+            problem = "The event could not be serialized to JSON: " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package io.hatari.client.java;
+
+import io.hatari.client.java.exceptions.HatariException;
+import io.hatari.client.java.exceptions.InvalidEventException;
+import io.hatari.client.java.exceptions.QueueFullException;
+import io.hatari.client.java.io.BoundedMpmcQueue;
+import io.hatari.client.java.metrics.EventOutcome;
+import io.hatari.client.java.util.DeadLetterHandler;
+import io.hatari.client.java.util.GeneralUtil;
+import io.hatari.client.java.util.HatariConfig;
+import io.hatari.client.java.util.HatariLogging;
+import io.hatari.client.java.util.UploadCallbacks;
+import io.hatari.client.java.util.UploadEventCallback;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Takes events off the caller's thread for {@link HatariClient#setPipelineEnabled(boolean)}.
+ * <p/>
+ * Adding an event only takes a shallow copy of its maps and the time, and publishes them to a lock-free ring
+ * without waking anyone up. Dedicated threads poll the ring and run the stages <code>addEvent</code> would
+ * otherwise run on the caller's thread: traffic rules, duplicate check, validation, global properties and
+ * serialization, then hand the event to the upload path. An idle thread spins briefly, then parks for
+ * exponentially longer, up to {@link HatariConfig#PIPELINE_MAX_PARK_MICROS}, so an idle pipeline costs next to no
+ * CPU and a busy one is never woken by callers.
+ * <p/>
+ * Events that fail on the way are reported to their callback, with the name of the exception
+ * <code>addEvent</code> would have thrown as the error's name, and to the client's {@link DeadLetterHandler}.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+final class EventPipeline {
+
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final AtomicLong PIPELINE_COUNT = new AtomicLong();
+
+    private final HatariClient hatariClient;
+    private final BoundedMpmcQueue<Entry> ring;
+    private final Thread[] workers;
+    private final long maxParkNanos;
+    private final LongAdder published = new LongAdder();
+    private final AtomicLong processed = new AtomicLong();
+    private volatile boolean stopped;
+
+    EventPipeline(HatariClient hatariClient, int capacity, int threads, long maxParkMicros) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("An event pipeline needs at least one thread: " + threads);
+        }
+        this.hatariClient = hatariClient;
+        this.ring = new BoundedMpmcQueue<Entry>(capacity);
+        this.maxParkNanos = Math.max(MIN_PARK_NANOS, TimeUnit.MICROSECONDS.toNanos(maxParkMicros));
+        this.workers = new Thread[threads];
+        long pipeline = PIPELINE_COUNT.incrementAndGet();
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            }, "hatari-pipeline-" + pipeline + "-" + (i + 1));
+            // like the upload threads, a client that was never closed doesn't keep the JVM alive
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Publishes an event to the pipeline, applying the upload queue's overflow policy if the ring is full.
+     */
+    void publish(String eventCollection, Map<String, Object> event, Map<String, Object> hatariProperties,
+                 UploadEventCallback callback) throws QueueFullException {
+        // a shallow copy is all the caller pays for; nested maps and lists must not change once they were added
+        Entry entry = new Entry(eventCollection, event == null ? null : new HashMap<String, Object>(event),
+                hatariProperties == null ? null : new HashMap<String, Object>(hatariProperties),
+                System.currentTimeMillis(), callback);
+        if (!ring.offer(entry) && !overflow(entry)) {
+            return;
+        }
+        published.increment();
+        if (stopped) {
+            // the workers may be gone already, so the entry mustn't be left behind
+            drain();
+        }
+    }
+
+    /**
+     * @return how many events wait in the ring.
+     */
+    int getDepth() {
+        return ring.size();
+    }
+
+    /**
+     * Waits until every event published so far went through the pipeline.
+     *
+     * @return false if the deadline passed first or the thread was interrupted.
+     */
+    boolean awaitProcessed(long deadlineNanos) {
+        long target = published.sum();
+        long parkNanos = MIN_PARK_NANOS;
+        while (processed.get() < target) {
+            if (System.nanoTime() - deadlineNanos >= 0 || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            LockSupport.parkNanos(parkNanos);
+            parkNanos = Math.min(parkNanos * 2, maxParkNanos);
+        }
+        return true;
+    }
+
+    /**
+     * Lets the workers finish the events in the ring, then stops them. Events published afterwards are processed
+     * on the publishing thread.
+     */
+    void stop() {
+        stopped = true;
+        for (Thread worker : workers) {
+            LockSupport.unpark(worker);
+        }
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void work() {
+        int idleRounds = 0;
+        long parkNanos = MIN_PARK_NANOS;
+        while (true) {
+            Entry entry = ring.poll();
+            if (entry != null) {
+                process(entry);
+                idleRounds = 0;
+                parkNanos = MIN_PARK_NANOS;
+                continue;
+            }
+            if (stopped) {
+                // whatever was published before the flag was set is in the ring by now
+                drain();
+                return;
+            }
+            idleRounds++;
+            if (idleRounds <= SPINS) {
+                continue;
+            }
+            if (idleRounds <= SPINS + YIELDS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(parkNanos);
+                parkNanos = Math.min(parkNanos * 2, maxParkNanos);
+            }
+        }
+    }
+
+    private void drain() {
+        Entry entry;
+        while ((entry = ring.poll()) != null) {
+            process(entry);
+        }
+    }
+
+    private void process(Entry entry) {
+        try {
+            hatariClient.processEvent(entry.eventCollection, entry.event, entry.hatariProperties, entry.timestamp,
+                    entry.callback);
+        } catch (HatariException e) {
+            deadLetter(entry, e);
+        } catch (RuntimeException e) {
+            // e.g. a global properties evaluator that threw; the worker has to carry on either way
+            HatariLogging.log(GeneralUtil.getStackTraceFromThrowable(e));
+            deadLetter(entry, new InvalidEventException("The event could not be processed: " + e));
+        } finally {
+            processed.incrementAndGet();
+        }
+    }
+
+    private void deadLetter(Entry entry, HatariException cause) {
+        HatariLogging.log("The event pipeline could not queue an event: %s", cause.getMessage());
+        hatariClient.getMetrics().recordEvents(entry.eventCollection, EventOutcome.DEAD_LETTER, 1);
+        String name = cause.getClass().getSimpleName().replace("Exception", "Error");
+        UploadCallbacks.notify(hatariClient.getMetrics().track(entry.eventCollection, entry.callback), 0, false,
+                HatariClient.clientError(name, cause.getMessage()));
+        DeadLetterHandler deadLetterHandler = hatariClient.getDeadLetterHandler();
+        if (deadLetterHandler != null) {
+            try {
+                deadLetterHandler.onDeadLetter(entry.eventCollection, entry.event, entry.hatariProperties, cause);
+            } catch (RuntimeException e) {
+                HatariLogging.log(GeneralUtil.getStackTraceFromThrowable(e));
+            }
+        }
+    }
+
+    /**
+     * @return true if the entry made it into the ring after all, false if it was dropped.
+     */
+    private boolean overflow(Entry entry) throws QueueFullException {
+        switch (hatariClient.getUploadQueue().getOverflowPolicy()) {
+            case BLOCK:
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+                        HatariConfig.OVERFLOW_BLOCK_TIMEOUT_MILLIS);
+                while (!ring.offer(entry)) {
+                    if (System.nanoTime() - deadline >= 0) {
+                        hatariClient.getMetrics().recordEvents(entry.eventCollection, EventOutcome.DROPPED, 1);
+                        throw new QueueFullException(
+                                "The event pipeline stayed full for longer than the block timeout.");
+                    }
+                    LockSupport.parkNanos(BLOCKED_PARK_NANOS);
+                }
+                return true;
+            case DROP_NEWEST:
+            case DROP_OLDEST:
+                // the oldest events are already being worked on, so the newest one goes
+                HatariLogging.log("The event pipeline is full, so the event was dropped.");
+                hatariClient.getMetrics().recordEvents(entry.eventCollection, EventOutcome.DROPPED, 1);
+                UploadCallbacks.notify(hatariClient.getMetrics().track(entry.eventCollection, entry.callback), 0,
+                        false, "The event pipeline is full, so the event was dropped.");
+                return false;
+            case FAIL:
+            default:
+                hatariClient.getMetrics().recordEvents(entry.eventCollection, EventOutcome.DROPPED, 1);
+                throw new QueueFullException("The event pipeline is full.");
+        }
+    }
+
+    private static final class Entry {
+        private final String eventCollection;
+        private final Map<String, Object> event;
+        private final Map<String, Object> hatariProperties;
+        private final long timestamp;
+        private final UploadEventCallback callback;
+
+        private Entry(String eventCollection, Map<String, Object> event, Map<String, Object> hatariProperties,
+                      long timestamp, UploadEventCallback callback) {
+            this.eventCollection = eventCollection;
+            this.event = event;
+            this.hatariProperties = hatariProperties;
+            this.timestamp = timestamp;
+            this.callback = callback;
+        }
+    }
+}
@@ -1,22 +1,75 @@
 package io.hatari.client.java;
 
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import io.hatari.client.java.data.CacheableGlobalPropertiesEvaluator;
+import io.hatari.client.java.data.GlobalPropertiesCache;
 import io.hatari.client.java.data.GlobalPropertiesEvaluator;
+import io.hatari.client.java.data.SerializedProperties;
+import io.hatari.client.java.dedup.DuplicateFilter;
+import io.hatari.client.java.dedup.EventIds;
+import io.hatari.client.java.dedup.Fingerprints;
 import io.hatari.client.java.exceptions.InvalidEventException;
 import io.hatari.client.java.exceptions.InvalidEventException;
+import io.hatari.client.java.exceptions.ClientClosedException;
+import io.hatari.client.java.exceptions.EventStoreException;
 import io.hatari.client.java.exceptions.HatariException;
 import io.hatari.client.java.exceptions.InvalidProjectException;
+import io.hatari.client.java.exceptions.QueueFullException;
+import io.hatari.client.java.io.AdaptiveConcurrencyLimit;
+import io.hatari.client.java.io.CircuitBreaker;
+import io.hatari.client.java.io.Endpoint;
+import io.hatari.client.java.io.EndpointPool;
+import io.hatari.client.java.io.EventBatcher;
 import io.hatari.client.java.io.HatariHttpRequestRunnable;
+import io.hatari.client.java.io.HatariTransport;
+import io.hatari.client.java.io.HatariTransports;
+import io.hatari.client.java.io.RetryPolicy;
+import io.hatari.client.java.io.SlabPool;
+import io.hatari.client.java.io.UploadQueue;
+import io.hatari.client.java.io.UploadScheduler;
+import io.hatari.client.java.io.UploadTask;
+import io.hatari.client.java.io.WireFormat;
+import io.hatari.client.java.metrics.EventOutcome;
+import io.hatari.client.java.metrics.HatariMetrics;
+import io.hatari.client.java.sampling.Admission;
+import io.hatari.client.java.sampling.SamplingPolicy;
+import io.hatari.client.java.sampling.TokenBucket;
+import io.hatari.client.java.sampling.TrafficRules;
+import io.hatari.client.java.sampling.TrafficShaper;
+import io.hatari.client.java.store.SpillStore;
+import io.hatari.client.java.util.DeadLetterHandler;
 import io.hatari.client.java.util.HatariConfig;
+import io.hatari.client.java.util.HatariConstants;
 import io.hatari.client.java.util.HatariLogging;
+import io.hatari.client.java.util.OverflowPolicy;
+import io.hatari.client.java.util.UploadCallbacks;
 import io.hatari.client.java.util.UploadEventCallback;
+import io.hatari.client.java.util.UploadResult;
+import io.hatari.client.java.validation.EventSchema;
+import io.hatari.client.java.validation.EventValidator;
 
-import java.util.Calendar;
-import java.util.HashMap;
+import javax.management.JMException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 
 /**
@@ -35,21 +88,69 @@ import java.util.concurrent.Executors;
  * @author Ebot Tabi
  * @since 1.0.0
  */
-public class HatariClient {
+public class HatariClient implements Closeable {
 
     public static final ObjectMapper MAPPER;
-    public static final ExecutorService EXECUTOR_SERVICE;
 
     static {
-        MAPPER = new ObjectMapper();
-        MAPPER.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-        EXECUTOR_SERVICE = Executors.newFixedThreadPool(HatariConfig.NUM_THREADS_FOR_HTTP_REQUESTS);
+        MAPPER = WireFormat.JSON.getMapper();
+    }
+
+    /**
+     * The default upload executor and the scheduler that shares it between the clients. They are set up when the
+     * first client is created rather than when this class is loaded, e.g. for {@link #MAPPER}.
+     */
+    private static final class Uploads {
+        private static final ExecutorService EXECUTOR;
+        private static final UploadScheduler SCHEDULER;
+
+        static {
+            // daemon threads, so a client that was never closed doesn't keep the JVM alive
+            ThreadPoolExecutor uploadThreads = new ThreadPoolExecutor(HatariConfig.NUM_THREADS_FOR_HTTP_REQUESTS,
+                    HatariConfig.NUM_THREADS_FOR_HTTP_REQUESTS, HatariConfig.UPLOAD_THREAD_KEEP_ALIVE_MILLIS,
+                    TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger threadCount = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "hatari-upload-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            // threads are only started while the concurrency limits of the clients call for them
+            uploadThreads.allowCoreThreadTimeOut(true);
+            EXECUTOR = uploadThreads;
+            SCHEDULER = new UploadScheduler(EXECUTOR, HatariConfig.NUM_THREADS_FOR_HTTP_REQUESTS);
+        }
     }
 
     private final String projectKey;
     private final String apiKey;
     private GlobalPropertiesEvaluator globalPropertiesEvaluator;
+    private volatile GlobalPropertiesCache globalPropertiesCache;
     private Map<String, Object> globalProperties;
+    private volatile SerializedProperties serializedGlobalProperties;
+    private volatile HatariTransport transport;
+    private volatile RetryPolicy retryPolicy;
+    private final CircuitBreaker circuitBreaker;
+    private final EventValidator eventValidator;
+    private final HatariMetrics metrics;
+    private final UploadQueue uploadQueue;
+    private final SlabPool pendingEvents;
+    private final TrafficShaper trafficShaper;
+    private volatile boolean closed;
+    private volatile boolean compressionEnabled;
+    private volatile WireFormat wireFormat;
+    private volatile DuplicateFilter duplicateFilter;
+    private volatile EndpointPool endpointPool;
+    private volatile EventPipeline eventPipeline;
+    private volatile Aggregator aggregator;
+    private volatile DeadLetterHandler deadLetterHandler;
+    private final Set<String> hedgedCollections;
+    private volatile EventBatcher eventBatcher;
+    private volatile SpillStore spillStore;
+    private File spillDirectory;
 
     private enum ClientSingleton {
         INSTANCE;
@@ -104,6 +205,94 @@ public class HatariClient {
         this.apiKey = apiKey;
         this.globalPropertiesEvaluator = null;
         this.globalProperties = null;
+        this.transport = HatariTransports.urlConnection();
+        this.retryPolicy = new RetryPolicy(HatariConfig.RETRY_MAX_ATTEMPTS, HatariConfig.RETRY_INITIAL_DELAY_MILLIS,
+                HatariConfig.RETRY_MAX_DELAY_MILLIS);
+        this.circuitBreaker = new CircuitBreaker(HatariConfig.CIRCUIT_BREAKER_FAILURE_THRESHOLD,
+                HatariConfig.CIRCUIT_BREAKER_OPEN_MILLIS);
+        this.eventValidator = new EventValidator(HatariConfig.VALIDATION_NAME_CACHE_SIZE);
+        this.uploadQueue = new UploadQueue(Uploads.SCHEDULER, HatariConfig.UPLOAD_QUEUE_CAPACITY,
+                HatariConfig.OVERFLOW_POLICY, HatariConfig.OVERFLOW_BLOCK_TIMEOUT_MILLIS, HatariConfig.UPLOAD_WEIGHT,
+                newConcurrencyLimit());
+        // slabs are only allocated once events wait for them
+        this.pendingEvents = new SlabPool(HatariConfig.PENDING_EVENT_SLAB_BYTES,
+                HatariConfig.PENDING_EVENT_BUFFER_BYTES);
+        this.metrics = new HatariMetrics(projectKey, uploadQueue, eventValidator);
+        this.trafficShaper = new TrafficShaper();
+        this.wireFormat = HatariConfig.WIRE_FORMAT;
+        this.hedgedCollections = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        setEndpoints(HatariConfig.ENDPOINTS);
+    }
+
+    /**
+     * Getter for the {@link RetryPolicy} of this instance of the {@link HatariClient}.
+     *
+     * @return the {@link RetryPolicy}
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Call this to change how failed uploads are retried.
+     * <p/>
+     * Uploads that failed because of a network error, a timeout, a 408, 429 or 5xx response are tried again after
+     * an exponentially growing, jittered delay, or after the delay the API asked for with a
+     * <code>Retry-After</code> header if that is longer. Uploads the API rejected for any other reason, e.g.
+     * because a property name is invalid, are never retried. The callback only hears about an upload once it
+     * succeeded or failed for good.
+     *
+     * @param retryPolicy The policy for uploads attempted from now on. Use
+     *                    <code>new RetryPolicy(1, 0, 0)</code> to disable retries.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        if (retryPolicy == null) {
+            throw new IllegalArgumentException("The retry policy must not be null.");
+        }
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Getter for the {@link CircuitBreaker} guarding requests from this instance of the {@link HatariClient}. After
+     * {@link HatariConfig#CIRCUIT_BREAKER_FAILURE_THRESHOLD} consecutive failures it stops sending requests for
+     * {@link HatariConfig#CIRCUIT_BREAKER_OPEN_MILLIS}, then probes the API with a single request.
+     *
+     * @return the {@link CircuitBreaker}
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Getter for the {@link HatariTransport} this instance of the {@link HatariClient} sends requests with.
+     *
+     * @return the {@link HatariTransport}
+     */
+    public HatariTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Call this to change how this instance of the {@link HatariClient} talks to the Hatari API.
+     * <p/>
+     * By default requests go through {@link HatariTransports#urlConnection()}, which reuses keep-alive connections.
+     * On Java 11 and newer, {@link HatariTransports#http2()} multiplexes all requests over a single HTTP/2
+     * connection instead.
+     * <p/>
+     * Example usage:
+     * <pre>
+     * if (HatariTransports.isHttp2Supported()) {
+     *     HatariClient.client().setTransport(HatariTransports.http2());
+     * }
+     * </pre>
+     *
+     * @param transport The transport to use for all requests sent from now on.
+     */
+    public void setTransport(HatariTransport transport) {
+        if (transport == null) {
+            throw new IllegalArgumentException("The transport must not be null.");
+        }
+        this.transport = transport;
     }
 
     /**
@@ -118,8 +307,8 @@ public class HatariClient {
     /**
      * Call this any time you want to add an event that will eventually be sent to the Hatari IO server.
      * <p/>
-     * The event will be stored on the local file system until you decide to upload (usually this will happen
-     * right before your app goes into the background, but it could be any time).
+     * If a spill directory was set (see {@link #setSpillDirectory(java.io.File)}), the event will be stored on the
+     * local file system until it was delivered. Otherwise it is held in memory until it is uploaded.
      *
      * @param event           A Map that consists of key/value pairs. Hatari naming conventions apply (see docs).
      *                        Nested Maps and lists are acceptable (and encouraged!).
@@ -133,8 +322,8 @@ public class HatariClient {
      * Call this any time you want to add an event that will eventually be sent to the Hatari IO server AND
      * you want to override Hatari-defaulted properties (like timestamp).
      * <p/>
-     * The event will be stored on the local file system until you decide to upload (usually this will happen
-     * right before your app goes into the background, but it could be any time).
+     * If a spill directory was set (see {@link #setSpillDirectory(java.io.File)}), the event will be stored on the
+     * local file system until it was delivered. Otherwise it is held in memory until it is uploaded.
      *
      * @param projectKey The project key you want to put this event into.
      * @param event           A Map that consists of key/value pairs. Keen naming conventions apply (see docs).
@@ -143,56 +332,946 @@ public class HatariClient {
      *                        ex: "timestamp" -> Calendar.getInstance()
      * @param callback        An instance of AddEventCallback. Will invoke onSuccess when adding the event succeeds.
      *                        Will invoke onError when adding the event fails.
-     * @throws HatariException
+     * @throws HatariException if the event is invalid, the client was closed, or the upload queue is full and the
+     *                         {@link HatariConfig#OVERFLOW_POLICY} says to fail rather than drop. With the event
+     *                         pipeline (see {@link #setPipelineEnabled(boolean)}), invalid events are reported to
+     *                         the callback instead.
      */
     public void addEvent(String projectKey, Map<String, Object> event, Map<String, Object> hatariProperties,
                          UploadEventCallback callback) throws HatariException {
+        checkOpen();
+        EventPipeline eventPipeline = this.eventPipeline;
+        if (eventPipeline != null) {
+            eventPipeline.publish(projectKey, event, hatariProperties, callback);
+            return;
+        }
+        processEvent(projectKey, event, hatariProperties, System.currentTimeMillis(), callback);
+    }
+
+    /**
+     * Does everything {@link #addEvent(String, Map, Map, UploadEventCallback)} does once the client is known to be
+     * open, on the caller's thread or the {@link EventPipeline}'s.
+     *
+     * @param timestamp When the event was added.
+     */
+    void processEvent(String projectKey, Map<String, Object> event, Map<String, Object> hatariProperties,
+                      long timestamp, UploadEventCallback callback) throws HatariException {
+        // sampled out and rate limited events aren't worth validating
+        TrafficRules rules = trafficShaper.getRules(projectKey);
+        double sampleRate = 1;
+        if (rules != null) {
+            String sampleKeyProperty = rules.getSampleKeyProperty();
+            sampleRate = admit(projectKey, rules,
+                    sampleKeyProperty == null || event == null ? null : event.get(sampleKeyProperty), callback);
+            if (sampleRate == 0) {
+                return;
+            }
+        }
+        if (duplicateFilter != null && event != null
+                && discardDuplicate(projectKey, Fingerprints.of(projectKey, event, hatariProperties), callback)) {
+            return;
+        }
         // get the event
-        Map<String, Object> newEvent = validateAndBuildEvent(projectKey, event, hatariProperties);
-        // send the request as a callable in another thread
-        EXECUTOR_SERVICE.submit(new HatariHttpRequestRunnable(this, projectKey, newEvent, callback));
+        ComposedEvent newEvent = validateAndBuildEvent(projectKey, event, hatariProperties, timestamp, sampleRate);
+        // serialized right away, so neither later changes to the maps nor the maps themselves stay around
+        enqueueSerializedEvent(projectKey, serializeEvent(newEvent), callback);
     }
 
-    Map<String, Object> validateAndBuildEvent(String projectKey, Map<String, Object> event,
-                                              Map<String, Object> hatariProperties) throws HatariException {
-        validateEventCollection(projectKey);
-        validateEvent(event);
+    /**
+     * Like {@link #addEvent(String, java.util.Map)}, but returns a future that completes once the API answered for
+     * the event, instead of taking a callback. The future never blocks an upload thread; chain on it with
+     * <code>thenAccept</code> and friends, or <code>join()</code> it if you want to wait.
+     * <p/>
+     * Example usage:
+     * <pre>
+     *     HatariClient.client().addEventAsync("purchases", event)
+     *             .thenAccept(result -&gt; log.info("Uploaded with status " + result.getStatusCode()));
+     * </pre>
+     *
+     * @param eventCollection The collection you want to put this event into.
+     * @param event           A Map that consists of key/value pairs. Hatari naming conventions apply (see docs).
+     * @return a future for the outcome of the upload. It completes exceptionally with a {@link HatariException} if
+     *         the event is invalid or couldn't be queued.
+     */
+    public CompletableFuture<UploadResult> addEventAsync(String eventCollection, Map<String, Object> event) {
+        return addEventAsync(eventCollection, event, null);
+    }
 
-        HatariLogging.log(String.format("Adding event to project: %s", projectKey));
+    /**
+     * Like {@link #addEvent(String, java.util.Map, java.util.Map, UploadEventCallback)}, but returns a future that
+     * completes once the API answered for the event, instead of taking a callback.
+     *
+     * @param eventCollection  The collection you want to put this event into.
+     * @param event            A Map that consists of key/value pairs. Hatari naming conventions apply (see docs).
+     * @param hatariProperties A Map that consists of key/value pairs to override default properties.
+     * @return a future for the outcome of the upload. It completes exceptionally with a {@link HatariException} if
+     *         the event is invalid or couldn't be queued.
+     */
+    public CompletableFuture<UploadResult> addEventAsync(String eventCollection, Map<String, Object> event,
+                                                         Map<String, Object> hatariProperties) {
+        UploadFuture future = new UploadFuture();
+        try {
+            addEvent(eventCollection, event, hatariProperties, future);
+        } catch (HatariException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
 
-        // build the event
-        Map<String, Object> newEvent = new HashMap<String, Object>();
-        // handle hatari properties
-        Calendar timestamp = Calendar.getInstance();
-        if (hatariProperties == null) {
-            hatariProperties = new HashMap<String, Object>();
-            hatariProperties.put("timestamp", timestamp);
-        } else {
-            if (!hatariProperties.containsKey("timestamp")) {
-                hatariProperties.put("timestamp", timestamp);
+    /**
+     * Call this to add many events to one collection at once, e.g. for a backfill or a replay.
+     * <p/>
+     * Large inputs are validated and serialized in parallel, then sent in batches (see
+     * {@link HatariConfig#BATCH_MAX_EVENTS}) whether or not {@link #setBatchingEnabled(boolean)} was called. The
+     * input is read in chunks of {@link HatariConfig#BULK_CHUNK_EVENTS} events, and reading waits while
+     * {@link HatariConfig#BULK_MAX_PENDING_BATCHES} batches are waiting for the API, so the input may be far
+     * bigger than memory.
+     * <p/>
+     * The sampling policy and rate limit of the collection don't apply here: a backfill is meant to arrive
+     * complete.
+     * <p/>
+     * Example usage:
+     * <pre>
+     *     BulkAddReport report = HatariClient.client().addEvents("purchases", purchases);
+     *     report.awaitDelivery(60000);
+     *     for (Map.Entry&lt;Long, String&gt; failure : report.getFailures().entrySet()) {
+     *         ...
+     *     }
+     * </pre>
+     *
+     * @param eventCollection The collection you want to put these events into.
+     * @param events          The events. Hatari naming conventions apply (see docs).
+     * @return which events were accepted and rejected, by their position in the input, and later which were
+     *         delivered.
+     * @throws HatariException if the collection is invalid or the client was closed. Invalid events don't throw,
+     *                         they are reported as rejected instead.
+     */
+    public BulkAddReport addEvents(String eventCollection, Iterable<? extends Map<String, Object>> events)
+            throws HatariException {
+        return addEvents(eventCollection, events.iterator());
+    }
+
+    /**
+     * Like {@link #addEvents(String, Iterable)}, for events that are produced as they are read, e.g. from a file or
+     * a database cursor.
+     */
+    public BulkAddReport addEvents(String eventCollection, Iterator<? extends Map<String, Object>> events)
+            throws HatariException {
+        checkOpen();
+        return new BulkEventLoader(this, eventCollection).load(events);
+    }
+
+    /**
+     * Like {@link #addEvents(String, Iterable)}, for a {@link Stream} of events. The stream is consumed in order
+     * on the calling thread.
+     */
+    public BulkAddReport addEvents(String eventCollection, Stream<? extends Map<String, Object>> events)
+            throws HatariException {
+        return addEvents(eventCollection, events.iterator());
+    }
+
+    /**
+     * Call this to build an event property by property instead of as a Map. The {@link EventBuilder} serializes the
+     * event as it is built, so this is the cheapest way to add an event. Global properties, the timestamp and
+     * validation work just like with {@link #addEvent(String, java.util.Map, java.util.Map, UploadEventCallback)}.
+     * <p/>
+     * Example usage:
+     * <pre>
+     *     HatariClient.client().newEvent("transactions")
+     *             .put("amount", 42.5)
+     *             .put("currency", "EUR")
+     *             .send();
+     * </pre>
+     *
+     * @param eventCollection The collection you want to put this event into.
+     * @return a builder for the event, to be used on the calling thread only.
+     */
+    public EventBuilder newEvent(String eventCollection) {
+        return EventBuilder.obtain(this, eventCollection);
+    }
+
+    /**
+     * Call this to count an occurrence of something that happens too often to send as an event each time, e.g. a
+     * login attempt.
+     * <p/>
+     * Occurrences are rolled up per collection and set of dimensions, and every
+     * {@link HatariConfig#AGGREGATION_WINDOW_MILLIS} each such series is sent as one summary event: the
+     * dimensions, plus an <code>aggregate</code> property with the <code>count</code>. Keep the dimensions few and
+     * their values from a small set, since every distinct combination is a series of its own; beyond
+     * {@link HatariConfig#AGGREGATION_MAX_SERIES} series in a window, new ones are dropped.
+     * <p/>
+     * Example usage:
+     * <pre>
+     *     Map&lt;String, Object&gt; dimensions = new HashMap&lt;String, Object&gt;();
+     *     dimensions.put("outcome", "wrong_password");
+     *     dimensions.put("country", "DE");
+     *     HatariClient.client().count("login_attempts", dimensions);
+     * </pre>
+     *
+     * @param eventCollection The collection you want to put the summary events into.
+     * @param dimensions      What sets this series apart, may be null. Hatari naming conventions apply (see docs).
+     * @throws HatariException if the collection or dimensions are invalid, or the client was closed.
+     */
+    public void count(String eventCollection, Map<String, Object> dimensions) throws HatariException {
+        count(eventCollection, dimensions, 1);
+    }
+
+    /**
+     * Like {@link #count(String, java.util.Map)}, for several occurrences at once.
+     *
+     * @param increment How many occurrences to count, not negative.
+     */
+    public void count(String eventCollection, Map<String, Object> dimensions, long increment)
+            throws HatariException {
+        if (increment < 0) {
+            throw new IllegalArgumentException("Occurrences can't be counted backwards: " + increment);
+        }
+        checkOpen();
+        aggregator().count(eventCollection, dimensions, increment);
+    }
+
+    /**
+     * Call this to record a measurement of something that happens too often to send as an event each time, e.g.
+     * how long a card check took.
+     * <p/>
+     * Values are rolled up like {@link #count(String, java.util.Map)} occurrences, and the <code>aggregate</code>
+     * property of the summary event has their <code>count</code>, <code>sum</code>, <code>min</code>,
+     * <code>max</code> and {@link HatariConfig#AGGREGATION_PERCENTILES percentiles}, e.g. <code>p99</code>. The
+     * percentiles are estimated within {@link HatariConfig#AGGREGATION_RELATIVE_ACCURACY} of their value.
+     *
+     * @param eventCollection The collection you want to put the summary events into.
+     * @param dimensions      What sets this series apart, may be null. Hatari naming conventions apply (see docs).
+     * @param value           The value, which must be finite.
+     * @throws HatariException if the collection, dimensions or value are invalid, or the client was closed.
+     */
+    public void record(String eventCollection, Map<String, Object> dimensions, double value)
+            throws HatariException {
+        checkOpen();
+        aggregator().record(eventCollection, dimensions, value);
+    }
+
+    // created with the first count or record, so clients that never aggregate don't have a window timer running
+    private Aggregator aggregator() throws ClientClosedException {
+        Aggregator aggregator = this.aggregator;
+        if (aggregator == null) {
+            synchronized (this) {
+                aggregator = this.aggregator;
+                if (aggregator == null) {
+                    // close() may have taken the aggregator away since the caller checked
+                    checkOpen();
+                    this.aggregator = aggregator = new Aggregator(this, HatariConfig.AGGREGATION_WINDOW_MILLIS,
+                            HatariConfig.AGGREGATION_MAX_SERIES, HatariConfig.AGGREGATION_RELATIVE_ACCURACY,
+                            HatariConfig.AGGREGATION_PERCENTILES);
+                }
             }
         }
-        newEvent.put("hatari", hatariProperties);
+        return aggregator;
+    }
 
-        // handle global properties
-        Map<String, Object> globalProperties = getGlobalProperties();
-        if (globalProperties != null) {
-            newEvent.putAll(globalProperties);
+    /**
+     * Queues a summary event of the {@link Aggregator}, past the traffic rules and duplicate filter, and whether
+     * or not the client was closed since.
+     */
+    void enqueueSummaryEvent(String eventCollection, Map<String, Object> event, long timestamp)
+            throws HatariException {
+        ComposedEvent summary = validateAndBuildEvent(eventCollection, event, null, timestamp, 1);
+        enqueueSerializedEvent(eventCollection, serializeEvent(summary), null);
+    }
+
+    void addSerializedEvent(String eventCollection, byte[] event, UploadEventCallback callback)
+            throws HatariException {
+        checkOpen();
+        enqueueSerializedEvent(eventCollection, event, callback);
+    }
+
+    // without checking whether the client is open, for events the pipeline took before it was closed
+    private void enqueueSerializedEvent(String eventCollection, byte[] event, UploadEventCallback callback)
+            throws HatariException {
+        SpillStore spillStore = this.spillStore;
+        EventBatcher eventBatcher = this.eventBatcher;
+        UploadEventCallback trackedCallback = metrics.track(eventCollection, callback);
+        if (spillStore != null) {
+            // keep the event on disk until it was delivered
+            spillStore.append(eventCollection, event, trackedCallback);
+            metrics.recordEvents(eventCollection, EventOutcome.ENQUEUED, 1);
+        } else if (eventBatcher != null) {
+            // hold on to the event until its batch is sent
+            eventBatcher.add(eventCollection, event, trackedCallback);
+            metrics.recordEvents(eventCollection, EventOutcome.ENQUEUED, 1);
+        } else {
+            enqueuePendingEvent(eventCollection, event, trackedCallback);
         }
-        GlobalPropertiesEvaluator globalPropertiesEvaluator = getGlobalPropertiesEvaluator();
-        if (globalPropertiesEvaluator != null) {
-            Map<String, Object> props = globalPropertiesEvaluator.getGlobalProperties(projectKey);
-            if (props != null) {
-                newEvent.putAll(props);
+    }
+
+    private void enqueuePendingEvent(String eventCollection, byte[] event, UploadEventCallback trackedCallback)
+            throws QueueFullException {
+        long timeoutMillis = uploadQueue.getOverflowPolicy() == OverflowPolicy.BLOCK
+                ? HatariConfig.OVERFLOW_BLOCK_TIMEOUT_MILLIS : 0;
+        SlabPool.Slice pendingEvent = pendingEvents.allocate(event, timeoutMillis);
+        if (pendingEvent == null) {
+            UploadTask task = new HatariHttpRequestRunnable(this, uploadQueue, eventCollection, event,
+                    trackedCallback);
+            if (!pendingEvents.fits(event.length)) {
+                // too big for a slab, so it waits on the heap
+                enqueue(eventCollection, task);
+                return;
             }
+            try {
+                uploadQueue.overflow(task, "The memory for pending events is used up");
+            } catch (QueueFullException e) {
+                metrics.recordEvents(eventCollection, EventOutcome.DROPPED, 1);
+                throw e;
+            }
+            return;
+        }
+        try {
+            enqueue(eventCollection, new HatariHttpRequestRunnable(this, uploadQueue, eventCollection, pendingEvent,
+                    trackedCallback));
+        } catch (QueueFullException e) {
+            pendingEvent.release();
+            throw e;
+        }
+    }
+
+    private static AdaptiveConcurrencyLimit newConcurrencyLimit() {
+        return new AdaptiveConcurrencyLimit(HatariConfig.CONCURRENCY_INITIAL_LIMIT, HatariConfig.CONCURRENCY_MIN_LIMIT,
+                HatariConfig.CONCURRENCY_MAX_LIMIT, HatariConfig.CONCURRENCY_LATENCY_TOLERANCE,
+                HatariConfig.CONCURRENCY_BACKOFF_RATIO);
+    }
+
+    /**
+     * Applies the traffic rules of a collection to an event, and tells the callback if the event is discarded.
+     *
+     * @return the sample rate to send the event with, or 0 if it was discarded.
+     */
+    double admit(String eventCollection, TrafficRules rules, Object sampleKeyValue, UploadEventCallback callback) {
+        Admission admission = rules.admit(sampleKeyValue);
+        switch (admission) {
+            case SAMPLED_OUT:
+                metrics.recordEvents(eventCollection, EventOutcome.SAMPLED_OUT, 1);
+                UploadCallbacks.notify(callback, 0, false, clientError(HatariConstants.SAMPLED_OUT_ERROR,
+                        "The sampling policy of the collection discarded the event."));
+                return 0;
+            case RATE_LIMITED:
+                metrics.recordEvents(eventCollection, EventOutcome.RATE_LIMITED, 1);
+                UploadCallbacks.notify(callback, 0, false, clientError(HatariConstants.RATE_LIMITED_ERROR,
+                        "The rate limit of the collection discarded the event."));
+                return 0;
+            case SAMPLED_IN:
+                metrics.recordEvents(eventCollection, EventOutcome.SAMPLED_IN, 1);
+                return rules.getSampleRate();
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Checks an event against the {@link DuplicateFilter}, and tells the callback if the event is discarded.
+     *
+     * @return true if the event was discarded as a duplicate.
+     */
+    boolean discardDuplicate(String eventCollection, long fingerprint, UploadEventCallback callback) {
+        DuplicateFilter duplicateFilter = this.duplicateFilter;
+        if (duplicateFilter == null || !duplicateFilter.isDuplicate(fingerprint)) {
+            return false;
+        }
+        metrics.recordEvents(eventCollection, EventOutcome.DUPLICATE, 1);
+        UploadCallbacks.notify(callback, 0, false, clientError(HatariConstants.DUPLICATE_EVENT_ERROR,
+                "The same event was added within the duplicate filter's window."));
+        return true;
+    }
+
+    // in the format of the API's errors, so callbacks can tell them apart the same way
+    static String clientError(String name, String description) {
+        return "{\"" + HatariConstants.NAME_PARAM + "\":\"" + name + "\",\"" + HatariConstants.DESCRIPTION_PARAM
+                + "\":\"" + new String(JsonStringEncoder.getInstance().quoteAsString(description)) + "\"}";
+    }
+
+    private void checkOpen() throws ClientClosedException {
+        if (closed) {
+            throw new ClientClosedException("Events can't be added to a client that was closed.");
         }
-        // now handle user-defined properties
-        newEvent.putAll(event);
+    }
+
+    void enqueue(String eventCollection, UploadTask task) throws QueueFullException {
+        try {
+            uploadQueue.enqueue(task);
+        } catch (QueueFullException e) {
+            metrics.recordEvents(eventCollection, EventOutcome.DROPPED, task.getEventCount());
+            throw e;
+        }
+        metrics.recordEvents(eventCollection, EventOutcome.ENQUEUED, task.getEventCount());
+    }
+
+    UploadQueue getUploadQueue() {
+        return uploadQueue;
+    }
+
+    /**
+     * Getter for the {@link HatariMetrics} of this instance of the {@link HatariClient}: how many events were
+     * enqueued, sent, failed or dropped per collection, upload latencies, and the queue depth. Call
+     * {@link HatariMetrics#registerMBean()} to export them through JMX, or add a
+     * {@link io.hatari.client.java.metrics.HatariMetricsListener} to feed them into your own metrics library.
+     *
+     * @return the {@link HatariMetrics}
+     */
+    public HatariMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Makes every {@link HatariClient} run its uploads on the given executor from now on, instead of the default
+     * pool of up to {@link HatariConfig#NUM_THREADS_FOR_HTTP_REQUESTS} threads. Uploads already running finish where
+     * they are. On Java 21 and newer, virtual threads let many more uploads wait on the network at once:
+     * <pre>
+     *     HatariClient.setUploadExecutor(HatariExecutors.virtualThreadPerTask(), 256);
+     * </pre>
+     *
+     * @param executor             The executor to run uploads on.
+     * @param maxConcurrentUploads How many uploads may run at once. The upload queue never hands the executor
+     *                             more tasks than this, so it should not be more than a thread pool's size.
+     */
+    public static void setUploadExecutor(Executor executor, int maxConcurrentUploads) {
+        Uploads.SCHEDULER.setExecutor(executor, maxConcurrentUploads);
+    }
+
+    /**
+     * Getter for the direct memory that serialized events of this instance of the {@link HatariClient} wait for
+     * their upload in, see {@link HatariConfig#PENDING_EVENT_BUFFER_BYTES}. Events that are batched or stored in a
+     * spill directory are held there instead.
+     *
+     * @return the {@link SlabPool}
+     */
+    public SlabPool getPendingEventPool() {
+        return pendingEvents;
+    }
+
+    /**
+     * Getter for the executor uploads currently run on, see {@link #setUploadExecutor(Executor, int)}.
+     *
+     * @return the upload executor
+     */
+    public static Executor getUploadExecutor() {
+        return Uploads.SCHEDULER.getExecutor();
+    }
+
+    /**
+     * Getter for the pool of up to {@link HatariConfig#NUM_THREADS_FOR_HTTP_REQUESTS} threads uploads run on unless
+     * {@link #setUploadExecutor(Executor, int)} replaced it. It takes the place of the <code>EXECUTOR_SERVICE</code>
+     * constant, which created the pool as soon as this class was loaded.
+     *
+     * @return the default upload executor
+     */
+    public static ExecutorService getDefaultUploadExecutor() {
+        return Uploads.EXECUTOR;
+    }
+
+    /**
+     * Getter for how many uploads are waiting in the upload queue of this instance of the {@link HatariClient}.
+     *
+     * @return the number of queued uploads
+     */
+    public int getUploadQueueDepth() {
+        return uploadQueue.getDepth();
+    }
+
+    /**
+     * Getter for how many events the upload queue of this instance of the {@link HatariClient} has dropped or
+     * refused because it was full. See {@link HatariConfig#OVERFLOW_POLICY}.
+     *
+     * @return the number of dropped events
+     */
+    public long getDroppedEventCount() {
+        return uploadQueue.getDroppedEventCount() + uploadQueue.getRejectedEventCount();
+    }
+
+    /**
+     * Getter for this client's share of the upload threads, see {@link #setUploadWeight(int)}.
+     *
+     * @return the upload weight
+     */
+    public int getUploadWeight() {
+        return uploadQueue.getWeight();
+    }
+
+    /**
+     * Call this to give this client a bigger or smaller share of the upload threads.
+     * <p/>
+     * Every {@link HatariClient} has its own upload queue, and the queues of all clients take turns on the shared
+     * upload executor. On its turn, a client may start as many uploads as its weight, so a client with weight 3
+     * gets three times the uploads of a client with weight 1 while both have events waiting. Defaults to
+     * {@link HatariConfig#UPLOAD_WEIGHT}.
+     *
+     * @param uploadWeight The weight, at least 1.
+     */
+    public void setUploadWeight(int uploadWeight) {
+        uploadQueue.setWeight(uploadWeight);
+    }
+
+    /**
+     * Getter for the {@link AdaptiveConcurrencyLimit} of this instance of the {@link HatariClient}, whose
+     * {@link AdaptiveConcurrencyLimit#getLimit()} is how many of its uploads may run at once right now.
+     *
+     * @return the {@link AdaptiveConcurrencyLimit}
+     */
+    public AdaptiveConcurrencyLimit getConcurrencyLimit() {
+        return uploadQueue.getConcurrencyLimit();
+    }
+
+    /**
+     * Call this to change how many uploads of this client may run at once, whatever its weight.
+     * <p/>
+     * By default the limit adapts to how the Hatari API is doing: it starts at
+     * {@link HatariConfig#CONCURRENCY_INITIAL_LIMIT}, climbs while requests come back fast, and backs off as soon as
+     * they slow down, time out or are rejected as too many, staying between {@link HatariConfig#CONCURRENCY_MIN_LIMIT}
+     * and {@link HatariConfig#CONCURRENCY_MAX_LIMIT}. A project whose uploads are slow therefore ties up few upload
+     * threads, leaving the rest to other clients. Use {@link AdaptiveConcurrencyLimit#fixed(int)} to turn this off.
+     *
+     * @param concurrencyLimit The limit for uploads started from now on.
+     */
+    public void setConcurrencyLimit(AdaptiveConcurrencyLimit concurrencyLimit) {
+        uploadQueue.setConcurrencyLimit(concurrencyLimit);
+    }
 
-        return newEvent;
+    /**
+     * Sends everything this client holds on to right away, batches, stored events and the summaries of the current
+     * aggregation window alike, and waits until the Hatari API answered for all of it. Uploads run in parallel, as
+     * many at a time as the {@link #getConcurrencyLimit()} allows.
+     *
+     * @param timeoutMillis How long to wait at most.
+     * @return true if every event was delivered or failed for good, false if the timeout passed first.
+     */
+    public boolean flush(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Aggregator aggregator = this.aggregator;
+        if (aggregator != null) {
+            // the current window is sent early rather than left behind
+            aggregator.flush();
+        }
+        EventPipeline eventPipeline = this.eventPipeline;
+        if (eventPipeline != null && !eventPipeline.awaitProcessed(deadline)) {
+            return false;
+        }
+        EventBatcher eventBatcher = this.eventBatcher;
+        if (eventBatcher != null) {
+            eventBatcher.flush();
+        }
+        SpillStore spillStore = this.spillStore;
+        if (spillStore != null && !spillStore.flush(deadline)) {
+            return false;
+        }
+        return uploadQueue.awaitIdle(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
     }
 
-    private void validateEventCollection(String projectKey) throws InvalidProjectException {
+    /**
+     * Like {@link #warmUp(long)}, waiting at most {@link HatariConfig#CONNECT_TIMEOUT_MILLIS} for the connections.
+     *
+     * @return true if everything was warmed up.
+     */
+    public boolean warmUp() {
+        return warmUp(HatariConfig.CONNECT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Does ahead of time what the first events would otherwise wait for, so they go out as fast as later ones.
+     * Call this at startup, after configuring the client and before it takes traffic; short-lived jobs and freshly
+     * deployed services gain the most.
+     * <p/>
+     * Warming up serializes sample events of common shapes, with strings, numbers, booleans, dates, lists and
+     * nested objects, in the client's {@link WireFormat}, so Jackson has built its serializers, and reads sample
+     * responses so it has built its deserializers. It then opens a connection to every endpoint with a
+     * <code>HEAD</code> request to its root, see {@link HatariTransport#connect(String)}, so the first upload skips
+     * the DNS lookup and the TCP and TLS handshakes. No events are sent, and nothing is counted in the
+     * {@link HatariMetrics}. Failures are logged rather than thrown.
+     * <p/>
+     * Example usage:
+     * <pre>
+     *     HatariClient.initialize("project_token", "api_key");
+     *     HatariClient.client().warmUp();
+     * </pre>
+     *
+     * @param timeoutMillis How long to wait for the connections at most.
+     * @return true if everything was warmed up, false if an endpoint couldn't be reached in time.
+     */
+    public boolean warmUp(long timeoutMillis) {
+        return warmUp(timeoutMillis, Collections.<Map<String, Object>>emptyList());
+    }
+
+    /**
+     * Like {@link #warmUp(long)}, but also serializes the given events, e.g. ones with values of the
+     * application's own classes, which Jackson would otherwise only build a serializer for when the first of them
+     * is added. The events are neither validated nor sent.
+     *
+     * @param timeoutMillis How long to wait for the connections at most.
+     * @param sampleEvents  Events like the ones the application adds.
+     * @return true if everything was warmed up, false if a sample event couldn't be serialized or an endpoint
+     * couldn't be reached in time.
+     */
+    public boolean warmUp(long timeoutMillis, Collection<? extends Map<String, Object>> sampleEvents) {
+        WarmUp warmUp = new WarmUp(this);
+        boolean serialized = warmUp.serialize(sampleEvents);
+        return warmUp.connect(timeoutMillis) && serialized;
+    }
+
+    /**
+     * Getter for whether {@link #close()} was called on this instance of the {@link HatariClient}.
+     *
+     * @return true if the client was closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Stops taking events and flushes the ones already added, waiting at most
+     * {@link HatariConfig#CLOSE_TIMEOUT_MILLIS} for them to be delivered. Events that still weren't sent by then
+     * are reported to their callbacks as failed, unless a spill directory was set, in which case they stay there.
+     * <p/>
+     * Adding an event to a closed client throws a {@link ClientClosedException}.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (aggregator != null) {
+            // the last window goes out with everything else
+            aggregator.close();
+            aggregator = null;
+        }
+        if (!flush(HatariConfig.CLOSE_TIMEOUT_MILLIS)) {
+            HatariLogging.log("Closing the client before all of its events were delivered.");
+        }
+        if (eventPipeline != null) {
+            eventPipeline.stop();
+            eventPipeline = null;
+        }
+        eventBatcher = null;
+        if (spillStore != null) {
+            spillStore.close();
+            spillStore = null;
+        }
+        uploadQueue.close();
+        try {
+            metrics.unregisterMBean();
+        } catch (JMException e) {
+            HatariLogging.log("Could not unregister the metrics MBean: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * Getter for whether request bodies sent by this instance of the {@link HatariClient} are gzip-compressed.
+     *
+     * @return true if compression is enabled
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * Call this to gzip request bodies before they are sent, trading a little CPU for much less bandwidth. Events
+     * tend to repeat the same property names and values, so they usually compress 5-10x.
+     * <p/>
+     * Bodies smaller than {@link HatariConfig#COMPRESSION_THRESHOLD_BYTES} are still sent uncompressed. This works
+     * best together with {@link #setBatchingEnabled(boolean)}.
+     *
+     * @param compressionEnabled Whether request bodies should be compressed.
+     */
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * Getter for the {@link WireFormat} request bodies of this instance of the {@link HatariClient} are encoded in.
+     * This is JSON again if the Hatari API rejected the format that was set.
+     *
+     * @return the {@link WireFormat}
+     */
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    /**
+     * Call this to encode request bodies in another format than JSON, e.g. {@link WireFormat#SMILE} or
+     * {@link WireFormat#CBOR}, which take less CPU to write and make smaller bodies. The format is announced in the
+     * <code>Content-Type</code> header. If the Hatari API answers <code>415 Unsupported Media Type</code>, the
+     * request is sent again as JSON, and so are all requests after it until this is called again.
+     *
+     * @param wireFormat The format to encode request bodies in.
+     */
+    public synchronized void setWireFormat(WireFormat wireFormat) {
+        if (wireFormat == null) {
+            throw new IllegalArgumentException("The wire format must not be null.");
+        }
+        this.wireFormat = wireFormat;
+    }
+
+    /**
+     * Called by the uploads when the Hatari API doesn't accept a wire format, so that later requests are sent as
+     * JSON right away.
+     *
+     * @param rejected The format the API answered <code>415 Unsupported Media Type</code> to.
+     */
+    public synchronized void onWireFormatRejected(WireFormat rejected) {
+        // the format may have been changed again in the meantime
+        if (wireFormat == rejected) {
+            HatariLogging.log("The Hatari API does not accept %s, falling back to JSON.", rejected);
+            wireFormat = WireFormat.JSON;
+        }
+    }
+
+    /**
+     * Getter for the {@link EndpointPool} that picks the endpoint each request of this instance of the
+     * {@link HatariClient} goes to, with what it learned about their latency and health.
+     *
+     * @return the {@link EndpointPool}
+     */
+    public EndpointPool getEndpointPool() {
+        return endpointPool;
+    }
+
+    /**
+     * Call this to send requests to other addresses than {@link HatariConfig#ENDPOINTS}, e.g. a regional endpoint,
+     * a local relay or a test server, or to spread them over several ingest hosts.
+     * <p/>
+     * Each request goes to the endpoint that is expected to answer first, judging by recent round trips and the
+     * requests still in flight. An endpoint that failed {@link HatariConfig#ENDPOINT_FAILURE_THRESHOLD} times in a
+     * row is left alone for {@link HatariConfig#ENDPOINT_EJECT_MILLIS}.
+     * <p/>
+     * Example usage:
+     * <pre>
+     * HatariClient.client().setEndpoints("https://eu.api.hatario.io", "https://api.hatario.io");
+     * </pre>
+     *
+     * @param addresses The base URLs of the endpoints, at least one. What was learned about the endpoints set
+     *                  before is forgotten.
+     */
+    public void setEndpoints(String... addresses) {
+        if (addresses == null || addresses.length == 0) {
+            throw new IllegalArgumentException("At least one endpoint must be specified.");
+        }
+        List<Endpoint> endpoints = new ArrayList<Endpoint>(addresses.length);
+        for (String address : addresses) {
+            endpoints.add(new Endpoint(address, HatariConfig.ENDPOINT_FAILURE_THRESHOLD,
+                    HatariConfig.ENDPOINT_EJECT_MILLIS, HatariConfig.ENDPOINT_LATENCY_DECAY_MILLIS));
+        }
+        this.endpointPool = new EndpointPool(endpoints, HatariConfig.HEDGE_PERCENTILE,
+                HatariConfig.HEDGE_MIN_DELAY_MILLIS, HatariConfig.HEDGE_BUDGET_RATIO);
+    }
+
+    /**
+     * Getter for whether requests for the collection are hedged, see {@link #setHedgingEnabled(String, boolean)}.
+     *
+     * @param eventCollection The collection.
+     * @return true if hedging is enabled
+     */
+    public boolean isHedgingEnabled(String eventCollection) {
+        return !hedgedCollections.isEmpty() && hedgedCollections.contains(eventCollection);
+    }
+
+    /**
+     * Call this to hedge the requests for a latency-critical collection: a request that wasn't answered after
+     * {@link HatariConfig#HEDGE_PERCENTILE} percent of recent requests were is sent again, to another endpoint if
+     * there is one, and the first answer wins. Both copies carry the same event ids, so the Hatari API keeps only
+     * one of them. Hedges are limited to {@link HatariConfig#HEDGE_BUDGET_RATIO} of the hedged requests.
+     *
+     * @param eventCollection The collection.
+     * @param hedgingEnabled  Whether its requests should be hedged.
+     */
+    public void setHedgingEnabled(String eventCollection, boolean hedgingEnabled) {
+        if (hedgingEnabled) {
+            hedgedCollections.add(eventCollection);
+        } else {
+            hedgedCollections.remove(eventCollection);
+        }
+    }
+
+    /**
+     * Getter for whether events added to this instance of the {@link HatariClient} go through the event pipeline,
+     * see {@link #setPipelineEnabled(boolean)}.
+     *
+     * @return true if the pipeline is enabled
+     */
+    public boolean isPipelineEnabled() {
+        return eventPipeline != null;
+    }
+
+    /**
+     * Call this to take everything but a shallow copy of the event off the thread that calls
+     * {@link #addEvent(String, Map, Map, UploadEventCallback)}, e.g. on a request path where every microsecond
+     * counts.
+     * <p/>
+     * With the pipeline, <code>addEvent</code> publishes the event to a lock-free ring of
+     * {@link HatariConfig#PIPELINE_CAPACITY} events and returns. {@link HatariConfig#PIPELINE_THREADS} threads of
+     * this client then apply the traffic rules, validate, merge the global properties and serialize the event.
+     * So <code>addEvent</code> only throws if the client was closed or the ring is full, and events that turn out
+     * to be invalid are reported to their callback and the {@link #setDeadLetterHandler(DeadLetterHandler)
+     * dead-letter handler} instead. Nested maps and lists of an event must not be changed after it was added. With
+     * more than one thread, events may be queued in another order than they were added in.
+     * <p/>
+     * The {@link EventBuilder} and {@link #addEvents(String, Iterable)} don't use the pipeline.
+     *
+     * @param pipelineEnabled Whether events should go through the pipeline. Turning it off lets the pipeline finish
+     *                        the events it holds first.
+     */
+    public synchronized void setPipelineEnabled(boolean pipelineEnabled) {
+        if (pipelineEnabled && eventPipeline == null && !closed) {
+            eventPipeline = new EventPipeline(this, HatariConfig.PIPELINE_CAPACITY, HatariConfig.PIPELINE_THREADS,
+                    HatariConfig.PIPELINE_MAX_PARK_MICROS);
+        } else if (!pipelineEnabled && eventPipeline != null) {
+            EventPipeline stopping = eventPipeline;
+            eventPipeline = null;
+            stopping.stop();
+        }
+    }
+
+    /**
+     * Getter for how many events wait for the event pipeline of this instance of the {@link HatariClient}.
+     *
+     * @return the number of events in the pipeline, 0 if it isn't enabled
+     */
+    public int getPipelineDepth() {
+        EventPipeline eventPipeline = this.eventPipeline;
+        return eventPipeline == null ? 0 : eventPipeline.getDepth();
+    }
+
+    /**
+     * Getter for the {@link DeadLetterHandler} of this instance of the {@link HatariClient}.
+     *
+     * @return the {@link DeadLetterHandler}, or null if none was set
+     */
+    public DeadLetterHandler getDeadLetterHandler() {
+        return deadLetterHandler;
+    }
+
+    /**
+     * Call this to hear about events the event pipeline took but couldn't queue, e.g. because they were invalid.
+     * Their callbacks are told either way.
+     *
+     * @param deadLetterHandler The handler, or null for none.
+     */
+    public void setDeadLetterHandler(DeadLetterHandler deadLetterHandler) {
+        this.deadLetterHandler = deadLetterHandler;
+    }
+
+    /**
+     * Getter for whether events added to this instance of the {@link HatariClient} are sent in batches.
+     *
+     * @return true if batching is enabled
+     */
+    public boolean isBatchingEnabled() {
+        return eventBatcher != null;
+    }
+
+    /**
+     * Call this to send events in batches instead of one request per event.
+     * <p/>
+     * While batching is enabled, events are buffered per event collection and each buffer is sent as a single
+     * request once it holds {@link HatariConfig#BATCH_MAX_EVENTS} events or {@link HatariConfig#BATCH_MAX_BYTES}
+     * bytes, or once its oldest event has waited {@link HatariConfig#BATCH_LINGER_MILLIS} milliseconds. Each
+     * event's {@link UploadEventCallback} is still invoked with that event's own result.
+     * <p/>
+     * Disabling batching sends whatever is currently buffered right away.
+     *
+     * @param batchingEnabled Whether events should be sent in batches.
+     */
+    public synchronized void setBatchingEnabled(boolean batchingEnabled) {
+        if (batchingEnabled && eventBatcher == null) {
+            eventBatcher = new EventBatcher(this, uploadQueue, HatariConfig.BATCH_MAX_EVENTS,
+                    HatariConfig.BATCH_MAX_BYTES, HatariConfig.BATCH_LINGER_MILLIS);
+        } else if (!batchingEnabled && eventBatcher != null) {
+            EventBatcher oldBatcher = eventBatcher;
+            eventBatcher = null;
+            oldBatcher.flush();
+        }
+    }
+
+    /**
+     * Getter for the directory events are stored in until they were delivered, see
+     * {@link #setSpillDirectory(java.io.File)}.
+     *
+     * @return the spill directory, or null if events are only held in memory
+     */
+    public synchronized File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Call this to keep events on the local file system until they were delivered, instead of only in memory.
+     * <p/>
+     * Each event collection gets an append-only log of memory-mapped files in this directory. Events are sent from
+     * the log in batches (see {@link HatariConfig#BATCH_MAX_EVENTS}) and only removed once the Hatari API answered
+     * for them, so they survive outages, crashes and restarts. Events left over from a previous run are sent as
+     * soon as the directory is set again. A collection holds at most
+     * {@link io.hatari.client.java.util.HatariConstants#MAX_EVENTS_PER_COLLECTION} undelivered events, after
+     * which the oldest are aged out.
+     * <p/>
+     * While a spill directory is set, it takes precedence over {@link #setBatchingEnabled(boolean)}. Pass null to
+     * go back to keeping events in memory; events that weren't delivered yet stay in the directory.
+     *
+     * @param spillDirectory The directory to store events in, or null.
+     * @throws EventStoreException if the directory can't be used.
+     */
+    public synchronized void setSpillDirectory(File spillDirectory) throws EventStoreException {
+        SpillStore oldStore = this.spillStore;
+        this.spillStore = spillDirectory == null ? null : new SpillStore(this, spillDirectory, uploadQueue);
+        this.spillDirectory = spillDirectory;
+        if (oldStore != null) {
+            oldStore.close();
+        }
+    }
+
+    byte[] serializeEvent(Map<String, Object> event) throws InvalidEventException {
+        try {
+            return MAPPER.writeValueAsBytes(event);
+        } catch (IOException e) {
+            throw new InvalidEventException("The event could not be serialized to JSON: " + e.getMessage());
+        }
+    }
+
+    ComposedEvent validateAndBuildEvent(String projectKey, Map<String, Object> event,
+                                        Map<String, Object> hatariProperties) throws HatariException {
+        return validateAndBuildEvent(projectKey, event, hatariProperties, System.currentTimeMillis(), 1);
+    }
+
+    ComposedEvent validateAndBuildEvent(String projectKey, Map<String, Object> event,
+                                        Map<String, Object> hatariProperties, long timestamp, double sampleRate)
+            throws HatariException {
+        validateEventCollection(projectKey);
+        eventValidator.validateEvent(projectKey, event);
+
+        if (HatariLogging.isLoggingEnabled()) {
+            HatariLogging.log("Adding event to project: %s", projectKey);
+        }
+
+        // global properties and the timestamp are only merged in when the event is serialized
+        return new ComposedEvent(event, hatariProperties, timestamp, EventIds.next(), sampleRate,
+                evaluateGlobalProperties(projectKey), serializedGlobalProperties);
+    }
+
+    /**
+     * @return the properties of the {@link GlobalPropertiesEvaluator} for the collection, from the cache if the
+     * evaluator allows it, or null if there are none.
+     */
+    SerializedProperties evaluateGlobalProperties(String eventCollection) {
+        GlobalPropertiesCache cache = globalPropertiesCache;
+        if (cache != null) {
+            return cache.get(eventCollection);
+        }
+        GlobalPropertiesEvaluator evaluator = globalPropertiesEvaluator;
+        return evaluator == null ? null : SerializedProperties.wrap(evaluator.getGlobalProperties(eventCollection));
+    }
+
+    /**
+     * @return the global properties as they were serialized by {@link #setGlobalProperties(java.util.Map)}, or
+     * null if there are none.
+     */
+    SerializedProperties getSerializedGlobalProperties() {
+        return serializedGlobalProperties;
+    }
+
+    void validateEventCollection(String projectKey) throws InvalidProjectException {
         if (projectKey == null || projectKey.length() == 0) {
             throw new InvalidProjectException("You must specify a non-null, non-empty event collection: " + projectKey);
         }
@@ -204,45 +1283,116 @@ public class HatariClient {
         }
     }
 
-    private void validateEvent(Map<String, Object> event) throws InvalidEventException {
-        validateEvent(event, 0);
+    /**
+     * Getter for the {@link EventValidator} that checks events added to this instance of the {@link HatariClient}.
+     * Its counters tell how many events were validated and how long that took.
+     *
+     * @return the {@link EventValidator}
+     */
+    public EventValidator getEventValidator() {
+        return eventValidator;
     }
 
+    /**
+     * Call this to check every event added to a collection against a schema, e.g. to catch a misspelled or
+     * mistyped property before it reaches the Hatari API. Events that don't fit the schema are rejected with an
+     * {@link InvalidEventException}.
+     * <p/>
+     * Example usage:
+     * <pre>
+     *     HatariClient.client().registerSchema("transactions", new EventSchema()
+     *             .required("amount", PropertyType.NUMBER)
+     *             .optional("card", PropertyType.OBJECT));
+     * </pre>
+     *
+     * @param eventCollection The collection the schema applies to.
+     * @param schema          The schema, or null to stop checking the collection against a schema.
+     * @throws InvalidEventException if the schema declares a property name no event may have.
+     */
+    public void registerSchema(String eventCollection, EventSchema schema) throws InvalidEventException {
+        eventValidator.registerSchema(eventCollection, schema);
+    }
 
-    @SuppressWarnings("unchecked") // cast to generic Map will always be okay in this case
-    private void validateEvent(Map<String, Object> event, int depth) throws InvalidEventException {
-        if (depth == 0) {
-            if (event == null || event.size() == 0) {
-                throw new InvalidEventException("You must specify a non-null, non-empty event.");
-            }
-            if (event.containsKey("hatari")) {
-                throw new InvalidEventException("An event cannot contain a root-level property named 'hatari'.");
-            }
-        }
+    /**
+     * Call this to send only a share of the events added to a collection, e.g. for a high-volume collection whose
+     * events are only ever counted. Each event that is sent carries the rate in <code>hatari.sample_rate</code>,
+     * so counts can be scaled back up. Events that are discarded are reported to their callback as a
+     * {@link HatariConstants#SAMPLED_OUT_ERROR} and counted in the {@link HatariMetrics}.
+     * <p/>
+     * Example usage:
+     * <pre>
+     *     // keep all events of one in ten users
+     *     HatariClient.client().setSamplingPolicy("page_views", SamplingPolicy.byProperty("user_id", 0.1));
+     * </pre>
+     *
+     * @param eventCollection The collection the policy applies to.
+     * @param samplingPolicy  The policy, or null to send every event of the collection.
+     */
+    public void setSamplingPolicy(String eventCollection, SamplingPolicy samplingPolicy) {
+        trafficShaper.setSamplingPolicy(eventCollection, samplingPolicy);
+    }
 
-        for (Map.Entry<String, Object> entry : event.entrySet()) {
-            String key = entry.getKey();
-            if (key.contains(".")) {
-                throw new InvalidEventException("An event cannot contain a property with the period (.) character in it.");
-            }
-            if (key.startsWith("$")) {
-                throw new InvalidEventException("An event cannot contain a property that starts with the dollar sign ($) character in it.");
-            }
-            if (key.length() > 256) {
-                throw new InvalidEventException("An event cannot contain a property name longer than 256 characters.");
-            }
-            Object value = entry.getValue();
-            if (value instanceof String) {
-                String strValue = (String) value;
-                if (strValue.length() >= 10000) {
-                    throw new InvalidEventException("An event cannot contain a string property value longer than 10,000 characters.");
-                }
-            } else if (value instanceof Map) {
-                validateEvent((Map<String, Object>) value, depth + 1);
-            }
-        }
+    /**
+     * Call this to cap how many events of a collection are sent per second, e.g. to protect the project's quota
+     * from a runaway loop. Events over the limit are discarded before they are validated, reported to their
+     * callback as a {@link HatariConstants#RATE_LIMITED_ERROR} and counted in the {@link HatariMetrics}.
+     *
+     * @param eventCollection The collection the limit applies to.
+     * @param eventsPerSecond How many events may be sent per second in the long run.
+     * @param burst           How many events may be sent at once after a quiet period.
+     */
+    public void setRateLimit(String eventCollection, double eventsPerSecond, int burst) {
+        trafficShaper.setRateLimit(eventCollection, new TokenBucket(eventsPerSecond, burst));
     }
 
+    /**
+     * Call this to stop limiting how many events of a collection are sent per second.
+     *
+     * @param eventCollection The collection to remove the limit from.
+     */
+    public void removeRateLimit(String eventCollection) {
+        trafficShaper.setRateLimit(eventCollection, null);
+    }
+
+    /**
+     * Getter for the {@link DuplicateFilter} of this instance of the {@link HatariClient}.
+     *
+     * @return the {@link DuplicateFilter}, or null if events aren't checked for duplicates
+     */
+    public DuplicateFilter getDuplicateFilter() {
+        return duplicateFilter;
+    }
+
+    /**
+     * Call this to drop events that are added again within a window, e.g. because a request handler or a message
+     * consumer ran twice for the same input. Events are compared by their content, see
+     * {@link io.hatari.client.java.dedup.Fingerprints}; dropped events are reported to their callback as a
+     * {@link HatariConstants#DUPLICATE_EVENT_ERROR} and counted in the {@link HatariMetrics}.
+     * <p/>
+     * This complements <code>hatari.id</code>, which every event carries so the Hatari API can drop events that
+     * reach it twice because they were retried or replayed. Bulk adds are not checked.
+     * <p/>
+     * Example usage:
+     * <pre>
+     *     // remember up to 100k events per minute, taking one in a million new events for a duplicate
+     *     HatariClient.client().setDuplicateFilter(new DuplicateFilter(60000, 100000, 0.000001));
+     * </pre>
+     *
+     * @param duplicateFilter The filter, or null to stop checking events for duplicates.
+     */
+    public void setDuplicateFilter(DuplicateFilter duplicateFilter) {
+        this.duplicateFilter = duplicateFilter;
+    }
+
+    /**
+     * Getter for the {@link TrafficShaper} that holds the sampling policies and rate limits of this instance of the
+     * {@link HatariClient}.
+     *
+     * @return the {@link TrafficShaper}
+     */
+    public TrafficShaper getTrafficShaper() {
+        return trafficShaper;
+    }
 
     /**
      * Call this to set the {@link GlobalPropertiesEvaluator} for this instance of the {@link HatariClient}.
@@ -260,6 +1410,10 @@ public class HatariClient {
      * and then construct the Map. If your global properties aren't dynamic, then just return the same Map
      * every time.
      * <p/>
+     * If the evaluator is slow, e.g. because it asks a remote service, implement
+     * {@link CacheableGlobalPropertiesEvaluator} instead. Its results are then cached per event collection for as
+     * long as it says, and refreshed on a background thread rather than the one adding the event.
+     * <p/>
      * Example usage:
      * <pre>
      *     {@code HatariClient client = HatariClient.client();
@@ -280,6 +1434,12 @@ public class HatariClient {
      */
     public void setGlobalPropertiesEvaluator(GlobalPropertiesEvaluator globalPropertiesEvaluator) {
         this.globalPropertiesEvaluator = globalPropertiesEvaluator;
+        if (globalPropertiesEvaluator instanceof CacheableGlobalPropertiesEvaluator) {
+            this.globalPropertiesCache = new GlobalPropertiesCache(
+                    (CacheableGlobalPropertiesEvaluator) globalPropertiesEvaluator);
+        } else {
+            this.globalPropertiesCache = null;
+        }
     }
 
     /**
@@ -299,6 +1459,9 @@ public class HatariClient {
      * Every time an event is added to an event collection, the SDK will check to see if this property is defined.
      * If it is, the SDK will copy all the properties from the global properties into the newly added event.
      * <p/>
+     * The Map is serialized once, when it is set, and the result is reused for every event. Changes made to the
+     * Map afterwards are not picked up until it is set again.
+     * <p/>
      * Note that because this is just a Map, it's much more difficult to create DYNAMIC global properties.
      * It also doesn't support per-collection properties. If either of these use cases are important to you, please use
      * the {@link GlobalPropertiesEvaluator}.
@@ -320,6 +1483,7 @@ public class HatariClient {
      */
     public void setGlobalProperties(Map<String, Object> globalProperties) {
         this.globalProperties = globalProperties;
+        this.serializedGlobalProperties = SerializedProperties.serialize(globalProperties);
     }
 
 }
@@ -0,0 +1,35 @@
+package io.hatari.client.java;
+
+import io.hatari.client.java.io.ResponseClassifier;
+import io.hatari.client.java.util.UploadResponseCallback;
+import io.hatari.client.java.util.UploadResult;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The future returned by {@link HatariClient#addEventAsync(String, java.util.Map)}, which is also the callback
+ * that completes it.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+class UploadFuture extends CompletableFuture<UploadResult> implements UploadResponseCallback {
+
+    private final long startNanos = System.nanoTime();
+
+    @Override
+    public void onSuccess() {
+        onResponse(0, true, null);
+    }
+
+    @Override
+    public void onError(String responseBody) {
+        onResponse(0, false, responseBody);
+    }
+
+    @Override
+    public void onResponse(int statusCode, boolean success, String responseBody) {
+        String errorName = success ? null : ResponseClassifier.getErrorName(responseBody);
+        complete(new UploadResult(success, statusCode, System.nanoTime() - startNanos, errorName, responseBody));
+    }
+}
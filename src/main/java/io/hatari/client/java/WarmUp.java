@@ -0,0 +1,163 @@
+package io.hatari.client.java;
+
+import io.hatari.client.java.dedup.EventIds;
+import io.hatari.client.java.exceptions.HatariException;
+import io.hatari.client.java.io.Endpoint;
+import io.hatari.client.java.io.HatariTransport;
+import io.hatari.client.java.io.WireFormat;
+import io.hatari.client.java.util.GeneralUtil;
+import io.hatari.client.java.util.HatariLogging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Does for {@link HatariClient#warmUp(long)} what the first events would otherwise wait for.
+ * <p/>
+ * Jackson builds a serializer the first time it meets a class, and reading the first response builds the
+ * deserializers; the JDK opens a connection, with its DNS lookup and TCP and TLS handshakes, for the first request
+ * to a host. Together that costs the first event a few hundred milliseconds. Warming up serializes sample events in
+ * the client's wire format without sending them, parses sample responses, and opens a connection to every endpoint
+ * on the upload executor, so they are in the JDK's keep-alive cache when the first upload needs one.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+final class WarmUp {
+
+    // the API's answers to a single event and to a batch with a rejected event
+    private static final String[] SAMPLE_RESPONSES = {
+            "{\"created\":true}",
+            "{\"warm_up\":[{\"success\":true},{\"success\":false,\"error\":{\"name\":\"InvalidPropertyNameError\","
+                    + "\"description\":\"An invalid property name.\"}}]}"};
+
+    private final HatariClient hatariClient;
+
+    WarmUp(HatariClient hatariClient) {
+        this.hatariClient = hatariClient;
+    }
+
+    /**
+     * Serializes the sample events, and the built-in ones, like real events of the client would be.
+     *
+     * @return true if all of them could be serialized.
+     */
+    boolean serialize(Collection<? extends Map<String, Object>> sampleEvents) {
+        List<Map<String, Object>> events = new ArrayList<Map<String, Object>>(sampleEvents);
+        events.addAll(builtInSampleEvents());
+        // which also sets up the logger, which every event asks whether it is enabled
+        HatariLogging.log("Warming up with %d sample events.", events.size());
+        Map<String, Object> hatariProperties = new HashMap<String, Object>();
+        hatariProperties.put("timestamp", Calendar.getInstance());
+
+        WireFormat wireFormat = hatariClient.getWireFormat();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<byte[]> serialized = new ArrayList<byte[]>();
+        try {
+            for (Map<String, Object> event : events) {
+                // no global properties evaluator, it might not expect to be asked about a made-up collection
+                ComposedEvent composed = new ComposedEvent(event, serialized.isEmpty() ? hatariProperties : null,
+                        System.currentTimeMillis(), EventIds.next(), 1, null,
+                        hatariClient.getSerializedGlobalProperties());
+                byte[] json = hatariClient.serializeEvent(composed);
+                wireFormat.writeSerializedEvent(out, json);
+                serialized.add(json);
+                out.reset();
+            }
+            wireFormat.writeBatch(out, "warm_up", serialized);
+            for (String response : SAMPLE_RESPONSES) {
+                HatariClient.MAPPER.readValue(response, Map.class);
+            }
+            return true;
+        } catch (HatariException e) {
+            HatariLogging.log("Could not serialize a sample event while warming up: %s", e.getMessage());
+        } catch (IOException e) {
+            HatariLogging.log("Could not encode a sample event while warming up: %s", e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Opens a connection to every endpoint of the client, all at once.
+     *
+     * @return true if every connection was opened within the timeout.
+     */
+    boolean connect(long timeoutMillis) {
+        final HatariTransport transport = hatariClient.getTransport();
+        List<Endpoint> endpoints = hatariClient.getEndpointPool().getEndpoints();
+        final CountDownLatch finished = new CountDownLatch(endpoints.size());
+        final AtomicBoolean failed = new AtomicBoolean();
+        for (final Endpoint endpoint : endpoints) {
+            Runnable connect = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        transport.connect(endpoint.getAddress());
+                    } catch (IOException e) {
+                        failed.set(true);
+                        HatariLogging.log("Could not connect to %s while warming up: %s", endpoint.getAddress(), e);
+                    } catch (RuntimeException e) {
+                        failed.set(true);
+                        HatariLogging.log(GeneralUtil.getStackTraceFromThrowable(e));
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            };
+            try {
+                // which also starts an upload thread ahead of the first upload
+                HatariClient.getUploadExecutor().execute(connect);
+            } catch (RejectedExecutionException e) {
+                connect.run();
+            }
+        }
+        try {
+            return finished.await(timeoutMillis, TimeUnit.MILLISECONDS) && !failed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // the value types events are mostly made of, since Jackson builds a serializer per class
+    private static List<Map<String, Object>> builtInSampleEvents() {
+        Map<String, Object> flat = new HashMap<String, Object>();
+        flat.put("string", "value");
+        flat.put("int", 1);
+        flat.put("long", 1L);
+        flat.put("double", 1.5);
+        flat.put("float", 1.5f);
+        flat.put("decimal", BigDecimal.ONE);
+        flat.put("boolean", true);
+        flat.put("date", new Date());
+        flat.put("null", null);
+
+        Map<String, Object> object = new LinkedHashMap<String, Object>();
+        object.put("string", "value");
+        object.put("int", 1);
+        List<Object> list = new ArrayList<Object>();
+        list.add(object);
+        list.add("value");
+        Map<String, Object> nested = new HashMap<String, Object>();
+        nested.put("object", object);
+        nested.put("list", list);
+        nested.put("fixed_list", Arrays.asList("a", "b"));
+        nested.put("array", new String[]{"a", "b"});
+        nested.put("numbers", new int[]{1, 2});
+        return Arrays.asList(flat, nested);
+    }
+}
@@ -0,0 +1,23 @@
+package io.hatari.client.java.data;
+
+/**
+ * A {@link GlobalPropertiesEvaluator} whose results may be reused for a while, e.g. because it looks them up in a
+ * remote configuration service.
+ * <p/>
+ * The {@link io.hatari.client.java.HatariClient} evaluates each event collection once and then serves the
+ * serialized result to every event until the time to live has passed. After that the next event triggers a refresh
+ * on a background thread and keeps getting the previous result until the refresh is done, so the evaluator is never
+ * invoked on the thread adding the event, except for the very first event of each collection.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public interface CacheableGlobalPropertiesEvaluator extends GlobalPropertiesEvaluator {
+
+    /**
+     * @param eventCollection The collection the properties were evaluated for.
+     * @return how long the properties of this collection may be reused, in milliseconds. 0 or less disables caching
+     * for the collection.
+     */
+    long getCacheTtlMillis(String eventCollection);
+}
@@ -0,0 +1,98 @@
+package io.hatari.client.java.data;
+
+import io.hatari.client.java.util.GeneralUtil;
+import io.hatari.client.java.util.HatariLogging;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caches the serialized results of a {@link CacheableGlobalPropertiesEvaluator} per event collection.
+ * <p/>
+ * Reads never lock: an entry is an immutable snapshot swapped in as a whole. Once it expires, the first reader to
+ * notice schedules a single refresh on a background thread and everybody keeps reading the old snapshot until the
+ * new one is in place. If the refresh fails, the old snapshot is kept and the next read tries again.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class GlobalPropertiesCache {
+
+    private static final ExecutorService REFRESHER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "hatari-global-properties");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final CacheableGlobalPropertiesEvaluator evaluator;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    public GlobalPropertiesCache(CacheableGlobalPropertiesEvaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * @param eventCollection The collection to get the global properties for.
+     * @return the serialized global properties, or null if the evaluator returned none.
+     */
+    public SerializedProperties get(final String eventCollection) {
+        Entry entry = entries.get(eventCollection);
+        if (entry == null) {
+            // nothing to serve yet, so this one caller has to wait
+            entry = evaluate(eventCollection);
+            if (entry.expiresAt <= entry.evaluatedAt) {
+                return entry.properties;
+            }
+            entries.put(eventCollection, entry);
+            return entry.properties;
+        }
+        if (System.currentTimeMillis() >= entry.expiresAt && entry.refreshing.compareAndSet(false, true)) {
+            final Entry stale = entry;
+            REFRESHER.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        entries.put(eventCollection, evaluate(eventCollection));
+                    } catch (RuntimeException e) {
+                        HatariLogging.log("Refreshing global properties for %s failed: %s",
+                                eventCollection, GeneralUtil.getStackTraceFromThrowable(e));
+                        stale.refreshing.set(false);
+                    }
+                }
+            });
+        }
+        return entry.properties;
+    }
+
+    private Entry evaluate(String eventCollection) {
+        long now = System.currentTimeMillis();
+        Map<String, Object> properties = evaluator.getGlobalProperties(eventCollection);
+        long ttlMillis = evaluator.getCacheTtlMillis(eventCollection);
+        if (ttlMillis <= 0) {
+            // not cached, so there's no point in serializing it up front
+            return new Entry(SerializedProperties.wrap(properties), now, now);
+        }
+        return new Entry(SerializedProperties.serialize(properties), now, now + ttlMillis);
+    }
+
+    private static class Entry {
+        private final SerializedProperties properties;
+        private final long evaluatedAt;
+        private final long expiresAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(SerializedProperties properties, long evaluatedAt, long expiresAt) {
+            this.properties = properties;
+            this.evaluatedAt = evaluatedAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
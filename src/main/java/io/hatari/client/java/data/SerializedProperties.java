@@ -0,0 +1,111 @@
+package io.hatari.client.java.data;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.json.JsonGeneratorImpl;
+import io.hatari.client.java.HatariClient;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A set of global properties that was serialized once, so that it can be spliced into any number of events
+ * without serializing, or even copying, the values again.
+ * <p/>
+ * Each property is kept as its pre-encoded name and its value as raw JSON, so events can still leave out the
+ * properties they override. Values that can't be serialized up front are kept as they are and serialized with
+ * each event instead, which is also how {@link #wrap(java.util.Map)} works for properties that are only used once,
+ * and how properties are written in any other format than JSON.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class SerializedProperties {
+
+    private final Map<String, Object> properties;
+    private final String[] keys;
+    private final SerializableString[] names;
+    private final Object[] values;
+    private final String[] rawValues;
+
+    private SerializedProperties(Map<String, Object> properties, boolean serialize) {
+        // a copy, so the application may go on changing its map, even from another thread
+        this.properties = Collections.unmodifiableMap(new LinkedHashMap<String, Object>(properties));
+        int size = this.properties.size();
+        this.keys = new String[size];
+        this.names = new SerializableString[size];
+        this.values = new Object[size];
+        this.rawValues = new String[size];
+        int i = 0;
+        for (Map.Entry<String, Object> property : this.properties.entrySet()) {
+            keys[i] = property.getKey();
+            names[i] = new SerializedString(property.getKey());
+            values[i] = property.getValue();
+            if (serialize) {
+                try {
+                    rawValues[i] = HatariClient.MAPPER.writeValueAsString(property.getValue());
+                } catch (IOException e) {
+                    // leave it to the event to fail the same way it always did
+                    rawValues[i] = null;
+                }
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Serializes the properties now. Later changes to the map are not picked up.
+     *
+     * @param properties The properties, may be null.
+     * @return the serialized properties, or null if there were none.
+     */
+    public static SerializedProperties serialize(Map<String, Object> properties) {
+        return properties == null ? null : new SerializedProperties(properties, true);
+    }
+
+    /**
+     * Wraps the properties without serializing them, for properties that are only used for a single event. Later
+     * changes to the map are not picked up either.
+     *
+     * @param properties The properties, may be null.
+     * @return the wrapped properties, or null if there were none.
+     */
+    public static SerializedProperties wrap(Map<String, Object> properties) {
+        return properties == null ? null : new SerializedProperties(properties, false);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    public boolean containsKey(String key) {
+        return properties.containsKey(key);
+    }
+
+    /**
+     * @return the properties as they were when they were serialized.
+     */
+    public Map<String, Object> asMap() {
+        return properties;
+    }
+
+    /**
+     * Writes a single property, name and value, into an object the generator is currently writing.
+     */
+    public void writeProperty(JsonGenerator generator, int index) throws IOException {
+        generator.writeFieldName(names[index]);
+        // raw JSON can only be spliced into JSON, binary formats serialize the value again
+        if (rawValues[index] != null && generator instanceof JsonGeneratorImpl) {
+            generator.writeRawValue(rawValues[index]);
+        } else {
+            generator.writeObject(values[index]);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.hatari.client.java.dedup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * DuplicateFilter remembers the {@link Fingerprints} of recent events, so that an event that is added again
+ * within a window, e.g. because a request handler ran twice, can be dropped before it is sent.
+ * <p/>
+ * The fingerprints are kept in two Bloom filters: new ones go into the current filter, and once it is as old as
+ * the window it becomes the previous one and an empty filter takes its place. A duplicate is therefore always
+ * caught within the window, and may be caught for up to twice as long. Checking an event sets a few bits with
+ * compare-and-set and takes no locks, and the memory used is fixed, however many events are added.
+ * <p/>
+ * Like any Bloom filter, it may mistake an event it hasn't seen for a duplicate, with the false positive rate it
+ * was sized for as long as no more than the expected number of events are added per window. Two identical events
+ * added at the very same moment may both get through.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class DuplicateFilter {
+
+    private static final int MAX_HASH_COUNT = 16;
+
+    private final long windowMillis;
+    private final int expectedEventsPerWindow;
+    private final double falsePositiveRate;
+    private final int bitCount;
+    private final int hashCount;
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    /**
+     * @param windowMillis            How long an event is remembered at least.
+     * @param expectedEventsPerWindow How many events are added per window at most.
+     * @param falsePositiveRate       How likely an event that wasn't seen before may be taken for a duplicate,
+     *                                between 0 and 1, e.g. 0.000001.
+     */
+    public DuplicateFilter(long windowMillis, int expectedEventsPerWindow, double falsePositiveRate) {
+        if (windowMillis <= 0 || expectedEventsPerWindow <= 0) {
+            throw new IllegalArgumentException("A duplicate filter needs a window and room for at least one event.");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("The false positive rate must be between 0 and 1: "
+                    + falsePositiveRate);
+        }
+        this.windowMillis = windowMillis;
+        this.expectedEventsPerWindow = expectedEventsPerWindow;
+        this.falsePositiveRate = falsePositiveRate;
+        // the optimal size, rounded up to a power of two so an index is a mask away
+        double optimalBits = -expectedEventsPerWindow * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.bitCount = (int) Math.min(1L << 30, Math.max(64, Long.highestOneBit((long) optimalBits - 1) << 1));
+        this.hashCount = (int) Math.max(1, Math.min(MAX_HASH_COUNT,
+                Math.round(optimalBits / expectedEventsPerWindow * Math.log(2))));
+        long now = System.nanoTime();
+        this.previous = new Generation(bitCount, now);
+        this.current = new Generation(bitCount, now + TimeUnit.MILLISECONDS.toNanos(windowMillis));
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public int getExpectedEventsPerWindow() {
+        return expectedEventsPerWindow;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * @return how many bytes the filter takes.
+     */
+    public long getSizeBytes() {
+        return 2L * bitCount / 8;
+    }
+
+    /**
+     * Checks an event and remembers it.
+     *
+     * @param fingerprint The event's fingerprint, see {@link Fingerprints}.
+     * @return true if an event with the same fingerprint was checked within the window.
+     */
+    public boolean isDuplicate(long fingerprint) {
+        Generation current = this.current;
+        if (System.nanoTime() - current.expiresAtNanos >= 0) {
+            current = rotate(current);
+        }
+        // two independent hashes are enough to derive all of them
+        int hash1 = (int) fingerprint;
+        int hash2 = (int) (fingerprint >>> 32) | 1;
+        // remember it in the current filter either way, so it outlives the previous one
+        boolean seen = !current.put(hash1, hash2, hashCount);
+        return seen || previous.mightContain(hash1, hash2, hashCount);
+    }
+
+    private synchronized Generation rotate(Generation expired) {
+        if (current != expired) {
+            // another thread was first
+            return current;
+        }
+        long now = System.nanoTime();
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        // after a quiet spell longer than the window, the expired filter holds nothing recent enough to remember
+        previous = now - expired.expiresAtNanos >= windowNanos ? new Generation(bitCount, now) : expired;
+        current = new Generation(bitCount, now + windowNanos);
+        return current;
+    }
+
+    @Override
+    public String toString() {
+        return "DuplicateFilter{windowMillis=" + windowMillis + ", expectedEventsPerWindow="
+                + expectedEventsPerWindow + ", falsePositiveRate=" + falsePositiveRate + ", bits=" + bitCount
+                + ", hashes=" + hashCount + "}";
+    }
+
+    private static class Generation {
+        private final AtomicLongArray words;
+        private final int mask;
+        private final long expiresAtNanos;
+
+        private Generation(int bitCount, long expiresAtNanos) {
+            this.words = new AtomicLongArray(bitCount >>> 6);
+            this.mask = bitCount - 1;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        /**
+         * @return true if any bit was not set before.
+         */
+        private boolean put(int hash1, int hash2, int hashCount) {
+            boolean added = false;
+            for (int i = 0; i < hashCount; i++) {
+                int index = (hash1 + i * hash2) & mask;
+                int word = index >>> 6;
+                long bit = 1L << index;
+                long value = words.get(word);
+                // only write when the bit isn't set yet, so duplicates cost nothing but reads
+                while ((value & bit) == 0) {
+                    if (words.compareAndSet(word, value, value | bit)) {
+                        added = true;
+                        break;
+                    }
+                    value = words.get(word);
+                }
+            }
+            return added;
+        }
+
+        private boolean mightContain(int hash1, int hash2, int hashCount) {
+            for (int i = 0; i < hashCount; i++) {
+                int index = (hash1 + i * hash2) & mask;
+                if ((words.get(index >>> 6) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
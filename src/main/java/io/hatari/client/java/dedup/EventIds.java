@@ -0,0 +1,92 @@
+package io.hatari.client.java.dedup;
+
+import io.hatari.client.java.util.HatariConfig;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * EventIds hands out the idempotency ids that go into <code>hatari.id</code>, so the Hatari API can recognize an
+ * event that reaches it twice, e.g. because it was retried after a timeout or replayed from the local store.
+ * <p/>
+ * An id is {@link #LENGTH} characters of base 32: when this JVM started and the node it runs on, followed by a
+ * sequence number. Each thread takes sequence numbers from a block of its own, so ids are handed out without
+ * locks or contended atomics, and the ids of one thread increase monotonically, also across restarts. The node is
+ * {@link HatariConfig#NODE_ID}, or random if that isn't set.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class EventIds {
+
+    /**
+     * How many characters every id has.
+     */
+    public static final int LENGTH = 23;
+
+    private static final char[] DIGITS = "0123456789abcdefghjkmnpqrstvwxyz".toCharArray();
+    private static final int START_CHARS = 9;
+    private static final int NODE_CHARS = 4;
+    private static final int SEQUENCE_CHARS = LENGTH - START_CHARS - NODE_CHARS;
+    private static final int NODE_BITS = 5 * NODE_CHARS;
+    private static final int BLOCK_SIZE = 1024;
+
+    private static final char[] PREFIX = new char[START_CHARS + NODE_CHARS];
+    private static final AtomicLong NEXT_BLOCK = new AtomicLong();
+    private static final ThreadLocal<long[]> BLOCKS = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            // the next sequence number of the thread and the end of its block
+            return new long[2];
+        }
+    };
+
+    static {
+        long node = HatariConfig.NODE_ID >= 0 ? HatariConfig.NODE_ID : new SecureRandom().nextInt();
+        encode(System.currentTimeMillis(), PREFIX, 0, START_CHARS);
+        encode(node & ((1L << NODE_BITS) - 1), PREFIX, START_CHARS, NODE_CHARS);
+    }
+
+    private EventIds() {
+    }
+
+    /**
+     * @return the sequence number of a new id, to be formatted with {@link #format(long, char[], int)} or
+     * {@link #toString(long)}.
+     */
+    public static long next() {
+        long[] block = BLOCKS.get();
+        if (block[0] == block[1]) {
+            block[0] = NEXT_BLOCK.getAndAdd(BLOCK_SIZE);
+            block[1] = block[0] + BLOCK_SIZE;
+        }
+        return block[0]++;
+    }
+
+    /**
+     * Writes an id without allocating.
+     *
+     * @param sequence The sequence number returned by {@link #next()}.
+     * @param chars    Where to write the id, with room for {@link #LENGTH} characters from the offset on.
+     * @return the number of characters written, always {@link #LENGTH}.
+     */
+    public static int format(long sequence, char[] chars, int offset) {
+        System.arraycopy(PREFIX, 0, chars, offset, PREFIX.length);
+        encode(sequence, chars, offset + PREFIX.length, SEQUENCE_CHARS);
+        return LENGTH;
+    }
+
+    public static String toString(long sequence) {
+        char[] chars = new char[LENGTH];
+        format(sequence, chars, 0);
+        return new String(chars);
+    }
+
+    // fixed width, so ids sort as strings the same way as their numbers do
+    private static void encode(long value, char[] chars, int offset, int length) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            chars[i] = DIGITS[(int) (value & 31)];
+            value >>>= 5;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package io.hatari.client.java.dedup;
+
+import io.hatari.client.java.util.Hashing;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Fingerprints are 64-bit hashes of an event's content, for a {@link DuplicateFilter} to tell whether it saw the
+ * same event before.
+ * <p/>
+ * Events are hashed the way they would be serialized, without serializing them: maps are hashed regardless of the
+ * order of their entries, numbers by value whatever their type, so <code>1</code> and <code>1.0</code> are the
+ * same, and dates by the instant they stand for. Global properties, the timestamp and the id the client adds are
+ * not part of the fingerprint, properties the caller set in the <code>hatari</code> block are.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class Fingerprints {
+
+    private static final long NULL = 0x6a09e667f3bcc909L;
+    private static final long TRUE = 0xbb67ae8584caa73bL;
+    private static final long FALSE = 0x3c6ef372fe94f82bL;
+    private static final long MAP = 0xa54ff53a5f1d36f1L;
+    private static final long ARRAY = 0x510e527fade682d1L;
+
+    private Fingerprints() {
+    }
+
+    /**
+     * @param eventCollection  The collection the event is added to.
+     * @param event            The event's properties.
+     * @param hatariProperties The properties the caller set in the <code>hatari</code> block, may be null.
+     */
+    public static long of(String eventCollection, Map<String, Object> event, Map<String, Object> hatariProperties) {
+        long hash = combine(hashValue(eventCollection), hashValue(event));
+        return hatariProperties == null ? hash : combine(hash, hashValue(hatariProperties));
+    }
+
+    /**
+     * @param eventCollection The collection the event is added to.
+     * @param event           The event's properties as they were serialized, in the order they were added.
+     * @param length          How many bytes of the event to hash.
+     */
+    public static long of(String eventCollection, byte[] event, int length) {
+        return combine(hashValue(eventCollection), Hashing.hash(event, 0, length));
+    }
+
+    /**
+     * Adds a value that sets an event apart but isn't part of its properties, e.g. an explicit timestamp.
+     */
+    public static long combine(long fingerprint, long value) {
+        return Hashing.mix(fingerprint * 31 + value);
+    }
+
+    private static long hashValue(Object value) {
+        if (value == null) {
+            return NULL;
+        }
+        if (value instanceof String) {
+            return Hashing.hash((String) value);
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? TRUE : FALSE;
+        }
+        if (value instanceof Number) {
+            return hashNumber((Number) value);
+        }
+        if (value instanceof Map) {
+            // a sum doesn't depend on the order the entries are visited in
+            long hash = MAP;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                hash += combine(hashValue(String.valueOf(entry.getKey())), hashValue(entry.getValue()));
+            }
+            return Hashing.mix(hash);
+        }
+        if (value instanceof Iterable) {
+            long hash = ARRAY;
+            for (Object element : (Iterable<?>) value) {
+                hash = combine(hash, hashValue(element));
+            }
+            return hash;
+        }
+        if (value instanceof Object[]) {
+            long hash = ARRAY;
+            for (Object element : (Object[]) value) {
+                hash = combine(hash, hashValue(element));
+            }
+            return hash;
+        }
+        if (value instanceof Date) {
+            return Hashing.mix(((Date) value).getTime());
+        }
+        if (value instanceof Calendar) {
+            return Hashing.mix(((Calendar) value).getTimeInMillis());
+        }
+        return Hashing.hash(value.toString());
+    }
+
+    private static long hashNumber(Number number) {
+        double value = number.doubleValue();
+        long integral = number.longValue();
+        // whole numbers hash the same whatever their type
+        if (value == integral) {
+            return Hashing.mix(integral);
+        }
+        return Hashing.mix(Double.doubleToLongBits(value));
+    }
+}
@@ -0,0 +1,13 @@
+package io.hatari.client.java.exceptions;
+
+/**
+ * ClientClosedException
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class ClientClosedException extends HatariException {
+    public ClientClosedException(String detailMessage) {
+        super(detailMessage);
+    }
+}
@@ -0,0 +1,13 @@
+package io.hatari.client.java.exceptions;
+
+/**
+ * EventStoreException
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class EventStoreException extends HatariException {
+    public EventStoreException(String detailMessage) {
+        super(detailMessage);
+    }
+}
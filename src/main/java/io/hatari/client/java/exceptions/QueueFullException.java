@@ -0,0 +1,13 @@
+package io.hatari.client.java.exceptions;
+
+/**
+ * QueueFullException
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class QueueFullException extends HatariException {
+    public QueueFullException(String detailMessage) {
+        super(detailMessage);
+    }
+}
@@ -0,0 +1,163 @@
+package io.hatari.client.java.io;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AdaptiveConcurrencyLimit decides how many uploads of one {@link io.hatari.client.java.HatariClient} may be in
+ * flight at once, from how the Hatari API has been answering.
+ * <p/>
+ * The limit follows the AIMD scheme of TCP congestion control, with a latency signal in the style of TCP Vegas:
+ * <ul>
+ * <li>While all uploads the limit allows are in flight and the API answers about as fast as the fastest recent
+ * round trip, the limit grows by one per round trip's worth of uploads.</li>
+ * <li>Once a round trip takes more than {@link #getLatencyTolerance()} times that long, requests are queueing up
+ * somewhere, and the limit is cut by {@link #getBackoffRatio()}. The same happens on a timeout, a network error
+ * or a retryable response like 429 or 503, so the client backs off before timeouts cascade.</li>
+ * </ul>
+ * The limit is cut at most once per round trip, since the uploads already in flight don't know about the cut yet.
+ * The fastest recent round trip is taken over the last two windows of {@link #BASELINE_WINDOW_SAMPLES} uploads,
+ * so the baseline follows the API when it gets slower for good.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class AdaptiveConcurrencyLimit {
+
+    /**
+     * How many round trips the baseline latency is taken over.
+     */
+    public static final int BASELINE_WINDOW_SAMPLES = 500;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final double backoffRatio;
+
+    private double limit;
+    private long previousWindowMinNanos = Long.MAX_VALUE;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private int windowSamples;
+    private long lastDecreaseNanos;
+    private long lastRoundTripNanos;
+    private volatile int currentLimit;
+
+    /**
+     * @param initialLimit     How many uploads may be in flight to begin with.
+     * @param minLimit         The limit is never cut below this.
+     * @param maxLimit         The limit never grows above this.
+     * @param latencyTolerance How many times slower than the baseline a round trip may be before the limit is cut.
+     * @param backoffRatio     What the limit is multiplied with when it is cut, between 0 and 1.
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double latencyTolerance,
+                                    double backoffRatio) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("The concurrency limits must satisfy 1 <= min <= initial <= max: "
+                    + minLimit + ", " + initialLimit + ", " + maxLimit);
+        }
+        if (latencyTolerance <= 1) {
+            throw new IllegalArgumentException("The latency tolerance must be greater than 1: " + latencyTolerance);
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("The backoff ratio must be between 0 and 1: " + backoffRatio);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTolerance = latencyTolerance;
+        this.backoffRatio = backoffRatio;
+        this.limit = initialLimit;
+        this.currentLimit = initialLimit;
+        // nanoTime has no fixed origin, so start as if the last cut was long ago
+        this.lastDecreaseNanos = System.nanoTime() - TimeUnit.HOURS.toNanos(1);
+    }
+
+    /**
+     * A limit that never changes, for when the right number of concurrent uploads is known up front.
+     *
+     * @param limit How many uploads may be in flight at once.
+     * @return the fixed limit.
+     */
+    public static AdaptiveConcurrencyLimit fixed(int limit) {
+        return new AdaptiveConcurrencyLimit(limit, limit, limit, 2, 0.5);
+    }
+
+    /**
+     * @return how many uploads may be in flight at once right now.
+     */
+    public int getLimit() {
+        return currentLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public double getLatencyTolerance() {
+        return latencyTolerance;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    /**
+     * @return the fastest recent round trip, in nanoseconds, or 0 if there wasn't one yet.
+     */
+    public synchronized long getBaselineRoundTripNanos() {
+        long baseline = baselineNanos();
+        return baseline == Long.MAX_VALUE ? 0 : baseline;
+    }
+
+    /**
+     * Adjusts the limit after an upload got an answer, or didn't.
+     *
+     * @param roundTripNanos How long the request took.
+     * @param inFlight       How many uploads were in flight, including this one.
+     * @param overloaded     Whether the request timed out, failed on the network, or got a retryable response.
+     * @return true if the limit grew, so another upload may be started.
+     */
+    public synchronized boolean onRoundTrip(long roundTripNanos, int inFlight, boolean overloaded) {
+        long now = System.nanoTime();
+        lastRoundTripNanos = roundTripNanos;
+        if (!overloaded) {
+            recordBaseline(roundTripNanos);
+        }
+        long baseline = baselineNanos();
+        boolean queueing = baseline != Long.MAX_VALUE && roundTripNanos > baseline * latencyTolerance;
+        int before = currentLimit;
+        if (overloaded || queueing) {
+            // the uploads already in flight were sent under the old limit, so only cut once per round trip
+            if (now - lastDecreaseNanos >= lastRoundTripNanos) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecreaseNanos = now;
+            }
+        } else if (inFlight >= before) {
+            // only grow while the limit is what holds uploads back
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        currentLimit = Math.max(minLimit, (int) limit);
+        return currentLimit > before;
+    }
+
+    private void recordBaseline(long roundTripNanos) {
+        windowMinNanos = Math.min(windowMinNanos, roundTripNanos);
+        if (++windowSamples >= BASELINE_WINDOW_SAMPLES) {
+            previousWindowMinNanos = windowMinNanos;
+            windowMinNanos = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+    }
+
+    private long baselineNanos() {
+        return Math.min(previousWindowMinNanos, windowMinNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveConcurrencyLimit{limit=" + currentLimit + ", min=" + minLimit + ", max=" + maxLimit
+                + ", baselineRoundTripMicros=" + TimeUnit.NANOSECONDS.toMicros(getBaselineRoundTripNanos()) + "}";
+    }
+}
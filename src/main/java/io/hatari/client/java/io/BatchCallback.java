@@ -0,0 +1,38 @@
+package io.hatari.client.java.io;
+
+/**
+ * Receives the outcome of a {@link HatariBatchRequestRunnable}: either one result per event, or a single error
+ * for the whole batch when the API never answered for the individual events.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public interface BatchCallback {
+
+    /**
+     * Invoked once per event when the API answered for each event of the batch.
+     *
+     * @param index      The position of the event in the batch.
+     * @param statusCode The HTTP status code of the batch response.
+     * @param success    Whether the API accepted the event.
+     * @param error      The error the API reported for the event as JSON, or null on success.
+     */
+    void onEventResult(int index, int statusCode, boolean success, String error);
+
+    /**
+     * Invoked instead of {@link #onEventResult(int, int, boolean, String)} when the batch as a whole failed, e.g.
+     * because of a network error or a non-2xx response.
+     *
+     * @param statusCode The HTTP status code of the last response, or 0 if there was none.
+     * @param reason     The response body or a description of the failure.
+     */
+    void onBatchError(int statusCode, String reason);
+
+    /**
+     * Invoked instead of {@link #onBatchError(int, String)} when the batch was dropped without being sent, because the
+     * upload queue was full.
+     *
+     * @param reason A description of why the batch was dropped.
+     */
+    void onBatchDropped(String reason);
+}
@@ -0,0 +1,95 @@
+package io.hatari.client.java.io;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * CircuitBreaker stops sending requests to the Hatari API after too many consecutive failures, instead of piling
+ * more load on an API that is already struggling.
+ * <p/>
+ * After {@code failureThreshold} consecutive failures the breaker opens and every request is refused for
+ * {@code openMillis}. It then lets a single probe request through (half-open): if the probe succeeds the breaker
+ * closes again, if it fails the breaker stays open for another {@code openMillis}.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long stateChangedAt;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return true if a request may be sent now.
+     */
+    public boolean tryAcquire() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (System.currentTimeMillis() - stateChangedAt < openMillis) {
+            return false;
+        }
+        // time for a probe; a probe that never reported back is replaced by a new one after the same delay
+        if (state.compareAndSet(current, State.HALF_OPEN)) {
+            stateChangedAt = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reports that the API answered a request, even with a client error.
+     */
+    public void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state.get() != State.CLOSED) {
+            state.set(State.CLOSED);
+        }
+    }
+
+    /**
+     * Reports that a request failed because of a network error, a timeout or a server error.
+     */
+    public void onFailure() {
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            // the probe failed
+            open(current);
+        } else if (current == State.CLOSED && consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            open(current);
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * @return how long the breaker will refuse requests before letting a probe through, 0 if it's closed.
+     */
+    public long getRemainingOpenMillis() {
+        if (state.get() == State.CLOSED) {
+            return 0;
+        }
+        return Math.max(0, openMillis - (System.currentTimeMillis() - stateChangedAt));
+    }
+
+    private void open(State from) {
+        // stamp first, so nobody sees the new state with the old time
+        stateChangedAt = System.currentTimeMillis();
+        state.compareAndSet(from, State.OPEN);
+    }
+}
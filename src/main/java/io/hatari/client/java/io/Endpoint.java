@@ -0,0 +1,141 @@
+package io.hatari.client.java.io;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Endpoint is one address of the Hatari API a client sends requests to, e.g. a regional ingest host or a local
+ * relay, together with what the client learned about it.
+ * <p/>
+ * Its latency is a peak EWMA of the round trips to it: a slower round trip is taken as it is, faster ones only
+ * pull the estimate down gradually, decaying with {@code decayMillis}. So a host that starts to struggle is
+ * avoided at once, and one that recovers wins its traffic back step by step.
+ * <p/>
+ * After {@code failureThreshold} consecutive failures the endpoint is {@link State#UNHEALTHY} and taken out of
+ * rotation for {@code ejectMillis}. It is then tried again, and healthy again as soon as a request to it succeeds.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class Endpoint {
+
+    public enum State {
+        HEALTHY, UNHEALTHY
+    }
+
+    private final String address;
+    private final int failureThreshold;
+    private final long ejectNanos;
+    private final double decayNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile State state = State.HEALTHY;
+    private volatile long latencyNanos;
+    private volatile long ejectedUntilNanos;
+    private long lastRoundTripNanos;
+    private int consecutiveFailures;
+
+    /**
+     * @param address          The base URL, e.g. <code>https://api.hatario.io</code>.
+     * @param failureThreshold How many consecutive failures take the endpoint out of rotation.
+     * @param ejectMillis      How long the endpoint stays out of rotation.
+     * @param decayMillis      How quickly the latency estimate forgets old round trips.
+     */
+    public Endpoint(String address, int failureThreshold, long ejectMillis, long decayMillis) {
+        if (address == null || address.length() == 0) {
+            throw new IllegalArgumentException("Invalid endpoint address specified: " + address);
+        }
+        if (failureThreshold < 1 || ejectMillis < 0 || decayMillis <= 0) {
+            throw new IllegalArgumentException("An endpoint needs a failure threshold of at least 1, and a positive "
+                    + "decay.");
+        }
+        // a trailing slash would end up in the middle of every URL
+        this.address = address.endsWith("/") ? address.substring(0, address.length() - 1) : address;
+        this.failureThreshold = failureThreshold;
+        this.ejectNanos = TimeUnit.MILLISECONDS.toNanos(ejectMillis);
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(decayMillis);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return the estimated round trip time in nanoseconds, or 0 if no request was sent to the endpoint yet.
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @return how many requests to the endpoint haven't been answered yet.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return true if the endpoint is healthy, or was out of rotation long enough to be tried again.
+     */
+    boolean isAvailable(long nowNanos) {
+        return state == State.HEALTHY || nowNanos - ejectedUntilNanos >= 0;
+    }
+
+    long getEjectedUntilNanos() {
+        return ejectedUntilNanos;
+    }
+
+    /**
+     * @return the expected cost of one more request: the latency times the requests that would share the endpoint.
+     */
+    double getScore() {
+        return (double) latencyNanos * (inFlight.get() + 1);
+    }
+
+    void requestStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * @param roundTripNanos How long the request took.
+     * @param failed         True if it failed because of a network error, a timeout or a server error.
+     */
+    void requestFinished(long roundTripNanos, boolean failed) {
+        inFlight.decrementAndGet();
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (failed) {
+                // a failure never makes an endpoint look faster, however quickly it failed
+                latencyNanos = Math.max(latencyNanos, roundTripNanos);
+                if (++consecutiveFailures >= failureThreshold) {
+                    state = State.UNHEALTHY;
+                    ejectedUntilNanos = now + ejectNanos;
+                }
+            } else {
+                long latency = latencyNanos;
+                if (latency == 0 || roundTripNanos > latency) {
+                    latencyNanos = roundTripNanos;
+                } else {
+                    double weight = Math.exp(-(now - lastRoundTripNanos) / decayNanos);
+                    latencyNanos = (long) (latency * weight + roundTripNanos * (1 - weight));
+                }
+                consecutiveFailures = 0;
+                state = State.HEALTHY;
+            }
+            lastRoundTripNanos = now;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Endpoint{address=" + address + ", state=" + state + ", latencyMillis="
+                + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + ", inFlight=" + inFlight.get() + "}";
+    }
+}
@@ -0,0 +1,200 @@
+package io.hatari.client.java.io;
+
+import io.hatari.client.java.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * EndpointPool picks the {@link Endpoint} each request of a client goes to, and decides when a request is worth
+ * hedging.
+ * <p/>
+ * Endpoints are picked by the power of two choices: of two random endpoints in rotation, the one with the lower
+ * latency estimate times requests in flight wins. That keeps away from a slow or busy host without sending every
+ * request to the single fastest one. If all endpoints are out of rotation, the one that will be tried again first
+ * is used anyway, so the client's {@link CircuitBreaker} and {@link RetryPolicy} stay in charge of giving up.
+ * <p/>
+ * A hedged request is sent again, to another endpoint if there is one, once it took longer than the
+ * {@code hedgePercentile} of the round trips of the last second or so. Hedges are paid for out of a budget that
+ * grows by {@code hedgeBudgetRatio} with every request, so they can't more than slightly add to the load even
+ * when all requests are slow.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class EndpointPool {
+
+    private static final long HEDGE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int HEDGE_MIN_SAMPLES = 20;
+    // the budget is kept in thousandths of a hedge, and saves up for no more than a few hedges in a row
+    private static final long HEDGE_COST = 1000;
+    private static final long HEDGE_MAX_BUDGET = 10 * HEDGE_COST;
+
+    private final Endpoint[] endpoints;
+    private final double hedgePercentile;
+    private final long hedgeMinDelayNanos;
+    private final long hedgeBudgetPerRequest;
+    private final AtomicLong hedgeBudget = new AtomicLong();
+    private volatile LatencyHistogram roundTrips = new LatencyHistogram();
+    private volatile long windowEndNanos = System.nanoTime() + HEDGE_WINDOW_NANOS;
+    private volatile long hedgeDelayNanos;
+
+    /**
+     * @param endpoints           The endpoints to spread requests over, at least one.
+     * @param hedgePercentile     Which percentile of recent round trips a hedged request waits for, e.g. 95.
+     * @param hedgeMinDelayMillis The shortest a hedged request waits.
+     * @param hedgeBudgetRatio    How many hedges may be sent per request, e.g. 0.1.
+     */
+    public EndpointPool(List<Endpoint> endpoints, double hedgePercentile, long hedgeMinDelayMillis,
+                        double hedgeBudgetRatio) {
+        if (endpoints == null || endpoints.isEmpty()) {
+            throw new IllegalArgumentException("An endpoint pool needs at least one endpoint.");
+        }
+        if (!(hedgePercentile > 0 && hedgePercentile < 100) || hedgeMinDelayMillis < 0 || hedgeBudgetRatio < 0) {
+            throw new IllegalArgumentException("The hedge percentile must be between 0 and 100, the delay and the "
+                    + "budget must not be negative.");
+        }
+        this.endpoints = endpoints.toArray(new Endpoint[endpoints.size()]);
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeMinDelayNanos = TimeUnit.MILLISECONDS.toNanos(hedgeMinDelayMillis);
+        this.hedgeBudgetPerRequest = Math.round(hedgeBudgetRatio * HEDGE_COST);
+    }
+
+    public List<Endpoint> getEndpoints() {
+        List<Endpoint> list = new ArrayList<Endpoint>(endpoints.length);
+        Collections.addAll(list, endpoints);
+        return list;
+    }
+
+    /**
+     * Picks the endpoint for a request.
+     *
+     * @param exclude An endpoint to avoid if there is another one in rotation, e.g. the one a hedged request went
+     *                to first. May be null.
+     */
+    public Endpoint select(Endpoint exclude) {
+        Endpoint[] endpoints = this.endpoints;
+        if (endpoints.length == 1) {
+            return endpoints[0];
+        }
+        long now = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(endpoints.length);
+        int second = random.nextInt(endpoints.length - 1);
+        if (second >= first) {
+            second++;
+        }
+        Endpoint choice = better(candidate(endpoints[first], exclude, now), candidate(endpoints[second], exclude, now));
+        if (choice != null) {
+            return choice;
+        }
+        // neither of the two will do, so look at all of them
+        for (Endpoint endpoint : endpoints) {
+            choice = better(choice, candidate(endpoint, exclude, now));
+        }
+        if (choice != null) {
+            return choice;
+        }
+        if (exclude != null && exclude.isAvailable(now)) {
+            return exclude;
+        }
+        // all are out of rotation: the one that would be tried again first gets the request
+        choice = endpoints[0];
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.getEjectedUntilNanos() - choice.getEjectedUntilNanos() < 0) {
+                choice = endpoint;
+            }
+        }
+        return choice;
+    }
+
+    /**
+     * Reports the outcome of a request, to the endpoint it went to and to the hedging statistics.
+     */
+    void requestFinished(Endpoint endpoint, long roundTripNanos, boolean failed) {
+        endpoint.requestFinished(roundTripNanos, failed);
+        if (failed) {
+            return;
+        }
+        roundTrips.record(roundTripNanos);
+        long now = System.nanoTime();
+        if (now - windowEndNanos >= 0) {
+            refreshHedgeDelay(now);
+        }
+    }
+
+    /**
+     * @return how long a hedged request waits before it is sent again, in nanoseconds, or 0 if too few requests
+     * were answered yet to tell.
+     */
+    public long getHedgeDelayNanos() {
+        return hedgeDelayNanos;
+    }
+
+    /**
+     * Adds to the hedge budget for a request that was just sent.
+     */
+    void requestSent() {
+        long budget = hedgeBudget.get();
+        if (budget < HEDGE_MAX_BUDGET) {
+            // losing a race here costs a thousandth of a hedge at most
+            hedgeBudget.compareAndSet(budget, Math.min(HEDGE_MAX_BUDGET, budget + hedgeBudgetPerRequest));
+        }
+    }
+
+    /**
+     * @return true if the budget allows a hedge, which is then paid for.
+     */
+    boolean tryAcquireHedge() {
+        while (true) {
+            long budget = hedgeBudget.get();
+            if (budget < HEDGE_COST) {
+                return false;
+            }
+            if (hedgeBudget.compareAndSet(budget, budget - HEDGE_COST)) {
+                return true;
+            }
+        }
+    }
+
+    private synchronized void refreshHedgeDelay(long now) {
+        if (now - windowEndNanos < 0) {
+            // another thread was first
+            return;
+        }
+        LatencyHistogram.Snapshot snapshot = roundTrips.snapshot();
+        if (snapshot.getCount() >= HEDGE_MIN_SAMPLES) {
+            hedgeDelayNanos = Math.max(hedgeMinDelayNanos, snapshot.getPercentile(hedgePercentile));
+            roundTrips = new LatencyHistogram();
+        }
+        // too few samples carry over into the next window
+        windowEndNanos = now + HEDGE_WINDOW_NANOS;
+    }
+
+    private static Endpoint candidate(Endpoint endpoint, Endpoint exclude, long now) {
+        return endpoint != exclude && endpoint.isAvailable(now) ? endpoint : null;
+    }
+
+    private static Endpoint better(Endpoint first, Endpoint second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        return second.getScore() < first.getScore() ? second : first;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("EndpointPool{");
+        for (int i = 0; i < endpoints.length; i++) {
+            builder.append(i > 0 ? ", " : "").append(endpoints[i]);
+        }
+        return builder.append("}").toString();
+    }
+}
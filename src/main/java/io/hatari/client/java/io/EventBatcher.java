@@ -0,0 +1,155 @@
+package io.hatari.client.java.io;
+
+import io.hatari.client.java.HatariClient;
+import io.hatari.client.java.exceptions.QueueFullException;
+import io.hatari.client.java.util.UploadEventCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EventBatcher buffers serialized events per event collection and hands each buffer to the {@link UploadQueue} as a
+ * single {@link HatariBatchRequestRunnable} once it holds enough events, enough bytes, or has waited long enough.
+ * <p/>
+ * If the upload queue refuses a batch, every event in it is reported to its callback instead.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class EventBatcher {
+
+    private static final ScheduledExecutorService LINGER_TIMER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "hatari-batch-linger");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final HatariClient hatariClient;
+    private final UploadQueue uploadQueue;
+    private final int maxEvents;
+    private final int maxBytes;
+    private final long lingerMillis;
+    private final ConcurrentMap<String, Batch> batches = new ConcurrentHashMap<String, Batch>();
+
+    public EventBatcher(HatariClient hatariClient, UploadQueue uploadQueue, int maxEvents, int maxBytes,
+                        long lingerMillis) {
+        if (maxEvents < 1) {
+            throw new IllegalArgumentException("A batch must hold at least one event: " + maxEvents);
+        }
+        this.hatariClient = hatariClient;
+        this.uploadQueue = uploadQueue;
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+        this.lingerMillis = lingerMillis;
+    }
+
+    /**
+     * Adds a serialized event to the batch of its collection, sending the batch if it is now full.
+     *
+     * @param eventCollection The collection the event belongs to.
+     * @param event           The event, already serialized to JSON.
+     * @param callback        The callback to notify once the batch holding this event was sent, may be null.
+     */
+    public void add(String eventCollection, byte[] event, UploadEventCallback callback) {
+        Batch batch = batches.get(eventCollection);
+        if (batch == null) {
+            Batch newBatch = new Batch(eventCollection);
+            batch = batches.putIfAbsent(eventCollection, newBatch);
+            if (batch == null) {
+                batch = newBatch;
+            }
+        }
+
+        HatariBatchRequestRunnable ready = null;
+        synchronized (batch) {
+            if (batch.events.isEmpty()) {
+                scheduleLingerFlush(batch, batch.generation);
+            }
+            batch.events.add(event);
+            batch.callbacks.add(callback);
+            batch.bytes += event.length;
+            if (batch.events.size() >= maxEvents || batch.bytes >= maxBytes) {
+                ready = batch.drain();
+            }
+        }
+        if (ready != null) {
+            send(ready);
+        }
+    }
+
+    /**
+     * Sends every batch that currently holds events, regardless of its size or age.
+     */
+    public void flush() {
+        for (Batch batch : batches.values()) {
+            HatariBatchRequestRunnable ready = null;
+            synchronized (batch) {
+                if (!batch.events.isEmpty()) {
+                    ready = batch.drain();
+                }
+            }
+            if (ready != null) {
+                send(ready);
+            }
+        }
+    }
+
+    private void send(HatariBatchRequestRunnable batch) {
+        try {
+            uploadQueue.enqueue(batch);
+        } catch (QueueFullException e) {
+            batch.abandon(e.getMessage());
+        }
+    }
+
+    private void scheduleLingerFlush(final Batch batch, final long generation) {
+        LINGER_TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                HatariBatchRequestRunnable ready = null;
+                synchronized (batch) {
+                    // only flush if nobody sent this batch in the meantime
+                    if (batch.generation == generation && !batch.events.isEmpty()) {
+                        ready = batch.drain();
+                    }
+                }
+                if (ready != null) {
+                    send(ready);
+                }
+            }
+        }, lingerMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private class Batch {
+        private final String eventCollection;
+        private List<byte[]> events = new ArrayList<byte[]>();
+        private List<UploadEventCallback> callbacks = new ArrayList<UploadEventCallback>();
+        private int bytes;
+        private long generation;
+
+        private Batch(String eventCollection) {
+            this.eventCollection = eventCollection;
+        }
+
+        // must be called while holding the lock on this batch
+        private HatariBatchRequestRunnable drain() {
+            HatariBatchRequestRunnable runnable = new HatariBatchRequestRunnable(hatariClient, uploadQueue,
+                    eventCollection, events, new EventCallbackList(hatariClient.getMetrics(), eventCollection, callbacks));
+            events = new ArrayList<byte[]>();
+            callbacks = new ArrayList<UploadEventCallback>();
+            bytes = 0;
+            generation++;
+            return runnable;
+        }
+    }
+}
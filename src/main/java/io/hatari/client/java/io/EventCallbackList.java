@@ -0,0 +1,45 @@
+package io.hatari.client.java.io;
+
+import io.hatari.client.java.metrics.EventOutcome;
+import io.hatari.client.java.metrics.HatariMetrics;
+import io.hatari.client.java.util.UploadCallbacks;
+import io.hatari.client.java.util.UploadEventCallback;
+
+import java.util.List;
+
+/**
+ * A {@link BatchCallback} that passes each event's result on to that event's {@link UploadEventCallback}.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class EventCallbackList implements BatchCallback {
+
+    private final HatariMetrics metrics;
+    private final String eventCollection;
+    private final List<UploadEventCallback> callbacks;
+
+    public EventCallbackList(HatariMetrics metrics, String eventCollection, List<UploadEventCallback> callbacks) {
+        this.metrics = metrics;
+        this.eventCollection = eventCollection;
+        this.callbacks = callbacks;
+    }
+
+    @Override
+    public void onEventResult(int index, int statusCode, boolean success, String error) {
+        UploadCallbacks.notify(callbacks.get(index), statusCode, success, error);
+    }
+
+    @Override
+    public void onBatchError(int statusCode, String reason) {
+        for (UploadEventCallback callback : callbacks) {
+            UploadCallbacks.notify(callback, statusCode, false, reason);
+        }
+    }
+
+    @Override
+    public void onBatchDropped(String reason) {
+        metrics.recordEvents(eventCollection, EventOutcome.DROPPED, callbacks.size());
+        onBatchError(0, reason);
+    }
+}
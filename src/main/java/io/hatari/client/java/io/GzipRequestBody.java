@@ -0,0 +1,143 @@
+package io.hatari.client.java.io;
+
+import io.hatari.client.java.util.HatariConfig;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A {@link RequestBody} that gzips another body on the fly, as it is written to the transport.
+ * <p/>
+ * {@link java.util.zip.GZIPOutputStream} allocates a new {@link Deflater}, with a few hundred KB of native zlib
+ * state, for every stream. This body instead writes the gzip header and trailer itself and deflates with a
+ * {@link Deflater} and buffer borrowed from a pool shared by all upload threads, which are reset and reused for
+ * every request. That works as well for virtual threads, which only ever upload once, as for a thread pool. The
+ * pool keeps up to {@link HatariConfig#COMPRESSION_POOL_SIZE} idle deflaters; a deflater that doesn't fit is
+ * {@link Deflater#end() ended} right away rather than left to the garbage collector.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class GzipRequestBody implements RequestBody {
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final BoundedMpmcQueue<Compressor> COMPRESSORS =
+            new BoundedMpmcQueue<Compressor>(Math.max(2, HatariConfig.COMPRESSION_POOL_SIZE));
+
+    private final RequestBody body;
+
+    public GzipRequestBody(RequestBody body) {
+        this.body = body;
+    }
+
+    /**
+     * Wraps a body in a {@link GzipRequestBody} and sets the <code>Content-Encoding</code> header, but only if the
+     * body is at least {@link HatariConfig#COMPRESSION_THRESHOLD_BYTES} long. Smaller bodies don't shrink enough to
+     * be worth the CPU.
+     *
+     * @param body              The uncompressed body.
+     * @param uncompressedBytes How long the uncompressed body is.
+     * @param headers           The request headers, updated if the body is compressed.
+     * @return the body to send.
+     */
+    public static RequestBody compressIfWorthIt(RequestBody body, int uncompressedBytes, Map<String, String> headers) {
+        if (uncompressedBytes < HatariConfig.COMPRESSION_THRESHOLD_BYTES) {
+            return body;
+        }
+        headers.put("Content-Encoding", "gzip");
+        return new GzipRequestBody(body);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        Compressor compressor = COMPRESSORS.poll();
+        if (compressor == null) {
+            compressor = new Compressor();
+        }
+        try {
+            compressor.deflater.reset();
+            GzipStream gzip = new GzipStream(out, compressor.deflater, compressor.buffer);
+            out.write(GZIP_HEADER);
+            body.writeTo(gzip);
+            gzip.finish();
+        } finally {
+            if (!COMPRESSORS.offer(compressor)) {
+                // the pool is full, free the native memory now
+                compressor.deflater.end();
+            }
+        }
+    }
+
+    private static class Compressor {
+        // raw deflate, we write the gzip framing ourselves
+        private final Deflater deflater = new Deflater(HatariConfig.COMPRESSION_LEVEL, true);
+        private final byte[] buffer = new byte[8192];
+    }
+
+    private static class GzipStream extends OutputStream {
+        private final OutputStream out;
+        private final Deflater deflater;
+        private final byte[] buffer;
+        private final CRC32 crc = new CRC32();
+        private final byte[] single = new byte[1];
+        private long uncompressedBytes;
+
+        private GzipStream(OutputStream out, Deflater deflater, byte[] buffer) {
+            this.out = out;
+            this.deflater = deflater;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            single[0] = (byte) b;
+            write(single, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            crc.update(b, off, len);
+            uncompressedBytes += len;
+            // the deflater keeps a reference to the input, so consume all of it before returning
+            deflater.setInput(b, off, len);
+            while (!deflater.needsInput()) {
+                deflate();
+            }
+        }
+
+        @Override
+        public void close() {
+            // serializers like to close their target, but the transport owns the underlying stream
+        }
+
+        private void finish() throws IOException {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            writeIntLittleEndian((int) crc.getValue());
+            writeIntLittleEndian((int) uncompressedBytes);
+        }
+
+        private void deflate() throws IOException {
+            int length = deflater.deflate(buffer, 0, buffer.length);
+            if (length > 0) {
+                out.write(buffer, 0, length);
+            }
+        }
+
+        private void writeIntLittleEndian(int value) throws IOException {
+            out.write(value & 0xff);
+            out.write((value >>> 8) & 0xff);
+            out.write((value >>> 16) & 0xff);
+            out.write((value >>> 24) & 0xff);
+        }
+    }
+}
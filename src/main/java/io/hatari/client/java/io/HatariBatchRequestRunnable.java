@@ -0,0 +1,127 @@
+package io.hatari.client.java.io;
+
+import io.hatari.client.java.HatariClient;
+import io.hatari.client.java.util.HatariConstants;
+import io.hatari.client.java.util.HatariLogging;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends a batch of already serialized events for a single event collection in one POST.
+ * <p/>
+ * The request body has the form <code>{"collection": [event, event, ...]}</code> and the API answers with one
+ * result per event in the same order, <code>{"collection": [{"success": true}, {"success": false, "error":
+ * {"name": ..., "description": ...}}, ...]}</code>. The {@link BatchCallback} is notified with each event's own
+ * result.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class HatariBatchRequestRunnable extends RetryingUploadTask {
+
+    private final String eventCollection;
+    private final List<byte[]> events;
+    private final BatchCallback callback;
+
+    public HatariBatchRequestRunnable(HatariClient hatariClient, UploadQueue uploadQueue, String eventCollection,
+                                      List<byte[]> events, BatchCallback callback) {
+        super(hatariClient, uploadQueue);
+        this.eventCollection = eventCollection;
+        this.events = events;
+        this.callback = callback;
+    }
+
+    @Override
+    HatariResponse send(String address, WireFormat wireFormat) throws IOException {
+        return sendBatch(address, wireFormat);
+    }
+
+    @Override
+    String getEventCollection() {
+        return eventCollection;
+    }
+
+    @Override
+    void onResponse(HatariResponse response) {
+        handleResult(response.getStatusCode(), response.getBody());
+    }
+
+    @Override
+    void onFailure(int statusCode, String reason) {
+        callback.onBatchError(statusCode, reason);
+    }
+
+    @Override
+    void onDropped(String reason) {
+        callback.onBatchDropped(reason);
+    }
+
+    @Override
+    public int getEventCount() {
+        return events.size();
+    }
+
+    HatariResponse sendBatch(String address, final WireFormat wireFormat) throws IOException {
+        String urlString = String.format("%s/%s/events/%s/batch", address,
+                HatariConstants.API_VERSION, hatariClient.getProjectKey());
+        Map<String, String> headers = HatariHttpRequestRunnable.requestHeaders(hatariClient, wireFormat);
+        RequestBody body = new RequestBody() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                wireFormat.writeBatch(out, eventCollection, events);
+            }
+        };
+        if (hatariClient.isCompressionEnabled()) {
+            // the events are already serialized, so we know the size without writing the body first
+            int bytes = 0;
+            for (byte[] event : events) {
+                bytes += event.length;
+            }
+            body = GzipRequestBody.compressIfWorthIt(body, bytes, headers);
+        }
+        return hatariClient.getTransport().post(urlString, headers, body);
+    }
+
+    @SuppressWarnings("unchecked") // the API always answers with a map of lists of maps
+    void handleResult(int responseCode, String responseBody) {
+        if (responseCode != 200 && responseCode != 201) {
+            HatariLogging.log("Batch response code was NOT 200 or 201. It was: %d", responseCode);
+            HatariLogging.log("Response body was: %s", responseBody);
+            callback.onBatchError(responseCode, responseBody);
+            return;
+        }
+
+        List<Map<String, Object>> results = null;
+        try {
+            Map<String, Object> response = HatariClient.MAPPER.readValue(responseBody, Map.class);
+            results = (List<Map<String, Object>>) response.get(eventCollection);
+        } catch (IOException e) {
+            HatariLogging.log("Could not parse batch response body: %s", responseBody);
+        }
+        if (results == null || results.size() != events.size()) {
+            // without one result per event we can't tell which ones made it
+            callback.onBatchError(responseCode, responseBody);
+            return;
+        }
+
+        for (int i = 0; i < results.size(); i++) {
+            Map<String, Object> result = results.get(i);
+            if (Boolean.TRUE.equals(result.get(HatariConstants.SUCCESS_PARAM))) {
+                callback.onEventResult(i, responseCode, true, null);
+            } else {
+                callback.onEventResult(i, responseCode, false, toJson(result.get(HatariConstants.ERROR_PARAM)));
+            }
+        }
+    }
+
+    private static String toJson(Object value) {
+        try {
+            return HatariClient.MAPPER.writeValueAsString(value);
+        } catch (IOException e) {
+            return String.valueOf(value);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package io.hatari.client.java.io;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Factory methods for executors to run uploads on, see
+ * {@link io.hatari.client.java.HatariClient#setUploadExecutor(java.util.concurrent.Executor, int)}.
+ * <p/>
+ * The SDK is a multi-release jar: on Java 21 and newer this class is replaced by one that creates virtual-thread
+ * executors directly. This version still finds them reflectively, in case the jar was built on an older JDK.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class HatariExecutors {
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadFactoryMethod();
+
+    private HatariExecutors() {
+    }
+
+    /**
+     * @return whether {@link #virtualThreadPerTask()} is available on this JVM.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for every upload. Blocking on the network then no
+     * longer ties up a platform thread, so the number of concurrent uploads is only limited by the
+     * <code>maxConcurrentUploads</code> it is installed with. Only available on Java 21 and newer, see
+     * {@link #isVirtualThreadSupported()}.
+     *
+     * @return a virtual-thread-per-task executor.
+     * @throws UnsupportedOperationException when running on a JVM without virtual threads.
+     */
+    public static ExecutorService virtualThreadPerTask() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or newer.");
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException e) {
+            throw new UnsupportedOperationException("Virtual threads are not accessible.", e);
+        } catch (InvocationTargetException e) {
+            throw new UnsupportedOperationException("Virtual threads are not available.", e.getCause());
+        }
+    }
+
+    private static Method findVirtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
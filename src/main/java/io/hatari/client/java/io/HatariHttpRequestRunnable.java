@@ -1,84 +1,151 @@
 package io.hatari.client.java.io;
 
 import io.hatari.client.java.HatariClient;
-import io.hatari.client.java.util.GeneralUtil;
+import io.hatari.client.java.metrics.EventOutcome;
 import io.hatari.client.java.util.HatariConstants;
 import io.hatari.client.java.util.HatariLogging;
+import io.hatari.client.java.util.UploadCallbacks;
 import io.hatari.client.java.util.UploadEventCallback;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
 import java.util.Map;
 
-public class HatariHttpRequestRunnable implements Runnable {
+public class HatariHttpRequestRunnable extends RetryingUploadTask {
 
-    private final HatariClient hatariClient;
     private final String projectKey;
-    private final Map<String, Object> event;
+    private final byte[] serializedEvent;
+    private final SlabPool.Slice pendingEvent;
     private final UploadEventCallback callback;
 
-    public HatariHttpRequestRunnable(HatariClient hatariClient, String projectKey, Map<String, Object> event, UploadEventCallback callback) {
-        this.hatariClient = hatariClient;
+    public HatariHttpRequestRunnable(HatariClient hatariClient, UploadQueue uploadQueue, String projectKey,
+                                     byte[] serializedEvent, UploadEventCallback callback) {
+        super(hatariClient, uploadQueue);
         this.projectKey = projectKey;
-        this.event = event;
+        this.serializedEvent = serializedEvent;
+        this.pendingEvent = null;
         this.callback = callback;
     }
 
+    /**
+     * @param pendingEvent The event, serialized into a {@link SlabPool}. The task releases it once it is done.
+     */
+    public HatariHttpRequestRunnable(HatariClient hatariClient, UploadQueue uploadQueue, String projectKey,
+                                     SlabPool.Slice pendingEvent, UploadEventCallback callback) {
+        super(hatariClient, uploadQueue);
+        this.projectKey = projectKey;
+        this.serializedEvent = null;
+        this.pendingEvent = pendingEvent;
+        this.callback = callback;
+    }
+
+    @Override
+    HatariResponse send(String address, WireFormat wireFormat) throws IOException {
+        if (pendingEvent != null) {
+            return sendPendingEvent(address, pendingEvent, wireFormat);
+        }
+        return sendSerializedEvent(address, serializedEvent, wireFormat);
+    }
+
+    @Override
+    String getEventCollection() {
+        return projectKey;
+    }
+
+    @Override
+    void onResponse(HatariResponse response) {
+        releasePendingEvent();
+        handleResult(response.getBody(), response.getStatusCode(), callback);
+    }
+
+    @Override
+    void onFailure(int statusCode, String reason) {
+        releasePendingEvent();
+        UploadCallbacks.notify(callback, statusCode, false, reason);
+    }
+
     @Override
-    public void run() {
+    void onDropped(String reason) {
+        hatariClient.getMetrics().recordEvents(projectKey, EventOutcome.DROPPED, 1);
+        onFailure(0, reason);
+    }
+
+    @Override
+    public int getEventCount() {
+        return 1;
+    }
+
+    HatariResponse sendSerializedEvent(String address, final byte[] event, final WireFormat wireFormat)
+            throws IOException {
+        Map<String, String> headers = requestHeaders(hatariClient, wireFormat);
+        RequestBody body = new RequestBody() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                wireFormat.writeSerializedEvent(out, event);
+            }
+        };
+        if (hatariClient.isCompressionEnabled()) {
+            // the JSON size is close enough for the binary formats
+            body = GzipRequestBody.compressIfWorthIt(body, event.length, headers);
+        }
+        return hatariClient.getTransport().post(eventUrl(address), headers, body);
+    }
+
+    HatariResponse sendPendingEvent(String address, final SlabPool.Slice event, final WireFormat wireFormat)
+            throws IOException {
+        // a hedge may still be sending it after the event was done with
+        if (!event.retain()) {
+            throw new IOException("The event was released before it was sent.");
+        }
         try {
-            HttpURLConnection connection = sendEvent(this.event);
-            handleResult(connection.getInputStream(), connection.getResponseCode(), callback);
-        } catch (IOException e) {
-            HatariLogging.log("There was an error while sending events to the Keen API.");
-            String stackTrace = GeneralUtil.getStackTraceFromThrowable(e);
-            HatariLogging.log(stackTrace);
-            if (callback != null) {
-                callback.onError(stackTrace);
+            Map<String, String> headers = requestHeaders(hatariClient, wireFormat);
+            final ByteBuffer buffer = event.buffer();
+            RequestBody body = new RequestBody() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    wireFormat.writeSerializedEvent(out, buffer);
+                }
+            };
+            if (hatariClient.isCompressionEnabled()) {
+                body = GzipRequestBody.compressIfWorthIt(body, event.getLength(), headers);
             }
+            return hatariClient.getTransport().post(eventUrl(address), headers, body);
+        } finally {
+            event.release();
+        }
+    }
+
+    private void releasePendingEvent() {
+        // every task ends in either onResponse or onFailure, exactly once
+        if (pendingEvent != null) {
+            pendingEvent.release();
         }
     }
 
-    HttpURLConnection sendEvent(Map<String, Object> event) throws IOException {
-        // just using basic JDK HTTP library
-        String urlString = String.format("%s/%s/events/%s", HatariConstants.SERVER_ADDRESS,
+    private String eventUrl(String address) {
+        return String.format("%s/%s/events/%s", address,
                 HatariConstants.API_VERSION, hatariClient.getProjectKey());
-        URL url = new URL(urlString);
-
-        // set up the POST
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Accept", "application/json");
-        connection.setRequestProperty("Authorization", String.format("%s", hatariClient.getApiKey()));
-        connection.setRequestProperty("Content-Type", "application/json");
-        // we're writing
-        connection.setDoOutput(true);
-        OutputStream out = connection.getOutputStream();
-        // write JSON to the output stream
-        HatariClient.MAPPER.writeValue(out, event);
-        out.close();
-        return connection;
     }
 
-    static void handleResult(InputStream input, int responseCode, UploadEventCallback callback) {
+    static Map<String, String> requestHeaders(HatariClient hatariClient, WireFormat wireFormat) {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Accept", "application/json");
+        headers.put("Authorization", String.format("%s", hatariClient.getApiKey()));
+        headers.put("Content-Type", wireFormat.getContentType());
+        return headers;
+    }
+
+    static void handleResult(String responseBody, int responseCode, UploadEventCallback callback) {
         if (responseCode == 201) {
-            // event add worked
-            if (callback != null) {
-                // let the caller know if they've registered a callback
-                callback.onSuccess();
-            }
+            // event add worked, let the caller know if they've registered a callback
+            UploadCallbacks.notify(callback, responseCode, true, responseBody);
         } else {
             // if the response was bad, make a note of it
-            HatariLogging.log(String.format("Response code was NOT 201. It was: %d", responseCode));
-            String responseBody = GeneralUtil.convertStreamToString(input);
-            HatariLogging.log(String.format("Response body was: %s", responseBody));
-            if (callback != null) {
-                // let the caller know if they've registered a callback
-                callback.onError(responseBody);
-            }
+            HatariLogging.log("Response code was NOT 201. It was: %d", responseCode);
+            HatariLogging.log("Response body was: %s", responseBody);
+            UploadCallbacks.notify(callback, responseCode, false, responseBody);
         }
     }
-}
\ No newline at end of file
+}
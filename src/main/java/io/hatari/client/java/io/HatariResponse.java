@@ -0,0 +1,45 @@
+package io.hatari.client.java.io;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An HTTP response received through a {@link HatariTransport}. The body has always been read completely, so the
+ * connection it came from can be reused.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class HatariResponse {
+
+    private final int statusCode;
+    private final String body;
+    private final Map<String, String> headers;
+
+    /**
+     * @param statusCode The HTTP status code.
+     * @param body       The response body, empty if there was none.
+     * @param headers    The response headers, keyed by lower case name.
+     */
+    public HatariResponse(int statusCode, String body, Map<String, String> headers) {
+        this.statusCode = statusCode;
+        this.body = body == null ? "" : body;
+        this.headers = headers == null ? Collections.<String, String>emptyMap() : headers;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    /**
+     * @param name The name of the header, in any case.
+     * @return the first value of the header, or null if the response didn't have it.
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase());
+    }
+}
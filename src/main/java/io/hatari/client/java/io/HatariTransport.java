@@ -0,0 +1,37 @@
+package io.hatari.client.java.io;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * HatariTransport sends requests to the Hatari API on behalf of a {@link io.hatari.client.java.HatariClient}.
+ * <p/>
+ * Implementations must be safe to use from several upload threads at once and are expected to reuse connections
+ * between requests. See {@link HatariTransports} for the ones shipped with the SDK.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public interface HatariTransport {
+
+    /**
+     * Sends a POST request and reads the complete response.
+     *
+     * @param url     The URL to post to.
+     * @param headers The request headers.
+     * @param body    The request body.
+     * @return the response, whatever its status code.
+     * @throws IOException if no response was received, e.g. because of a timeout.
+     */
+    HatariResponse post(String url, Map<String, String> headers, RequestBody body) throws IOException;
+
+    /**
+     * Opens a connection to an endpoint ahead of the first request, so that request doesn't pay for the DNS
+     * lookup and the TCP and TLS handshakes. Transports that don't reuse connections need not do anything.
+     *
+     * @param address The endpoint's base address, e.g. <code>https://api.hatari.io</code>.
+     * @throws IOException if the endpoint could not be reached.
+     */
+    default void connect(String address) throws IOException {
+    }
+}
@@ -0,0 +1,43 @@
+package io.hatari.client.java.io;
+
+import io.hatari.client.java.util.HatariConfig;
+
+/**
+ * Factory methods for the {@link HatariTransport}s shipped with the SDK.
+ * <p/>
+ * The SDK is a multi-release jar: on Java 11 and newer this class is replaced by one that can also create a
+ * transport on top of <code>java.net.http.HttpClient</code>.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class HatariTransports {
+
+    private HatariTransports() {
+    }
+
+    /**
+     * @return a transport on top of {@link java.net.HttpURLConnection} using the timeouts from {@link HatariConfig}.
+     */
+    public static HatariTransport urlConnection() {
+        return new UrlConnectionTransport(HatariConfig.CONNECT_TIMEOUT_MILLIS, HatariConfig.READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @return whether {@link #http2()} is available on this JVM.
+     */
+    public static boolean isHttp2Supported() {
+        return false;
+    }
+
+    /**
+     * Creates a transport that multiplexes all requests over a few HTTP/2 connections. Only available on Java 11
+     * and newer, see {@link #isHttp2Supported()}.
+     *
+     * @return an HTTP/2 transport using the timeouts from {@link HatariConfig}.
+     * @throws UnsupportedOperationException when running on Java 8, 9 or 10.
+     */
+    public static HatariTransport http2() {
+        throw new UnsupportedOperationException("The HTTP/2 transport needs Java 11 or newer.");
+    }
+}
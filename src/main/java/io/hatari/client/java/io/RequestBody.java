@@ -0,0 +1,20 @@
+package io.hatari.client.java.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The body of a request sent through a {@link HatariTransport}, written straight to the transport's stream.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public interface RequestBody {
+
+    /**
+     * Writes the body. May be invoked more than once if the transport needs to send the request again.
+     *
+     * @param out The stream to write to; the transport closes it.
+     */
+    void writeTo(OutputStream out) throws IOException;
+}
@@ -0,0 +1,99 @@
+package io.hatari.client.java.io;
+
+import io.hatari.client.java.HatariClient;
+import io.hatari.client.java.util.HatariConstants;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tells failed uploads that are worth retrying from those that will never succeed.
+ * <p/>
+ * Timeouts, network errors, 408, 429 and 5xx responses are retryable. Any other response is final, and so is a
+ * 5xx response whose body names one of the API's validation errors, since sending the same event again can't fix
+ * it.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class ResponseClassifier {
+
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    private ResponseClassifier() {
+    }
+
+    /**
+     * @return true if the same request may succeed when sent again later.
+     */
+    public static boolean isRetryable(HatariResponse response) {
+        int statusCode = response.getStatusCode();
+        if (statusCode == 408 || statusCode == 429) {
+            return true;
+        }
+        if (statusCode < 500 || statusCode == 501 || statusCode == 505) {
+            return false;
+        }
+        return !isValidationError(getErrorName(response.getBody()));
+    }
+
+    /**
+     * @return whether the named API error is about the content of the event.
+     */
+    public static boolean isValidationError(String errorName) {
+        return HatariConstants.INVALID_COLLECTION_NAME_ERROR.equals(errorName)
+                || HatariConstants.INVALID_PROPERTY_NAME_ERROR.equals(errorName)
+                || HatariConstants.INVALID_PROPERTY_VALUE_ERROR.equals(errorName);
+    }
+
+    /**
+     * Reads the error name from a response body of the form <code>{"error": {"name": ...}}</code> or
+     * <code>{"name": ...}</code>.
+     *
+     * @return the error name, or null if the body doesn't name one.
+     */
+    @SuppressWarnings("unchecked") // the API answers with JSON objects
+    public static String getErrorName(String responseBody) {
+        if (responseBody == null || !responseBody.trim().startsWith("{")) {
+            return null;
+        }
+        try {
+            Map<String, Object> body = HatariClient.MAPPER.readValue(responseBody, Map.class);
+            Object error = body.get(HatariConstants.ERROR_PARAM);
+            if (error instanceof Map) {
+                body = (Map<String, Object>) error;
+            }
+            Object name = body.get(HatariConstants.NAME_PARAM);
+            return name instanceof String ? (String) name : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the <code>Retry-After</code> header, given either in seconds or as an HTTP date.
+     *
+     * @return how long the API asked us to wait, or 0 if it didn't say.
+     */
+    public static long getRetryAfterMillis(HatariResponse response) {
+        String retryAfter = response.getHeader("Retry-After");
+        if (retryAfter == null) {
+            return 0;
+        }
+        retryAfter = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(retryAfter) * 1000);
+        } catch (NumberFormatException e) {
+            // not seconds, so it should be a date
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+            return Math.max(0, format.parse(retryAfter).getTime() - System.currentTimeMillis());
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+}
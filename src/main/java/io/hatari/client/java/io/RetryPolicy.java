@@ -0,0 +1,48 @@
+package io.hatari.client.java.io;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RetryPolicy decides how often and how long after a failed upload it is tried again: exponential backoff with
+ * "equal jitter", i.e. a random delay between half and all of the exponential delay, so clients that failed at
+ * the same time don't all come back at the same time.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * @param maxAttempts        How often an upload is tried in total, including the first attempt. 1 disables
+     *                           retries.
+     * @param initialDelayMillis The delay before the first retry, doubled for every further retry.
+     * @param maxDelayMillis     The longest delay between two attempts.
+     */
+    public RetryPolicy(int maxAttempts, long initialDelayMillis, long maxDelayMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("An upload must be attempted at least once: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param attempt How many attempts have been made so far, starting at 1.
+     * @return how long to wait before the next attempt.
+     */
+    public long getDelayMillis(int attempt) {
+        int doublings = Math.min(Math.max(attempt - 1, 0), 30);
+        long delay = Math.min(maxDelayMillis, initialDelayMillis << doublings);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+}
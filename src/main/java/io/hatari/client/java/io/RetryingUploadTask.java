@@ -0,0 +1,236 @@
+package io.hatari.client.java.io;
+
+import io.hatari.client.java.HatariClient;
+import io.hatari.client.java.metrics.HatariMetrics;
+import io.hatari.client.java.util.GeneralUtil;
+import io.hatari.client.java.util.HatariLogging;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The retry logic shared by all {@link UploadTask}s.
+ * <p/>
+ * Each attempt first asks the client's {@link CircuitBreaker} for permission, then sends the request. Network
+ * errors and responses the {@link ResponseClassifier} deems retryable are tried again after the delay given by
+ * the client's {@link RetryPolicy}, or later if the API sent a <code>Retry-After</code> header. Waiting happens on
+ * the {@link UploadQueue}'s scheduler, not on an upload thread. Once the attempts are used up, the task fails. A
+ * request the open breaker refused doesn't count as an attempt; it waits until the breaker lets requests through
+ * again, or until the client is closed.
+ * <p/>
+ * Every round trip is reported to the queue's {@link AdaptiveConcurrencyLimit}.
+ * <p/>
+ * Requests are sent in the client's {@link WireFormat}. If the API answers <code>415 Unsupported Media Type</code>
+ * to a binary format, the client falls back to JSON and the request is sent again as JSON right away.
+ * <p/>
+ * Each attempt goes to the {@link Endpoint} the client's {@link EndpointPool} picks. Attempts of collections the
+ * client hedges are sent again to another endpoint if they take longer than most recent round trips, and the
+ * first final response wins. Both requests carry the same event ids, so the API keeps only one copy.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+abstract class RetryingUploadTask implements UploadTask {
+
+    // how long to wait for a breaker that refused a request but is about to let a probe through
+    private static final long MIN_CIRCUIT_WAIT_MILLIS = 50;
+
+    protected final HatariClient hatariClient;
+    private final UploadQueue uploadQueue;
+    private int attempts;
+
+    RetryingUploadTask(HatariClient hatariClient, UploadQueue uploadQueue) {
+        this.hatariClient = hatariClient;
+        this.uploadQueue = uploadQueue;
+    }
+
+    /**
+     * Sends the request once.
+     *
+     * @param address    The base URL of the endpoint to send the request to.
+     * @param wireFormat The format to encode the request body in.
+     */
+    abstract HatariResponse send(String address, WireFormat wireFormat) throws IOException;
+
+    /**
+     * @return the collection the request adds events to, to tell whether it should be hedged.
+     */
+    abstract String getEventCollection();
+
+    /**
+     * Handles a response that is final, successful or not.
+     */
+    abstract void onResponse(HatariResponse response);
+
+    /**
+     * Reports that the upload failed for good.
+     *
+     * @param statusCode The status code of the last response, or 0 if there was none.
+     */
+    abstract void onFailure(int statusCode, String reason);
+
+    /**
+     * Reports that the upload was dropped without being sent.
+     */
+    abstract void onDropped(String reason);
+
+    @Override
+    public void run() {
+        CircuitBreaker circuitBreaker = hatariClient.getCircuitBreaker();
+        if (!circuitBreaker.tryAcquire()) {
+            // nothing was sent, so this doesn't use up an attempt
+            long delayMillis = Math.max(circuitBreaker.getRemainingOpenMillis(), MIN_CIRCUIT_WAIT_MILLIS);
+            HatariLogging.log("The circuit breaker is open, trying the upload again in %d ms.", delayMillis);
+            uploadQueue.retryLater(this, delayMillis);
+            return;
+        }
+        attempts++;
+
+        EndpointPool endpointPool = hatariClient.getEndpointPool();
+        WireFormat wireFormat = hatariClient.getWireFormat();
+        Endpoint endpoint = endpointPool.select(null);
+        AtomicBoolean settled = new AtomicBoolean();
+        ScheduledFuture<?> hedge = null;
+        if (hatariClient.isHedgingEnabled(getEventCollection())) {
+            endpointPool.requestSent();
+            long hedgeDelayNanos = endpointPool.getHedgeDelayNanos();
+            if (hedgeDelayNanos > 0) {
+                hedge = scheduleHedge(endpointPool, endpoint, wireFormat, settled, hedgeDelayNanos);
+            }
+        }
+        Exchange exchange = exchange(endpointPool, endpoint, wireFormat);
+        if (hedge != null) {
+            hedge.cancel(false);
+        }
+        // a hedge may have been answered first
+        if (settled.compareAndSet(false, true)) {
+            handle(exchange);
+        }
+    }
+
+    @Override
+    public void abandon(String reason) {
+        onDropped(reason);
+    }
+
+    /**
+     * Sends the request to an endpoint, falling back to JSON if the API rejects the wire format, and reports the
+     * outcome to the endpoint.
+     */
+    private Exchange exchange(EndpointPool endpointPool, Endpoint endpoint, WireFormat wireFormat) {
+        HatariMetrics metrics = hatariClient.getMetrics();
+        Exchange exchange = new Exchange();
+        long startNanos = metrics.requestStarted();
+        endpoint.requestStarted();
+        try {
+            exchange.response = send(endpoint.getAddress(), wireFormat);
+            if (exchange.response.getStatusCode() == 415 && !wireFormat.isJson()) {
+                hatariClient.onWireFormatRejected(wireFormat);
+                exchange.response = send(endpoint.getAddress(), WireFormat.JSON);
+            }
+        } catch (IOException e) {
+            exchange.error = e;
+        } finally {
+            metrics.requestFinished(startNanos);
+            exchange.roundTripNanos = System.nanoTime() - startNanos;
+            exchange.failed = exchange.response == null || ResponseClassifier.isRetryable(exchange.response);
+            endpointPool.requestFinished(endpoint, exchange.roundTripNanos, exchange.failed);
+        }
+        return exchange;
+    }
+
+    private void handle(Exchange exchange) {
+        CircuitBreaker circuitBreaker = hatariClient.getCircuitBreaker();
+        uploadQueue.onRoundTrip(exchange.roundTripNanos, exchange.failed);
+        if (exchange.error != null) {
+            circuitBreaker.onFailure();
+            HatariLogging.log("There was an error while sending events to the Hatari API.");
+            String stackTrace = GeneralUtil.getStackTraceFromThrowable(exchange.error);
+            HatariLogging.log(stackTrace);
+            retryOrFail(0, 0, stackTrace);
+            return;
+        }
+
+        HatariResponse response = exchange.response;
+        if (exchange.failed) {
+            circuitBreaker.onFailure();
+            HatariLogging.log("Response code %d is retryable. Response body was: %s",
+                    response.getStatusCode(), response.getBody());
+            retryOrFail(ResponseClassifier.getRetryAfterMillis(response), response.getStatusCode(),
+                    response.getBody());
+        } else {
+            // even a client error means the API itself is healthy
+            circuitBreaker.onSuccess();
+            onResponse(response);
+        }
+    }
+
+    /**
+     * Sends the request again on the upload executor once it took longer than the delay, unless it was answered
+     * by then, the hedge budget is spent or the circuit breaker isn't closed. The hedge only settles the attempt
+     * with a final response; if it fails, the first request decides about retrying.
+     */
+    private ScheduledFuture<?> scheduleHedge(final EndpointPool endpointPool, final Endpoint primary,
+                                             final WireFormat wireFormat, final AtomicBoolean settled,
+                                             long delayNanos) {
+        final Runnable hedge = new Runnable() {
+            @Override
+            public void run() {
+                if (settled.get()) {
+                    return;
+                }
+                if (hatariClient.getCircuitBreaker().getState() != CircuitBreaker.State.CLOSED) {
+                    // the breaker opened since the first request went out, so the API gets no extra load; nor may
+                    // a hedge take the single probe of a half-open breaker, which only hears back from a winner
+                    return;
+                }
+                Exchange exchange = exchange(endpointPool, endpointPool.select(primary), wireFormat);
+                boolean won = !exchange.failed && settled.compareAndSet(false, true);
+                hatariClient.getMetrics().recordHedge(won);
+                if (won) {
+                    handle(exchange);
+                }
+            }
+        };
+        return UploadQueue.RETRY_TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (settled.get() || !endpointPool.tryAcquireHedge()) {
+                    return;
+                }
+                try {
+                    HatariClient.getUploadExecutor().execute(hedge);
+                } catch (RejectedExecutionException e) {
+                    // the executor is shutting down, so the first request is on its own
+                }
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void retryOrFail(long minimumDelayMillis, int statusCode, String reason) {
+        RetryPolicy retryPolicy = hatariClient.getRetryPolicy();
+        if (attempts >= retryPolicy.getMaxAttempts()) {
+            onFailure(statusCode, reason);
+            return;
+        }
+        long delayMillis = Math.max(retryPolicy.getDelayMillis(attempts), minimumDelayMillis);
+        HatariLogging.log("Retrying upload in %d ms (attempt %d of %d).", delayMillis, attempts + 1,
+                retryPolicy.getMaxAttempts());
+        hatariClient.getMetrics().recordRetry();
+        uploadQueue.retryLater(this, delayMillis);
+    }
+
+    /**
+     * The outcome of sending the request once.
+     */
+    private static class Exchange {
+        private HatariResponse response;
+        private IOException error;
+        private long roundTripNanos;
+        // true for network errors and retryable responses
+        private boolean failed;
+    }
+}
@@ -0,0 +1,225 @@
+package io.hatari.client.java.io;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SlabPool keeps serialized events that wait for their upload in direct memory, outside the Java heap, so a
+ * backlog costs a fixed amount of memory instead of garbage collection work.
+ * <p/>
+ * The memory comes in slabs of {@code slabBytes}, allocated the first time they are needed, up to a budget of
+ * {@code capacityBytes}, and never given back. Events are copied into the current slab one after the other; once it
+ * is full, the next slab takes over. A slab is reused as soon as every event in it was uploaded, failed or dropped,
+ * so an event that keeps being retried holds on to its whole slab.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class SlabPool {
+
+    private final int slabBytes;
+    private final int maxSlabs;
+    private final ArrayDeque<Slab> freeSlabs = new ArrayDeque<Slab>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private int allocatedSlabs;
+    private Slab current;
+
+    /**
+     * @param slabBytes     How big each slab is, and so the biggest event the pool takes.
+     * @param capacityBytes How much memory all slabs together may take.
+     */
+    public SlabPool(int slabBytes, long capacityBytes) {
+        if (slabBytes <= 0 || capacityBytes < slabBytes) {
+            throw new IllegalArgumentException("A slab pool needs room for at least one slab.");
+        }
+        this.slabBytes = slabBytes;
+        this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, capacityBytes / slabBytes);
+    }
+
+    public int getSlabBytes() {
+        return slabBytes;
+    }
+
+    /**
+     * @return how much memory the pool may take at most.
+     */
+    public long getCapacityBytes() {
+        return (long) maxSlabs * slabBytes;
+    }
+
+    /**
+     * @return how much memory the pool took so far, in use or not.
+     */
+    public synchronized long getAllocatedBytes() {
+        return (long) allocatedSlabs * slabBytes;
+    }
+
+    /**
+     * @return how many bytes of events are held right now.
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * @return true if an event of the given length fits into a slab at all.
+     */
+    public boolean fits(int length) {
+        return length <= slabBytes;
+    }
+
+    /**
+     * Copies an event into the pool.
+     *
+     * @param event         The serialized event.
+     * @param timeoutMillis How long to wait for a slab to be freed if the budget is used up, or 0 not to wait.
+     * @return the event's slice of a slab, or null if it doesn't {@link #fits(int) fit}, or the budget stayed used
+     * up for the timeout.
+     */
+    public Slice allocate(byte[] event, long timeoutMillis) {
+        if (!fits(event.length)) {
+            return null;
+        }
+        Slice slice;
+        synchronized (this) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (current == null || current.position + event.length > slabBytes) {
+                if (current != null) {
+                    // the pool's own reference; the slab is freed with its last event from now on
+                    current.release();
+                    current = null;
+                }
+                current = nextSlab(deadline);
+                if (current == null) {
+                    return null;
+                }
+            }
+            slice = new Slice(current, current.position, event.length);
+            current.position += event.length;
+            current.live.incrementAndGet();
+        }
+        // the region is reserved, so the copy can happen outside the lock
+        ByteBuffer target = view(slice);
+        target.put(event);
+        usedBytes.addAndGet(event.length);
+        return slice;
+    }
+
+    private Slab nextSlab(long deadline) {
+        while (true) {
+            Slab slab = freeSlabs.poll();
+            if (slab == null && allocatedSlabs < maxSlabs) {
+                allocatedSlabs++;
+                slab = new Slab(ByteBuffer.allocateDirect(slabBytes));
+            }
+            if (slab != null) {
+                slab.position = 0;
+                slab.live.set(1);
+                return slab;
+            }
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return null;
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    private synchronized void recycle(Slab slab) {
+        freeSlabs.push(slab);
+        notifyAll();
+    }
+
+    private static ByteBuffer view(Slice slice) {
+        ByteBuffer buffer = slice.slab.buffer.duplicate();
+        // through Buffer, whose methods don't return ByteBuffer on Java 8
+        ((Buffer) buffer).limit(slice.offset + slice.length);
+        ((Buffer) buffer).position(slice.offset);
+        return buffer;
+    }
+
+    @Override
+    public String toString() {
+        return "SlabPool{slabBytes=" + slabBytes + ", capacityBytes=" + getCapacityBytes() + ", allocatedBytes="
+                + getAllocatedBytes() + ", usedBytes=" + getUsedBytes() + "}";
+    }
+
+    private class Slab {
+        private final ByteBuffer buffer;
+        // the events in the slab, plus one while it is the current slab
+        private final AtomicInteger live = new AtomicInteger();
+        // guarded by the pool
+        private int position;
+
+        private Slab(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        private void release() {
+            if (live.decrementAndGet() == 0) {
+                recycle(this);
+            }
+        }
+    }
+
+    /**
+     * One event in a slab. Whoever holds it must {@link #release()} it exactly once, when the event is done with;
+     * anyone reading it in the meantime {@link #retain() retains} it first, so the slab isn't reused under them.
+     */
+    public final class Slice {
+        private final Slab slab;
+        private final int offset;
+        private final int length;
+        // the holder's reference plus one per reader
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private Slice(Slab slab, int offset, int length) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * @return true if the event may be read until {@link #release()} is called, false if it was released
+         * already.
+         */
+        public boolean retain() {
+            while (true) {
+                int count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        public void release() {
+            if (references.decrementAndGet() == 0) {
+                usedBytes.addAndGet(-length);
+                slab.release();
+            }
+        }
+
+        /**
+         * @return a read-only view of the event, only valid while it is retained.
+         */
+        public ByteBuffer buffer() {
+            return view(this).asReadOnlyBuffer();
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package io.hatari.client.java.io;
+
+import io.hatari.client.java.exceptions.QueueFullException;
+import io.hatari.client.java.util.HatariLogging;
+import io.hatari.client.java.util.OverflowPolicy;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * UploadQueue is the bounded hand-off between the threads adding events to one
+ * {@link io.hatari.client.java.HatariClient} and the threads uploading them.
+ * <p/>
+ * Producers publish {@link UploadTask}s into a lock-free ring, from which the {@link UploadScheduler} takes them
+ * when it is this queue's turn and its {@link AdaptiveConcurrencyLimit} allows another upload to run. The
+ * ring's capacity is the real bound on pending uploads; what happens when it is full is decided by the
+ * {@link OverflowPolicy}.
+ * <p/>
+ * The queue keeps count of every task it is responsible for, whether it is waiting in the ring, running or
+ * waiting for a retry, so {@link #awaitIdle(long)} can tell when everything handed to it was settled.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class UploadQueue {
+
+    // also fires the hedges of RetryingUploadTask, which only hand them to the upload executor
+    static final ScheduledExecutorService RETRY_TIMER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "hatari-retry");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private static final long MAX_BLOCK_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final UploadScheduler scheduler;
+    private final BoundedMpmcQueue<UploadTask> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private volatile int weight;
+    private volatile AdaptiveConcurrencyLimit concurrencyLimit;
+    private volatile boolean closed;
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    private final AtomicInteger unsettledTasks = new AtomicInteger();
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong rejectedEvents = new AtomicLong();
+    private final Object idleLock = new Object();
+
+    public UploadQueue(UploadScheduler scheduler, int capacity, OverflowPolicy overflowPolicy,
+                       long blockTimeoutMillis, int weight, AdaptiveConcurrencyLimit concurrencyLimit) {
+        this.scheduler = scheduler;
+        this.queue = new BoundedMpmcQueue<UploadTask>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        setWeight(weight);
+        setConcurrencyLimit(concurrencyLimit);
+        scheduler.register(this);
+    }
+
+    /**
+     * Queues a task for upload, applying the {@link OverflowPolicy} if the queue is full. Tasks queued after
+     * {@link #close()} are abandoned right away.
+     *
+     * @param task The task to upload.
+     * @throws QueueFullException if the policy is {@link OverflowPolicy#FAIL}, or {@link OverflowPolicy#BLOCK} and
+     *                            no room opened up in time. The task was not queued and its callbacks were not
+     *                            notified.
+     */
+    public void enqueue(UploadTask task) throws QueueFullException {
+        if (closed) {
+            task.abandon("The client was closed before the event could be sent.");
+            return;
+        }
+        // counted before it is published, so a quick upload can't settle it first
+        unsettledTasks.incrementAndGet();
+        if (!queue.offer(task)) {
+            switch (overflowPolicy) {
+                case BLOCK:
+                    if (!offerUntil(task, System.nanoTime() + blockTimeoutNanos)) {
+                        rejectedEvents.addAndGet(task.getEventCount());
+                        settle();
+                        throw new QueueFullException("The upload queue stayed full for longer than the block timeout.");
+                    }
+                    break;
+                case DROP_NEWEST:
+                    settle();
+                    drop(task, "The upload queue is full, so the event was dropped.");
+                    return;
+                case DROP_OLDEST:
+                    while (!queue.offer(task)) {
+                        UploadTask oldest = queue.poll();
+                        if (oldest != null) {
+                            settle();
+                            drop(oldest, "The upload queue is full, so the event was dropped to make room for newer ones.");
+                        }
+                    }
+                    break;
+                case FAIL:
+                default:
+                    rejectedEvents.addAndGet(task.getEventCount());
+                    settle();
+                    throw new QueueFullException("The upload queue is full.");
+            }
+        }
+        scheduler.signal();
+    }
+
+    /**
+     * Applies the {@link OverflowPolicy} to a task there is no room for outside the queue, e.g. because the memory
+     * for pending events is used up. A waiting {@link OverflowPolicy#BLOCK} has already happened by then, so it
+     * fails like {@link OverflowPolicy#FAIL}, and {@link OverflowPolicy#DROP_OLDEST} drops the new task, since
+     * dropping an older one wouldn't make room for it.
+     *
+     * @param task   The task that can't be queued.
+     * @param reason Why.
+     * @throws QueueFullException unless the policy drops tasks. The task was not queued and its callbacks were not
+     *                            notified.
+     */
+    public void overflow(UploadTask task, String reason) throws QueueFullException {
+        switch (overflowPolicy) {
+            case DROP_NEWEST:
+            case DROP_OLDEST:
+                drop(task, reason + ", so the event was dropped.");
+                break;
+            case BLOCK:
+            case FAIL:
+            default:
+                rejectedEvents.addAndGet(task.getEventCount());
+                throw new QueueFullException(reason + ".");
+        }
+    }
+
+    /**
+     * @return the policy for tasks there is no room for.
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Queues a task again once the given delay has passed, without holding up an upload thread in the meantime.
+     * If the queue refuses the task then, the task is abandoned.
+     *
+     * @param task        The task to queue again.
+     * @param delayMillis How long to wait before queueing it.
+     */
+    public void retryLater(final UploadTask task, long delayMillis) {
+        unsettledTasks.incrementAndGet();
+        RETRY_TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    enqueue(task);
+                } catch (QueueFullException e) {
+                    task.abandon(e.getMessage());
+                } finally {
+                    settle();
+                }
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits until every task handed to this queue was sent, failed for good or dropped.
+     *
+     * @param timeoutMillis How long to wait at most.
+     * @return true if the queue is idle, false if the timeout passed first or the thread was interrupted.
+     */
+    public boolean awaitIdle(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (idleLock) {
+            while (unsettledTasks.get() > 0) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    return false;
+                }
+                try {
+                    idleLock.wait(remainingMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Stops taking turns on the {@link UploadScheduler} and abandons every task that is still waiting. Tasks that
+     * are running finish, but won't be retried.
+     */
+    public void close() {
+        closed = true;
+        scheduler.unregister(this);
+        UploadTask task;
+        while ((task = queue.poll()) != null) {
+            settle();
+            task.abandon("The client was closed before the event could be sent.");
+        }
+    }
+
+    /**
+     * @return how many uploads this queue may start on its turn, relative to the other queues.
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    public void setWeight(int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("An upload queue's weight must be positive: " + weight);
+        }
+        this.weight = weight;
+    }
+
+    /**
+     * @return the limit on how many of this queue's uploads may run at once.
+     */
+    public AdaptiveConcurrencyLimit getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public void setConcurrencyLimit(AdaptiveConcurrencyLimit concurrencyLimit) {
+        if (concurrencyLimit == null) {
+            throw new IllegalArgumentException("The concurrency limit must not be null.");
+        }
+        this.concurrencyLimit = concurrencyLimit;
+        scheduler.signal();
+    }
+
+    /**
+     * Tells the {@link AdaptiveConcurrencyLimit} how long a request of this queue took, from one of its upload
+     * threads.
+     *
+     * @param roundTripNanos How long the request took.
+     * @param overloaded     Whether the request timed out, failed on the network, or got a retryable response.
+     */
+    public void onRoundTrip(long roundTripNanos, boolean overloaded) {
+        if (concurrencyLimit.onRoundTrip(roundTripNanos, runningTasks.get(), overloaded)) {
+            scheduler.signal();
+        }
+    }
+
+    /**
+     * @return how many tasks are waiting to be handed to an upload thread.
+     */
+    public int getDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return how many of this queue's uploads are running right now.
+     */
+    public int getRunningCount() {
+        return runningTasks.get();
+    }
+
+    /**
+     * @return how many events were dropped by {@link OverflowPolicy#DROP_NEWEST} or
+     * {@link OverflowPolicy#DROP_OLDEST} so far.
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents.get();
+    }
+
+    /**
+     * @return how many events were refused with a {@link QueueFullException} so far.
+     */
+    public long getRejectedEventCount() {
+        return rejectedEvents.get();
+    }
+
+    // only called by the scheduler's dispatcher, so the check and the increment can't race each other
+    UploadTask pollForDispatch() {
+        if (runningTasks.get() >= concurrencyLimit.getLimit()) {
+            return null;
+        }
+        UploadTask task = queue.poll();
+        if (task != null) {
+            runningTasks.incrementAndGet();
+        }
+        return task;
+    }
+
+    boolean isDispatchable() {
+        return runningTasks.get() < concurrencyLimit.getLimit() && !queue.isEmpty();
+    }
+
+    void taskFinished() {
+        runningTasks.decrementAndGet();
+        settle();
+        scheduler.signal();
+    }
+
+    void dispatchFailed(UploadTask task, String reason) {
+        runningTasks.decrementAndGet();
+        settle();
+        task.abandon(reason);
+    }
+
+    private void settle() {
+        if (unsettledTasks.decrementAndGet() == 0) {
+            synchronized (idleLock) {
+                idleLock.notifyAll();
+            }
+        }
+    }
+
+    private boolean offerUntil(UploadTask task, long deadline) {
+        long backoff = 1000;
+        while (!queue.offer(task)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(Math.min(backoff, remaining));
+            backoff = Math.min(backoff * 2, MAX_BLOCK_BACKOFF_NANOS);
+        }
+        return true;
+    }
+
+    private void drop(UploadTask task, String reason) {
+        droppedEvents.addAndGet(task.getEventCount());
+        HatariLogging.log(reason);
+        task.abandon(reason);
+    }
+}
@@ -0,0 +1,202 @@
+package io.hatari.client.java.io;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * UploadScheduler shares one upload executor fairly between the {@link UploadQueue}s of several
+ * {@link io.hatari.client.java.HatariClient}s.
+ * <p/>
+ * A single dispatcher thread hands tasks to the executor, but never more than it may run at once, so the
+ * executor's own unbounded queue stays empty and a busy project can't get ahead of the others in it. Queues take
+ * turns in deficit round robin order: on its turn a queue may start as many uploads as its weight, unless it is
+ * empty or already has as many uploads running as it may. A slow or noisy project therefore only ever ties up its
+ * own share of the executor. The dispatcher starts when the first queue registers.
+ * <p/>
+ * The executor can be replaced at any time with {@link #setExecutor(Executor, int)}; uploads already running
+ * finish on the old one.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class UploadScheduler {
+
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private volatile ExecutorSlots executorSlots;
+    private volatile UploadQueue[] queues = new UploadQueue[0];
+    private final Thread dispatcher;
+    private volatile boolean dispatcherWaiting;
+
+    // only touched by the dispatcher: whose turn it is and how many uploads it may still start
+    private int turn;
+    private int credit;
+
+    public UploadScheduler(Executor executor, int maxConcurrentUploads) {
+        this.executorSlots = new ExecutorSlots(executor, maxConcurrentUploads);
+        this.dispatcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, "hatari-upload-dispatcher");
+        this.dispatcher.setDaemon(true);
+    }
+
+    /**
+     * Hands uploads to another executor from now on.
+     *
+     * @param executor             The executor to run uploads on.
+     * @param maxConcurrentUploads How many uploads may run at once, e.g. the executor's number of threads.
+     */
+    public void setExecutor(Executor executor, int maxConcurrentUploads) {
+        if (executor == null || maxConcurrentUploads <= 0) {
+            throw new IllegalArgumentException("An upload executor needs to be able to run at least one upload.");
+        }
+        ExecutorSlots previous = executorSlots;
+        executorSlots = new ExecutorSlots(executor, maxConcurrentUploads);
+        // the dispatcher may be waiting for a slot of the old executor
+        previous.semaphore.release(maxConcurrentUploads);
+    }
+
+    /**
+     * @return the executor uploads are currently handed to.
+     */
+    public Executor getExecutor() {
+        return executorSlots.executor;
+    }
+
+    /**
+     * @return how many queues currently take turns on the executor.
+     */
+    public int getQueueCount() {
+        return queues.length;
+    }
+
+    synchronized void register(UploadQueue queue) {
+        // the dispatcher only starts once there is something to dispatch
+        if (dispatcher.getState() == Thread.State.NEW) {
+            dispatcher.start();
+        }
+        List<UploadQueue> updated = new ArrayList<UploadQueue>(Arrays.asList(queues));
+        updated.add(queue);
+        queues = updated.toArray(new UploadQueue[updated.size()]);
+    }
+
+    synchronized void unregister(UploadQueue queue) {
+        List<UploadQueue> updated = new ArrayList<UploadQueue>(Arrays.asList(queues));
+        updated.remove(queue);
+        queues = updated.toArray(new UploadQueue[updated.size()]);
+    }
+
+    /**
+     * Wakes the dispatcher if it is waiting, because a task was queued or a queue has room to start another upload.
+     */
+    void signal() {
+        if (dispatcherWaiting) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    private void dispatch() {
+        while (true) {
+            ExecutorSlots slots = acquireSlot();
+            UploadQueue[] queues = this.queues;
+            UploadQueue queue = null;
+            UploadTask task = null;
+            for (int visited = 0; visited <= queues.length && queues.length > 0 && task == null; visited++) {
+                if (turn >= queues.length) {
+                    turn = 0;
+                    credit = queues[0].getWeight();
+                }
+                queue = queues[turn];
+                task = credit > 0 ? queue.pollForDispatch() : null;
+                if (task == null) {
+                    // the queue is empty, busy or has used up its turn; unused credit is not saved up
+                    turn++;
+                    credit = turn < queues.length ? queues[turn].getWeight() : 0;
+                }
+            }
+            if (task == null) {
+                slots.semaphore.release();
+                awaitTask();
+                continue;
+            }
+            credit--;
+            try {
+                slots.executor.execute(new SlotReleasingTask(task, queue, slots.semaphore));
+            } catch (RejectedExecutionException e) {
+                slots.semaphore.release();
+                queue.dispatchFailed(task, "The upload executor rejected the event: " + e.getMessage());
+            }
+        }
+    }
+
+    private ExecutorSlots acquireSlot() {
+        ExecutorSlots slots = executorSlots;
+        slots.semaphore.acquireUninterruptibly();
+        while (slots != executorSlots) {
+            // the executor was replaced while we waited
+            slots.semaphore.release();
+            slots = executorSlots;
+            slots.semaphore.acquireUninterruptibly();
+        }
+        return slots;
+    }
+
+    private void awaitTask() {
+        dispatcherWaiting = true;
+        // re-check after announcing ourselves, a producer may have published in between
+        if (!hasDispatchableTask()) {
+            LockSupport.parkNanos(this, MAX_PARK_NANOS);
+        }
+        dispatcherWaiting = false;
+    }
+
+    private boolean hasDispatchableTask() {
+        for (UploadQueue queue : queues) {
+            if (queue.isDispatchable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class ExecutorSlots {
+        private final Executor executor;
+        private final Semaphore semaphore;
+
+        private ExecutorSlots(Executor executor, int maxConcurrentUploads) {
+            this.executor = executor;
+            this.semaphore = new Semaphore(maxConcurrentUploads);
+        }
+    }
+
+    private static class SlotReleasingTask implements Runnable {
+        private final UploadTask task;
+        private final UploadQueue queue;
+        private final Semaphore semaphore;
+
+        private SlotReleasingTask(UploadTask task, UploadQueue queue, Semaphore semaphore) {
+            this.task = task;
+            this.queue = queue;
+            this.semaphore = semaphore;
+        }
+
+        @Override
+        public void run() {
+            try {
+                task.run();
+            } finally {
+                semaphore.release();
+                queue.taskFinished();
+            }
+        }
+    }
+}
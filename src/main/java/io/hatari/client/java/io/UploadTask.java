@@ -0,0 +1,22 @@
+package io.hatari.client.java.io;
+
+/**
+ * A unit of work for the {@link UploadQueue}: one request carrying one or more events.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public interface UploadTask extends Runnable {
+
+    /**
+     * @return how many events this task uploads.
+     */
+    int getEventCount();
+
+    /**
+     * Invoked instead of {@link #run()} when the task is dropped before it was sent.
+     *
+     * @param reason Why the task was dropped, passed on to the callbacks of its events.
+     */
+    void abandon(String reason);
+}
@@ -0,0 +1,104 @@
+package io.hatari.client.java.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The default {@link HatariTransport}, built on the JDK's {@link HttpURLConnection}.
+ * <p/>
+ * The JDK keeps connections alive and reuses them for the same host, but only if every response body, including
+ * the error stream of a 4xx or 5xx response, was read to the end and closed. This transport always does that, and
+ * never calls {@link HttpURLConnection#disconnect()}, so requests after the first one skip the TCP and TLS
+ * handshakes. How many idle connections the JDK keeps per host is controlled by the <code>http.maxConnections</code>
+ * system property. Request bodies are streamed with chunked transfer encoding, since a compressed body's length
+ * isn't known until it was written.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class UrlConnectionTransport implements HatariTransport {
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    public UrlConnectionTransport(int connectTimeoutMillis, int readTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    public HatariResponse post(String url, Map<String, String> headers, RequestBody body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setUseCaches(false);
+        connection.setRequestMethod("POST");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+        // we're writing, straight to the socket rather than into a buffer of the whole body first
+        connection.setDoOutput(true);
+        connection.setChunkedStreamingMode(0);
+        OutputStream out = connection.getOutputStream();
+        try {
+            body.writeTo(out);
+        } finally {
+            out.close();
+        }
+
+        int statusCode = connection.getResponseCode();
+        InputStream in = statusCode < 400 ? connection.getInputStream() : connection.getErrorStream();
+        return new HatariResponse(statusCode, readFully(in), headersOf(connection));
+    }
+
+    /**
+     * Sends a HEAD request to the endpoint's root; whatever the answer, the connection is left in the keep-alive
+     * cache for the next request.
+     */
+    @Override
+    public void connect(String address) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(address + "/").openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setUseCaches(false);
+        connection.setRequestMethod("HEAD");
+        int statusCode = connection.getResponseCode();
+        readFully(statusCode < 400 ? connection.getInputStream() : connection.getErrorStream());
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            return body.toString("UTF-8");
+        } finally {
+            // hands the connection back to the keep-alive cache
+            in.close();
+        }
+    }
+
+    private static Map<String, String> headersOf(HttpURLConnection connection) {
+        Map<String, String> headers = new HashMap<String, String>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            // the status line comes back with a null name
+            if (header.getKey() != null && !header.getValue().isEmpty()) {
+                headers.put(header.getKey().toLowerCase(), header.getValue().get(0));
+            }
+        }
+        return headers;
+    }
+}
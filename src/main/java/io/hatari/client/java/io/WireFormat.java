@@ -0,0 +1,257 @@
+package io.hatari.client.java.io;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * WireFormat encodes request bodies for the Hatari API, and names them with a <code>Content-Type</code>.
+ * <p/>
+ * Besides {@link #JSON}, the SDK ships the binary formats {@link #SMILE} and {@link #CBOR}, which take less CPU to
+ * write than JSON and make smaller bodies, especially for batches, where Smile writes each property name only
+ * once. Other formats can be plugged in with any Jackson {@link ObjectMapper}.
+ * <p/>
+ * Events that were serialized before they were queued, by the {@link io.hatari.client.java.EventBuilder}, the
+ * batcher or the local store, are kept as JSON and transcoded token by token when they are sent, so the local
+ * store stays readable whatever the format. Responses are always read as JSON.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class WireFormat {
+
+    // the built-in formats create their mappers on first use, a mapper takes a while to set up
+    public static final WireFormat JSON = new WireFormat("application/json", true, new FactoryMaker() {
+        @Override
+        JsonFactory newFactory() {
+            return new JsonFactory();
+        }
+    });
+    public static final WireFormat SMILE = new WireFormat("application/x-jackson-smile", false, new FactoryMaker() {
+        @Override
+        JsonFactory newFactory() {
+            return new SmileFactory();
+        }
+    });
+    public static final WireFormat CBOR = new WireFormat("application/cbor", false, new FactoryMaker() {
+        @Override
+        JsonFactory newFactory() {
+            return new CBORFactory();
+        }
+    });
+
+    private static final ThreadLocal<byte[]> COPY_BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[8192];
+        }
+    };
+
+    private final String contentType;
+    private final boolean json;
+    private final FactoryMaker factoryMaker;
+    private volatile ObjectMapper mapper;
+
+    /**
+     * @param contentType The media type the Hatari API knows the format by.
+     * @param mapper      The mapper to encode and decode the format with.
+     */
+    public WireFormat(String contentType, ObjectMapper mapper) {
+        if (contentType == null || mapper == null) {
+            throw new IllegalArgumentException("A wire format needs a content type and a mapper.");
+        }
+        this.contentType = contentType;
+        this.json = JsonFactory.FORMAT_NAME_JSON.equals(mapper.getFactory().getFormatName());
+        this.factoryMaker = null;
+        this.mapper = mapper;
+    }
+
+    private WireFormat(String contentType, boolean json, FactoryMaker factoryMaker) {
+        this.contentType = contentType;
+        this.json = json;
+        this.factoryMaker = factoryMaker;
+    }
+
+    /**
+     * @return the format of the built-in ones that goes by the content type, ignoring parameters like the charset,
+     * or null if there is none.
+     */
+    public static WireFormat forContentType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int parameters = contentType.indexOf(';');
+        String mediaType = (parameters < 0 ? contentType : contentType.substring(0, parameters)).trim();
+        for (WireFormat format : new WireFormat[]{JSON, SMILE, CBOR}) {
+            if (format.contentType.equalsIgnoreCase(mediaType)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public ObjectMapper getMapper() {
+        ObjectMapper mapper = this.mapper;
+        if (mapper == null) {
+            synchronized (this) {
+                mapper = this.mapper;
+                if (mapper == null) {
+                    this.mapper = mapper = newMapper(factoryMaker.newFactory());
+                }
+            }
+        }
+        return mapper;
+    }
+
+    /**
+     * @return true if the format is JSON, so events serialized up front can be sent as they are.
+     */
+    public boolean isJson() {
+        return json;
+    }
+
+    /**
+     * Encodes an event, or any other value.
+     *
+     * @param out   The stream to write to; it is left open.
+     * @param value The value to encode.
+     */
+    public void writeValue(OutputStream out, Object value) throws IOException {
+        JsonGenerator generator = newGenerator(out);
+        getMapper().writeValue(generator, value);
+        generator.close();
+    }
+
+    /**
+     * Encodes an event that was serialized to JSON up front.
+     *
+     * @param out       The stream to write to; it is left open.
+     * @param jsonEvent The event as JSON.
+     */
+    public void writeSerializedEvent(OutputStream out, byte[] jsonEvent) throws IOException {
+        if (json) {
+            out.write(jsonEvent);
+            return;
+        }
+        JsonGenerator generator = newGenerator(out);
+        transcode(jsonEvent, generator);
+        generator.close();
+    }
+
+    /**
+     * Encodes an event that was serialized to JSON up front and is kept outside the heap, see {@link SlabPool}.
+     *
+     * @param out       The stream to write to; it is left open.
+     * @param jsonEvent The event as JSON, from its position to its limit, which are left as they are.
+     */
+    public void writeSerializedEvent(OutputStream out, ByteBuffer jsonEvent) throws IOException {
+        ByteBuffer event = jsonEvent.duplicate();
+        if (json) {
+            byte[] chunk = COPY_BUFFERS.get();
+            while (event.hasRemaining()) {
+                int length = Math.min(chunk.length, event.remaining());
+                event.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+            return;
+        }
+        JsonGenerator generator = newGenerator(out);
+        transcode(JSON.getMapper().getFactory().createParser(new ByteBufferBackedInputStream(event)), generator);
+        generator.close();
+    }
+
+    /**
+     * Encodes a batch body of the form <code>{"collection": [event, event, ...]}</code> from events that were
+     * serialized to JSON up front.
+     *
+     * @param out             The stream to write to; it is left open.
+     * @param eventCollection The collection of the events.
+     * @param jsonEvents      The events as JSON.
+     */
+    public void writeBatch(OutputStream out, String eventCollection, List<byte[]> jsonEvents) throws IOException {
+        if (json) {
+            // the events are already JSON, so we only need to frame them
+            out.write('{');
+            out.write(getMapper().writeValueAsBytes(eventCollection));
+            out.write(':');
+            out.write('[');
+            for (int i = 0; i < jsonEvents.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write(jsonEvents.get(i));
+            }
+            out.write(']');
+            out.write('}');
+            return;
+        }
+        JsonGenerator generator = newGenerator(out);
+        generator.writeStartObject();
+        generator.writeArrayFieldStart(eventCollection);
+        for (byte[] event : jsonEvents) {
+            transcode(event, generator);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    /**
+     * Decodes a body written in this format, e.g. to check what was sent.
+     */
+    public <T> T readValue(byte[] content, Class<T> type) throws IOException {
+        return getMapper().readValue(content, type);
+    }
+
+    private JsonGenerator newGenerator(OutputStream out) throws IOException {
+        JsonGenerator generator = getMapper().getFactory().createGenerator(out);
+        // the stream may be a compressing one that still needs its trailer
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        return generator;
+    }
+
+    private static void transcode(byte[] jsonEvent, JsonGenerator generator) throws IOException {
+        transcode(JSON.getMapper().getFactory().createParser(jsonEvent), generator);
+    }
+
+    private static void transcode(JsonParser parser, JsonGenerator generator) throws IOException {
+        try {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        } finally {
+            parser.close();
+        }
+    }
+
+    private static ObjectMapper newMapper(JsonFactory factory) {
+        ObjectMapper mapper = new ObjectMapper(factory);
+        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        // dates look the same as they always did, and as the hatari timestamp
+        mapper.setDateFormat(new StdDateFormat().withColonInTimeZone(false));
+        return mapper;
+    }
+
+    @Override
+    public String toString() {
+        return contentType;
+    }
+
+    private abstract static class FactoryMaker {
+        abstract JsonFactory newFactory();
+    }
+}
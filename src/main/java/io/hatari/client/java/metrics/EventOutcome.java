@@ -0,0 +1,57 @@
+package io.hatari.client.java.metrics;
+
+/**
+ * What happened to events, as counted by {@link HatariMetrics}.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public enum EventOutcome {
+    /**
+     * The event was validated and handed to the upload queue, the batcher or the local store.
+     */
+    ENQUEUED,
+    /**
+     * The Hatari API accepted the event.
+     */
+    SENT,
+    /**
+     * The event's callback was told that it failed, because the API rejected it, the retries were used up or it
+     * was dropped.
+     */
+    FAILED,
+    /**
+     * The event was discarded without being sent because a queue or the local store was full. Such events are
+     * counted as {@link #FAILED} too.
+     */
+    DROPPED,
+    /**
+     * The collection's {@link io.hatari.client.java.sampling.SamplingPolicy} kept the event. Such events are
+     * counted as {@link #ENQUEUED} too once they are.
+     */
+    SAMPLED_IN,
+    /**
+     * The collection's {@link io.hatari.client.java.sampling.SamplingPolicy} discarded the event.
+     */
+    SAMPLED_OUT,
+    /**
+     * The collection's rate limit discarded the event.
+     */
+    RATE_LIMITED,
+    /**
+     * The client's {@link io.hatari.client.java.dedup.DuplicateFilter} discarded the event because it was added
+     * before.
+     */
+    DUPLICATE,
+    /**
+     * The client's event pipeline couldn't queue the event, e.g. because it was invalid, and reported it to its
+     * callback and the {@link io.hatari.client.java.util.DeadLetterHandler}.
+     */
+    DEAD_LETTER,
+    /**
+     * The event was counted or recorded with {@link io.hatari.client.java.HatariClient#count(String, java.util.Map)}
+     * or {@link io.hatari.client.java.HatariClient#record(String, java.util.Map, double)} and rolled up into a
+     * summary event. The summary is counted as {@link #ENQUEUED} once it is.
+     */
+    AGGREGATED
+}
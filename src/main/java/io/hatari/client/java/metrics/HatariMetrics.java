@@ -0,0 +1,411 @@
+package io.hatari.client.java.metrics;
+
+import io.hatari.client.java.io.UploadQueue;
+import io.hatari.client.java.util.GeneralUtil;
+import io.hatari.client.java.util.HatariLogging;
+import io.hatari.client.java.util.UploadCallbacks;
+import io.hatari.client.java.util.UploadEventCallback;
+import io.hatari.client.java.util.UploadResponseCallback;
+import io.hatari.client.java.validation.EventValidator;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HatariMetrics counts what happens to the events of one {@link io.hatari.client.java.HatariClient} and measures
+ * how long it takes.
+ * <p/>
+ * Counters are kept per event collection in {@link LongAdder}s, so threads adding events to the same collection
+ * don't contend. Latencies go into lock-free {@link LatencyHistogram}s. The numbers can be read directly, through
+ * JMX once {@link #registerMBean()} was called, or as they are taken by a {@link HatariMetricsListener}.
+ * <p/>
+ * Every metric is per client, the upload queue depth included, since every client has its own upload queue.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class HatariMetrics implements HatariMetricsMXBean {
+
+    private static final EventOutcome[] OUTCOMES = EventOutcome.values();
+
+    private final String projectKey;
+    private final UploadQueue uploadQueue;
+    private final EventValidator eventValidator;
+
+    private final LongAdder[] totals = newCounters();
+    private final ConcurrentMap<String, LongAdder[]> collections = new ConcurrentHashMap<String, LongAdder[]>();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[LatencyType.values().length];
+    private final LongAdder inFlightRequests = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final CopyOnWriteArrayList<HatariMetricsListener> listeners =
+            new CopyOnWriteArrayList<HatariMetricsListener>();
+    private ObjectName objectName;
+
+    public HatariMetrics(String projectKey, UploadQueue uploadQueue, EventValidator eventValidator) {
+        this.projectKey = projectKey;
+        this.uploadQueue = uploadQueue;
+        this.eventValidator = eventValidator;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    public void addListener(HatariMetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(HatariMetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Counts events that reached an outcome.
+     */
+    public void recordEvents(String eventCollection, EventOutcome outcome, long count) {
+        totals[outcome.ordinal()].add(count);
+        countersOf(eventCollection)[outcome.ordinal()].add(count);
+        for (HatariMetricsListener listener : listeners) {
+            try {
+                listener.onEvents(projectKey, eventCollection, outcome, count);
+            } catch (RuntimeException e) {
+                HatariLogging.log(GeneralUtil.getStackTraceFromThrowable(e));
+            }
+        }
+    }
+
+    /**
+     * Records a latency.
+     */
+    public void recordLatency(LatencyType type, long nanos) {
+        latencies[type.ordinal()].record(nanos);
+        for (HatariMetricsListener listener : listeners) {
+            try {
+                listener.onLatency(projectKey, type, nanos);
+            } catch (RuntimeException e) {
+                HatariLogging.log(GeneralUtil.getStackTraceFromThrowable(e));
+            }
+        }
+    }
+
+    /**
+     * Counts a request as in flight.
+     *
+     * @return the start time to pass to {@link #requestFinished(long)}.
+     */
+    public long requestStarted() {
+        inFlightRequests.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Counts a request as no longer in flight and records its round-trip time.
+     */
+    public void requestFinished(long startNanos) {
+        inFlightRequests.decrement();
+        recordLatency(LatencyType.HTTP_ROUND_TRIP, System.nanoTime() - startNanos);
+    }
+
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    /**
+     * Counts a hedged request that was sent again, and whether the second request was answered first.
+     */
+    public void recordHedge(boolean won) {
+        hedges.increment();
+        if (won) {
+            hedgeWins.increment();
+        }
+    }
+
+    /**
+     * Wraps the callback of an event that was just added, to count the event as sent or failed and to record its
+     * enqueue-to-ack latency once its result is known.
+     *
+     * @param callback The caller's callback, may be null.
+     * @return the callback to hand to the upload path instead.
+     */
+    public UploadEventCallback track(final String eventCollection, final UploadEventCallback callback) {
+        final long startNanos = System.nanoTime();
+        return new UploadResponseCallback() {
+            @Override
+            public void onSuccess() {
+                onResponse(0, true, null);
+            }
+
+            @Override
+            public void onError(String responseBody) {
+                onResponse(0, false, responseBody);
+            }
+
+            @Override
+            public void onResponse(int statusCode, boolean success, String responseBody) {
+                recordLatency(LatencyType.ENQUEUE_TO_ACK, System.nanoTime() - startNanos);
+                recordEvents(eventCollection, success ? EventOutcome.SENT : EventOutcome.FAILED, 1);
+                UploadCallbacks.notify(callback, statusCode, success, responseBody);
+            }
+        };
+    }
+
+    /**
+     * @return how many events of all collections reached the outcome.
+     */
+    public long getEventCount(EventOutcome outcome) {
+        return totals[outcome.ordinal()].sum();
+    }
+
+    /**
+     * @return how many events of the collection reached the outcome.
+     */
+    public long getEventCount(String eventCollection, EventOutcome outcome) {
+        LongAdder[] counters = collections.get(eventCollection);
+        return counters == null ? 0 : counters[outcome.ordinal()].sum();
+    }
+
+    /**
+     * @return the collections events were counted for.
+     */
+    public Set<String> getEventCollections() {
+        return collections.keySet();
+    }
+
+    public LatencyHistogram getLatencyHistogram(LatencyType type) {
+        return latencies[type.ordinal()];
+    }
+
+    /**
+     * Exports these metrics as an MXBean named
+     * <code>io.hatari.client:type=HatariMetrics,project=&lt;project key&gt;</code>, replacing whatever was registered
+     * for the same project before.
+     *
+     * @return the name the metrics were registered under.
+     * @throws JMException if the MBean server refused them.
+     */
+    public synchronized ObjectName registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("io.hatari.client:type=HatariMetrics,project=" + ObjectName.quote(projectKey));
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+        objectName = name;
+        return name;
+    }
+
+    public synchronized void unregisterMBean() throws JMException {
+        if (objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    @Override
+    public long getEnqueuedEventCount() {
+        return getEventCount(EventOutcome.ENQUEUED);
+    }
+
+    @Override
+    public long getSentEventCount() {
+        return getEventCount(EventOutcome.SENT);
+    }
+
+    @Override
+    public long getFailedEventCount() {
+        return getEventCount(EventOutcome.FAILED);
+    }
+
+    @Override
+    public long getDroppedEventCount() {
+        return getEventCount(EventOutcome.DROPPED);
+    }
+
+    @Override
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    @Override
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    @Override
+    public long getSampledInEventCount() {
+        return getEventCount(EventOutcome.SAMPLED_IN);
+    }
+
+    @Override
+    public long getSampledOutEventCount() {
+        return getEventCount(EventOutcome.SAMPLED_OUT);
+    }
+
+    @Override
+    public long getRateLimitedEventCount() {
+        return getEventCount(EventOutcome.RATE_LIMITED);
+    }
+
+    @Override
+    public long getDuplicateEventCount() {
+        return getEventCount(EventOutcome.DUPLICATE);
+    }
+
+    @Override
+    public long getDeadLetterEventCount() {
+        return getEventCount(EventOutcome.DEAD_LETTER);
+    }
+
+    @Override
+    public long getAggregatedEventCount() {
+        return getEventCount(EventOutcome.AGGREGATED);
+    }
+
+    @Override
+    public Map<String, Long> getEnqueuedEventCountByCollection() {
+        return countsByCollection(EventOutcome.ENQUEUED);
+    }
+
+    @Override
+    public Map<String, Long> getSentEventCountByCollection() {
+        return countsByCollection(EventOutcome.SENT);
+    }
+
+    @Override
+    public Map<String, Long> getFailedEventCountByCollection() {
+        return countsByCollection(EventOutcome.FAILED);
+    }
+
+    @Override
+    public Map<String, Long> getDroppedEventCountByCollection() {
+        return countsByCollection(EventOutcome.DROPPED);
+    }
+
+    @Override
+    public Map<String, Long> getSampledOutEventCountByCollection() {
+        return countsByCollection(EventOutcome.SAMPLED_OUT);
+    }
+
+    @Override
+    public Map<String, Long> getRateLimitedEventCountByCollection() {
+        return countsByCollection(EventOutcome.RATE_LIMITED);
+    }
+
+    @Override
+    public Map<String, Long> getDuplicateEventCountByCollection() {
+        return countsByCollection(EventOutcome.DUPLICATE);
+    }
+
+    @Override
+    public Map<String, Long> getDeadLetterEventCountByCollection() {
+        return countsByCollection(EventOutcome.DEAD_LETTER);
+    }
+
+    @Override
+    public Map<String, Long> getAggregatedEventCountByCollection() {
+        return countsByCollection(EventOutcome.AGGREGATED);
+    }
+
+    @Override
+    public int getUploadQueueDepth() {
+        return uploadQueue.getDepth();
+    }
+
+    @Override
+    public long getInFlightRequestCount() {
+        return inFlightRequests.sum();
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return uploadQueue.getConcurrencyLimit().getLimit();
+    }
+
+    @Override
+    public long getEnqueueToAckP50Micros() {
+        return percentileMicros(LatencyType.ENQUEUE_TO_ACK, 50);
+    }
+
+    @Override
+    public long getEnqueueToAckP99Micros() {
+        return percentileMicros(LatencyType.ENQUEUE_TO_ACK, 99);
+    }
+
+    @Override
+    public long getEnqueueToAckMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(getLatencyHistogram(LatencyType.ENQUEUE_TO_ACK).snapshot().getMax());
+    }
+
+    @Override
+    public long getHttpRoundTripP50Micros() {
+        return percentileMicros(LatencyType.HTTP_ROUND_TRIP, 50);
+    }
+
+    @Override
+    public long getHttpRoundTripP99Micros() {
+        return percentileMicros(LatencyType.HTTP_ROUND_TRIP, 99);
+    }
+
+    @Override
+    public long getHttpRoundTripMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(getLatencyHistogram(LatencyType.HTTP_ROUND_TRIP).snapshot().getMax());
+    }
+
+    @Override
+    public long getValidatedEventCount() {
+        return eventValidator.getValidatedEventCount();
+    }
+
+    @Override
+    public long getValidationMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(eventValidator.getValidationNanos());
+    }
+
+    private long percentileMicros(LatencyType type, double percentile) {
+        return TimeUnit.NANOSECONDS.toMicros(getLatencyHistogram(type).snapshot().getPercentile(percentile));
+    }
+
+    private Map<String, Long> countsByCollection(EventOutcome outcome) {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder[]> collection : collections.entrySet()) {
+            counts.put(collection.getKey(), collection.getValue()[outcome.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    private LongAdder[] countersOf(String eventCollection) {
+        LongAdder[] counters = collections.get(eventCollection);
+        if (counters == null) {
+            LongAdder[] created = newCounters();
+            counters = collections.putIfAbsent(eventCollection, created);
+            if (counters == null) {
+                counters = created;
+            }
+        }
+        return counters;
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[OUTCOMES.length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
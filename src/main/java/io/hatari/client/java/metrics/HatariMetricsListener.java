@@ -0,0 +1,32 @@
+package io.hatari.client.java.metrics;
+
+/**
+ * Receives every measurement {@link HatariMetrics} takes, e.g. to feed them into another metrics library.
+ * <p/>
+ * Listeners are invoked synchronously on the thread that took the measurement, which is often the thread adding
+ * an event or an upload thread, so they should return quickly. Exceptions they throw are logged and ignored.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public interface HatariMetricsListener {
+
+    /**
+     * Invoked when events reached an outcome.
+     *
+     * @param projectKey      The project of the client that counted the events.
+     * @param eventCollection The collection the events belong to.
+     * @param outcome         What happened to the events.
+     * @param count           How many events it happened to.
+     */
+    void onEvents(String projectKey, String eventCollection, EventOutcome outcome, long count);
+
+    /**
+     * Invoked when a latency was measured.
+     *
+     * @param projectKey The project of the client that measured the latency.
+     * @param type       Which latency was measured.
+     * @param nanos      The latency in nanoseconds.
+     */
+    void onLatency(String projectKey, LatencyType type, long nanos);
+}
@@ -0,0 +1,79 @@
+package io.hatari.client.java.metrics;
+
+import java.util.Map;
+
+/**
+ * The view of {@link HatariMetrics} that is exported through JMX, see {@link HatariMetrics#registerMBean()}.
+ * Latencies are in microseconds.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public interface HatariMetricsMXBean {
+
+    long getEnqueuedEventCount();
+
+    long getSentEventCount();
+
+    long getFailedEventCount();
+
+    long getDroppedEventCount();
+
+    long getRetryCount();
+
+    long getHedgeCount();
+
+    long getHedgeWinCount();
+
+    long getSampledInEventCount();
+
+    long getSampledOutEventCount();
+
+    long getRateLimitedEventCount();
+
+    long getDuplicateEventCount();
+
+    long getDeadLetterEventCount();
+
+    long getAggregatedEventCount();
+
+    Map<String, Long> getEnqueuedEventCountByCollection();
+
+    Map<String, Long> getSentEventCountByCollection();
+
+    Map<String, Long> getFailedEventCountByCollection();
+
+    Map<String, Long> getDroppedEventCountByCollection();
+
+    Map<String, Long> getSampledOutEventCountByCollection();
+
+    Map<String, Long> getRateLimitedEventCountByCollection();
+
+    Map<String, Long> getDuplicateEventCountByCollection();
+
+    Map<String, Long> getDeadLetterEventCountByCollection();
+
+    Map<String, Long> getAggregatedEventCountByCollection();
+
+    int getUploadQueueDepth();
+
+    long getInFlightRequestCount();
+
+    int getConcurrencyLimit();
+
+    long getEnqueueToAckP50Micros();
+
+    long getEnqueueToAckP99Micros();
+
+    long getEnqueueToAckMaxMicros();
+
+    long getHttpRoundTripP50Micros();
+
+    long getHttpRoundTripP99Micros();
+
+    long getHttpRoundTripMaxMicros();
+
+    long getValidatedEventCount();
+
+    long getValidationMicros();
+}
@@ -0,0 +1,19 @@
+package io.hatari.client.java.metrics;
+
+/**
+ * The latencies {@link HatariMetrics} keeps a {@link LatencyHistogram} of.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public enum LatencyType {
+    /**
+     * From the moment an event was added until the API answered for it, retries and time spent in queues
+     * included.
+     */
+    ENQUEUE_TO_ACK,
+    /**
+     * A single HTTP request to the API, from sending it until the response was read.
+     */
+    HTTP_ROUND_TRIP
+}
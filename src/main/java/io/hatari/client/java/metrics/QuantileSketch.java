@@ -0,0 +1,158 @@
+package io.hatari.client.java.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free sketch of the distribution of arbitrary values, to estimate quantiles within a relative error.
+ * <p/>
+ * Values go into logarithmic buckets, each {@code (1 + accuracy) / (1 - accuracy)} times as wide as the one below,
+ * so any quantile is off by at most the given relative accuracy of its value, and values spanning many orders of
+ * magnitude only take a few hundred buckets. Buckets are created as values arrive; recording a value is a map
+ * lookup and a {@link LongAdder} update, so threads only contend when they create the same bucket.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class QuantileSketch {
+
+    // values closer to zero than this are counted as zero
+    private static final double MIN_INDEXABLE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final ConcurrentHashMap<Integer, LongAdder> positive = new ConcurrentHashMap<Integer, LongAdder>();
+    private final ConcurrentHashMap<Integer, LongAdder> negative = new ConcurrentHashMap<Integer, LongAdder>();
+    private final LongAdder zeros = new LongAdder();
+
+    /**
+     * @param relativeAccuracy How far an estimated quantile may be off, relative to its value, e.g. 0.01.
+     */
+    public QuantileSketch(double relativeAccuracy) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("The relative accuracy must be between 0 and 1: " + relativeAccuracy);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * Records a value, which must be finite.
+     */
+    public void record(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Only finite values can be recorded: " + value);
+        }
+        if (value > MIN_INDEXABLE) {
+            bucket(positive, indexOf(value)).increment();
+        } else if (value < -MIN_INDEXABLE) {
+            bucket(negative, indexOf(-value)).increment();
+        } else {
+            zeros.increment();
+        }
+    }
+
+    /**
+     * @return how many values were recorded.
+     */
+    public long getCount() {
+        long count = zeros.sum();
+        for (LongAdder bucket : positive.values()) {
+            count += bucket.sum();
+        }
+        for (LongAdder bucket : negative.values()) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Estimates several quantiles at once, which is cheaper than one at a time. Values recorded meanwhile may or
+     * may not be taken into account.
+     *
+     * @param percentiles The percentiles, e.g. 50 and 99.9.
+     * @return the estimated value of each percentile, or NaN for each if nothing was recorded.
+     */
+    public double[] getQuantiles(double... percentiles) {
+        List<Bucket> buckets = new ArrayList<Bucket>(negative.size() + positive.size() + 1);
+        addBuckets(buckets, negative, -1);
+        buckets.add(new Bucket(0, zeros.sum()));
+        addBuckets(buckets, positive, 1);
+        // from the most negative bucket up to the most positive one
+        Collections.sort(buckets);
+
+        long total = 0;
+        for (Bucket bucket : buckets) {
+            total += bucket.count;
+        }
+        double[] quantiles = new double[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            quantiles[i] = total == 0 ? Double.NaN : quantile(buckets, total, percentiles[i]);
+        }
+        return quantiles;
+    }
+
+    private static double quantile(List<Bucket> buckets, long total, double percentile) {
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (Bucket bucket : buckets) {
+            seen += bucket.count;
+            if (seen >= rank && bucket.count > 0) {
+                return bucket.value;
+            }
+        }
+        return buckets.get(buckets.size() - 1).value;
+    }
+
+    private void addBuckets(List<Bucket> buckets, Map<Integer, LongAdder> side, int sign) {
+        for (Map.Entry<Integer, LongAdder> entry : side.entrySet()) {
+            buckets.add(new Bucket(sign * valueOf(entry.getKey()), entry.getValue().sum()));
+        }
+    }
+
+    private int indexOf(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    // the value of bucket i, which holds (gamma^(i-1), gamma^i], off by the relative accuracy from both bounds
+    private double valueOf(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private static LongAdder bucket(ConcurrentHashMap<Integer, LongAdder> side, int index) {
+        LongAdder bucket = side.get(index);
+        if (bucket == null) {
+            LongAdder newBucket = new LongAdder();
+            bucket = side.putIfAbsent(index, newBucket);
+            if (bucket == null) {
+                bucket = newBucket;
+            }
+        }
+        return bucket;
+    }
+
+    private static final class Bucket implements Comparable<Bucket> {
+        private final double value;
+        private final long count;
+
+        private Bucket(double value, long count) {
+            this.value = value;
+            this.count = count;
+        }
+
+        @Override
+        public int compareTo(Bucket other) {
+            return Double.compare(value, other.value);
+        }
+    }
+}
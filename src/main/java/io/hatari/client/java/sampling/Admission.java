@@ -0,0 +1,33 @@
+package io.hatari.client.java.sampling;
+
+/**
+ * What {@link TrafficRules} decided about an event.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public enum Admission {
+    /**
+     * No sampling policy applies, the event is sent as is.
+     */
+    KEPT,
+    /**
+     * The sampling policy kept the event, which is sent with its sample rate.
+     */
+    SAMPLED_IN,
+    /**
+     * The sampling policy discarded the event.
+     */
+    SAMPLED_OUT,
+    /**
+     * The rate limit discarded the event.
+     */
+    RATE_LIMITED;
+
+    /**
+     * @return whether the event should be sent.
+     */
+    public boolean isAdmitted() {
+        return this == KEPT || this == SAMPLED_IN;
+    }
+}
@@ -0,0 +1,87 @@
+package io.hatari.client.java.sampling;
+
+import io.hatari.client.java.util.Hashing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * SamplingPolicy decides which events of a collection are kept, so that only a representative share of them is
+ * sent.
+ * <p/>
+ * A {@link #probabilistic(double) probabilistic} policy keeps each event at random. A policy
+ * {@link #byProperty(String, double) keyed on a property}, e.g. a user id, keeps either all or none of the events
+ * with the same value, wherever and whenever they are added, so per-user funnels stay intact. Events without that
+ * property are kept at random.
+ * <p/>
+ * Kept events carry the rate in <code>hatari.sample_rate</code>, so counts can be scaled back up.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class SamplingPolicy {
+
+    // rates are compared on 53 bits, the precision of a double
+    private static final double TWO_TO_THE_53 = 9007199254740992.0;
+
+    private final double rate;
+    private final String keyProperty;
+    private final long threshold;
+
+    private SamplingPolicy(double rate, String keyProperty) {
+        if (!(rate > 0 && rate <= 1)) {
+            throw new IllegalArgumentException("A sample rate must be greater than 0 and at most 1: " + rate);
+        }
+        this.rate = rate;
+        this.keyProperty = keyProperty;
+        this.threshold = (long) (rate * TWO_TO_THE_53);
+    }
+
+    /**
+     * @param rate The share of events to keep, greater than 0 and at most 1.
+     * @return a policy keeping each event with the given probability.
+     */
+    public static SamplingPolicy probabilistic(double rate) {
+        return new SamplingPolicy(rate, null);
+    }
+
+    /**
+     * @param keyProperty The root-level property whose value decides whether an event is kept.
+     * @param rate        The share of values to keep, greater than 0 and at most 1.
+     * @return a policy keeping all events of a share of the values of the property.
+     */
+    public static SamplingPolicy byProperty(String keyProperty, double rate) {
+        if (keyProperty == null || keyProperty.length() == 0) {
+            throw new IllegalArgumentException("The sampling key property must not be empty.");
+        }
+        return new SamplingPolicy(rate, keyProperty);
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * @return the property sampling is keyed on, or null if events are kept at random.
+     */
+    public String getKeyProperty() {
+        return keyProperty;
+    }
+
+    /**
+     * @param keyValue The value of the {@link #getKeyProperty()} of the event, or null if it has none.
+     * @return whether to keep the event.
+     */
+    public boolean keep(Object keyValue) {
+        if (rate == 1) {
+            return true;
+        }
+        long position = keyValue == null ? ThreadLocalRandom.current().nextLong() : Hashing.hash(keyValue.toString());
+        return (position >>> 11) < threshold;
+    }
+
+    @Override
+    public String toString() {
+        return keyProperty == null ? "SamplingPolicy{rate=" + rate + "}"
+                : "SamplingPolicy{rate=" + rate + ", keyProperty=" + keyProperty + "}";
+    }
+}
@@ -0,0 +1,76 @@
+package io.hatari.client.java.sampling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket: it lets through a steady number of events per second, plus bursts of up to a given
+ * size after a quiet period.
+ * <p/>
+ * Instead of counting tokens, the bucket remembers the time at which it will be full again (the generic cell rate
+ * algorithm), so taking a token is a single compare-and-set and nothing has to refill it in the background.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class TokenBucket {
+
+    private final double eventsPerSecond;
+    private final int burst;
+    private final long nanosPerEvent;
+    private final long burstNanos;
+    // the time at which the bucket would be full again, on the System.nanoTime() scale
+    private final AtomicLong fullAt;
+
+    /**
+     * @param eventsPerSecond How many events per second are let through on average.
+     * @param burst           How many events may be let through at once after a quiet period, at least 1.
+     */
+    public TokenBucket(double eventsPerSecond, int burst) {
+        if (!(eventsPerSecond > 0)) {
+            throw new IllegalArgumentException("A rate limit must let some events through: " + eventsPerSecond);
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("A rate limit's burst must be at least 1: " + burst);
+        }
+        this.eventsPerSecond = eventsPerSecond;
+        this.burst = burst;
+        this.nanosPerEvent = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / eventsPerSecond));
+        this.burstNanos = nanosPerEvent * burst;
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes a token if there is one.
+     *
+     * @return whether the event may pass.
+     */
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long current = fullAt.get();
+            // a bucket that has been full for a while is just full
+            long start = current - now < 0 ? now : current;
+            long next = start + nanosPerEvent;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    public double getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    @Override
+    public String toString() {
+        return "TokenBucket{eventsPerSecond=" + eventsPerSecond + ", burst=" + burst + "}";
+    }
+}
@@ -0,0 +1,64 @@
+package io.hatari.client.java.sampling;
+
+/**
+ * The {@link SamplingPolicy} and rate limit of one event collection. Instances are immutable; the
+ * {@link TrafficShaper} replaces them when either changes, while the {@link TokenBucket} carries over.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class TrafficRules {
+
+    private final SamplingPolicy samplingPolicy;
+    private final TokenBucket rateLimit;
+
+    TrafficRules(SamplingPolicy samplingPolicy, TokenBucket rateLimit) {
+        this.samplingPolicy = samplingPolicy;
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * @return the sampling policy, or null if every event is kept.
+     */
+    public SamplingPolicy getSamplingPolicy() {
+        return samplingPolicy;
+    }
+
+    /**
+     * @return the rate limit, or null if there is none.
+     */
+    public TokenBucket getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * @return the property the sampling policy is keyed on, or null if there is none.
+     */
+    public String getSampleKeyProperty() {
+        return samplingPolicy == null ? null : samplingPolicy.getKeyProperty();
+    }
+
+    /**
+     * @return the share of events that is kept, 1 if there is no sampling policy.
+     */
+    public double getSampleRate() {
+        return samplingPolicy == null ? 1 : samplingPolicy.getRate();
+    }
+
+    /**
+     * Decides about an event. Events are sampled first, so the rate limit only spends tokens on events that would
+     * be sent.
+     *
+     * @param sampleKeyValue The value of the {@link #getSampleKeyProperty()} of the event, or null.
+     */
+    public Admission admit(Object sampleKeyValue) {
+        boolean sampled = samplingPolicy != null && samplingPolicy.getRate() < 1;
+        if (sampled && !samplingPolicy.keep(sampleKeyValue)) {
+            return Admission.SAMPLED_OUT;
+        }
+        if (rateLimit != null && !rateLimit.tryAcquire()) {
+            return Admission.RATE_LIMITED;
+        }
+        return sampled ? Admission.SAMPLED_IN : Admission.KEPT;
+    }
+}
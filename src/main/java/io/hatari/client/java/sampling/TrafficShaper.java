@@ -0,0 +1,50 @@
+package io.hatari.client.java.sampling;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * TrafficShaper holds the {@link TrafficRules} of each event collection of one
+ * {@link io.hatari.client.java.HatariClient}.
+ * <p/>
+ * Looking up the rules is a single map read, and collections without rules cost nothing else, so the rules are
+ * applied before an event is even validated.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class TrafficShaper {
+
+    private final ConcurrentMap<String, TrafficRules> rules = new ConcurrentHashMap<String, TrafficRules>();
+
+    /**
+     * @return the rules of the collection, or null if all of its events are sent.
+     */
+    public TrafficRules getRules(String eventCollection) {
+        return rules.get(eventCollection);
+    }
+
+    /**
+     * @param samplingPolicy The policy for the collection, or null to keep all of its events.
+     */
+    public synchronized void setSamplingPolicy(String eventCollection, SamplingPolicy samplingPolicy) {
+        TrafficRules current = rules.get(eventCollection);
+        update(eventCollection, samplingPolicy, current == null ? null : current.getRateLimit());
+    }
+
+    /**
+     * @param rateLimit The rate limit for the collection, or null to remove it.
+     */
+    public synchronized void setRateLimit(String eventCollection, TokenBucket rateLimit) {
+        TrafficRules current = rules.get(eventCollection);
+        update(eventCollection, current == null ? null : current.getSamplingPolicy(), rateLimit);
+    }
+
+    private void update(String eventCollection, SamplingPolicy samplingPolicy, TokenBucket rateLimit) {
+        if (samplingPolicy == null && rateLimit == null) {
+            rules.remove(eventCollection);
+        } else {
+            rules.put(eventCollection, new TrafficRules(samplingPolicy, rateLimit));
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package io.hatari.client.java.store;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * SpillLog is an append-only log of serialized events for a single event collection, kept in memory-mapped
+ * segment files inside one directory.
+ * <p/>
+ * Every event gets a sequential index. A segment is named after the index of its first event and holds records
+ * of the form <code>[int length][int crc32][payload]</code>; a zero length marks the end of the written part.
+ * The length is written after the payload, and a record whose checksum doesn't match is treated as the end of
+ * the log, so an event torn by a crash is dropped instead of corrupting the ones before it.
+ * <p/>
+ * A separate, memory-mapped cursor file remembers the index of the oldest event that hasn't been delivered yet.
+ * Segments that only hold delivered events are deleted.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+class SpillLog {
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CURSOR_FILE = "cursor";
+    private static final int HEADER_BYTES = 8;
+
+    private final File directory;
+    private final int segmentBytes;
+    private final List<Segment> segments = new ArrayList<Segment>();
+    private final MappedByteBuffer cursor;
+    private final CRC32 crc = new CRC32();
+
+    // the index of the oldest event which hasn't been delivered, and where to find it
+    private long readIndex;
+    private int readSegment;
+    private int readOffset;
+    // the index the next appended event will get
+    private long writeIndex;
+
+    SpillLog(File directory, int segmentBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create spill directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.cursor = map(new File(directory, CURSOR_FILE), 8);
+        recover();
+    }
+
+    /**
+     * Appends an event to the end of the log.
+     *
+     * @return the index of the event.
+     */
+    synchronized long append(byte[] event) throws IOException {
+        int recordBytes = HEADER_BYTES + event.length;
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.writeOffset + recordBytes > segment.buffer.capacity()) {
+            segment = newSegment(writeIndex, recordBytes);
+        }
+        int offset = segment.writeOffset;
+        crc.reset();
+        crc.update(event, 0, event.length);
+        segment.buffer.position(offset + HEADER_BYTES);
+        segment.buffer.put(event);
+        segment.buffer.putInt(offset + 4, (int) crc.getValue());
+        // the length commits the record, so it goes last
+        segment.buffer.putInt(offset, event.length);
+        segment.writeOffset += recordBytes;
+        segment.recordCount++;
+        return writeIndex++;
+    }
+
+    /**
+     * Reads the oldest undelivered events, without removing them from the log.
+     *
+     * @param maxEvents The most events to return.
+     * @param maxBytes  Stop once the returned events hold at least this many bytes.
+     * @return the events, starting at {@link #getReadIndex()}.
+     */
+    synchronized List<byte[]> read(int maxEvents, int maxBytes) {
+        List<byte[]> events = new ArrayList<byte[]>();
+        int segmentPosition = readSegment;
+        int offset = readOffset;
+        int bytes = 0;
+        long index = readIndex;
+        while (index < writeIndex && events.size() < maxEvents && bytes < maxBytes) {
+            Segment segment = segments.get(segmentPosition);
+            if (offset >= segment.writeOffset) {
+                segmentPosition++;
+                offset = 0;
+                continue;
+            }
+            int length = segment.buffer.getInt(offset);
+            byte[] event = new byte[length];
+            segment.buffer.position(offset + HEADER_BYTES);
+            segment.buffer.get(event);
+            events.add(event);
+            bytes += length;
+            offset += HEADER_BYTES + length;
+            index++;
+        }
+        return events;
+    }
+
+    /**
+     * Marks every event before the given index as delivered, deleting segments that are no longer needed.
+     */
+    synchronized void commit(long index) {
+        index = Math.min(index, writeIndex);
+        while (readIndex < index) {
+            Segment segment = segments.get(readSegment);
+            if (readOffset >= segment.writeOffset) {
+                readSegment++;
+                readOffset = 0;
+                continue;
+            }
+            readOffset += HEADER_BYTES + segment.buffer.getInt(readOffset);
+            readIndex++;
+        }
+        cursor.putLong(0, readIndex);
+        // every segment before the one we read from has been delivered
+        while (readSegment > 0) {
+            Segment obsolete = segments.remove(0);
+            readSegment--;
+            if (!obsolete.file.delete()) {
+                obsolete.file.deleteOnExit();
+            }
+        }
+    }
+
+    synchronized long getReadIndex() {
+        return readIndex;
+    }
+
+    synchronized long getWriteIndex() {
+        return writeIndex;
+    }
+
+    synchronized long size() {
+        return writeIndex - readIndex;
+    }
+
+    synchronized void force() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+        cursor.force();
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.valueOf(firstIndexOf(a)).compareTo(firstIndexOf(b));
+            }
+        });
+
+        for (File file : files) {
+            long firstIndex = firstIndexOf(file);
+            if (!segments.isEmpty() && firstIndex != writeIndex) {
+                // a gap means the rest of the log can't be trusted
+                break;
+            }
+            Segment segment = new Segment(file, firstIndex, map(file, (int) file.length()));
+            scan(segment);
+            segments.add(segment);
+            writeIndex = firstIndex + segment.recordCount;
+        }
+
+        long savedReadIndex = cursor.getLong(0);
+        readIndex = segments.isEmpty() ? savedReadIndex : segments.get(0).firstIndex;
+        writeIndex = Math.max(writeIndex, readIndex);
+        readSegment = 0;
+        readOffset = 0;
+        commit(savedReadIndex);
+    }
+
+    private void scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_BYTES + length > buffer.capacity()) {
+                break;
+            }
+            byte[] event = new byte[length];
+            buffer.position(offset + HEADER_BYTES);
+            buffer.get(event);
+            crc.reset();
+            crc.update(event, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            offset += HEADER_BYTES + length;
+            segment.recordCount++;
+        }
+        segment.writeOffset = offset;
+        // forget anything after the last good record, so new appends can't be confused with it
+        if (offset + 4 <= buffer.capacity()) {
+            buffer.putInt(offset, 0);
+        }
+    }
+
+    private Segment newSegment(long firstIndex, int recordBytes) throws IOException {
+        File file = new File(directory, String.format("%020d%s", firstIndex, SEGMENT_SUFFIX));
+        // leave room for the terminating zero length
+        int size = Math.max(segmentBytes, recordBytes + 4);
+        Segment segment = new Segment(file, firstIndex, map(file, size));
+        segments.add(segment);
+        return segment;
+    }
+
+    private static long firstIndexOf(File segmentFile) {
+        String name = segmentFile.getName();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            // the mapping stays valid after the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, raf.length()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static class Segment {
+        private final File file;
+        private final long firstIndex;
+        private final MappedByteBuffer buffer;
+        private int writeOffset;
+        private int recordCount;
+
+        private Segment(File file, long firstIndex, MappedByteBuffer buffer) {
+            this.file = file;
+            this.firstIndex = firstIndex;
+            this.buffer = buffer;
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package io.hatari.client.java.store;
+
+import io.hatari.client.java.HatariClient;
+import io.hatari.client.java.exceptions.EventStoreException;
+import io.hatari.client.java.exceptions.QueueFullException;
+import io.hatari.client.java.io.BatchCallback;
+import io.hatari.client.java.io.HatariBatchRequestRunnable;
+import io.hatari.client.java.io.HatariResponse;
+import io.hatari.client.java.io.ResponseClassifier;
+import io.hatari.client.java.io.UploadQueue;
+import io.hatari.client.java.metrics.EventOutcome;
+import io.hatari.client.java.util.GeneralUtil;
+import io.hatari.client.java.util.HatariConfig;
+import io.hatari.client.java.util.HatariConstants;
+import io.hatari.client.java.util.HatariLogging;
+import io.hatari.client.java.util.UploadCallbacks;
+import io.hatari.client.java.util.UploadEventCallback;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SpillStore keeps the events of one {@link HatariClient} on the local file system until they were delivered, so
+ * they survive outages, crashes and restarts without being held on the heap.
+ * <p/>
+ * Each event collection gets its own {@link SpillLog} in a directory below
+ * <code>root/&lt;project&gt;/</code>. A background task drains every log in order, one batch at a time, and
+ * only moves past a batch once the API answered for each of its events; if the batch fails as a whole it is
+ * sent again on a later pass, unless the API rejected it in a way retrying can't fix, e.g. with a 400 or 401, in
+ * which case its events are reported as failed and removed. Logs found on disk when the store is opened are
+ * drained the same way.
+ * <p/>
+ * A collection holds at most {@link HatariConstants#MAX_EVENTS_PER_COLLECTION} undelivered events. When it's
+ * full, the oldest {@link HatariConstants#NUMBER_EVENTS_TO_FORGET} events are aged out to make room. Events of a
+ * batch that was sent, or is to be sent again, are never aged out; the ones after them are, and are removed from
+ * the log once the batch was settled.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class SpillStore {
+
+    private static final String COLLECTION_FILE = "collection";
+    private static final long FLUSH_POLL_MILLIS = 10;
+
+    private static final ScheduledExecutorService DRAIN_TIMER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "hatari-spill-drain");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final HatariClient hatariClient;
+    private final File projectDirectory;
+    private final UploadQueue uploadQueue;
+    private final ConcurrentMap<String, CollectionLog> logs = new ConcurrentHashMap<String, CollectionLog>();
+    private final ScheduledFuture<?> drainTask;
+
+    public SpillStore(HatariClient hatariClient, File rootDirectory, UploadQueue uploadQueue)
+            throws EventStoreException {
+        this.hatariClient = hatariClient;
+        this.projectDirectory = new File(rootDirectory, hash(hatariClient.getProjectKey()));
+        this.uploadQueue = uploadQueue;
+        replay();
+        this.drainTask = DRAIN_TIMER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, 0, HatariConfig.SPILL_DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appends a serialized event to the log of its collection, aging out the oldest events if the collection is
+     * full.
+     *
+     * @param eventCollection The collection the event belongs to.
+     * @param event           The event, already serialized to JSON.
+     * @param callback        The callback to notify once the event was delivered, may be null.
+     * @throws EventStoreException if the event couldn't be written to disk.
+     */
+    public void append(String eventCollection, byte[] event, UploadEventCallback callback)
+            throws EventStoreException {
+        CollectionLog collectionLog = logFor(eventCollection);
+        SpillLog log = collectionLog.log;
+        synchronized (log) {
+            if (collectionLog.undeliveredCount() >= HatariConstants.MAX_EVENTS_PER_COLLECTION) {
+                ageOut(collectionLog);
+            }
+            try {
+                long index = log.append(event);
+                if (callback != null) {
+                    collectionLog.callbacks.put(index, callback);
+                }
+            } catch (IOException e) {
+                throw new EventStoreException("The event could not be written to disk: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return how many events are waiting on disk to be delivered, across all collections.
+     */
+    public long getPendingEventCount() {
+        long pending = 0;
+        for (CollectionLog collectionLog : logs.values()) {
+            synchronized (collectionLog.log) {
+                pending += collectionLog.undeliveredCount();
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Drains every collection right away instead of on the next pass, until nothing is left on disk.
+     *
+     * @param deadlineNanos When to give up, as given by {@link System#nanoTime()}.
+     * @return true if every stored event was delivered or failed for good, false if the deadline passed first.
+     */
+    public boolean flush(long deadlineNanos) {
+        while (getPendingEventCount() > 0) {
+            if (deadlineNanos - System.nanoTime() <= 0) {
+                return false;
+            }
+            // collections whose batch is still in flight are skipped and picked up on the next round
+            drain();
+            try {
+                Thread.sleep(FLUSH_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops draining and writes everything to disk. Undelivered events stay there until a store is opened on the
+     * same directory again.
+     */
+    public void close() {
+        drainTask.cancel(false);
+        for (CollectionLog collectionLog : logs.values()) {
+            collectionLog.log.force();
+        }
+    }
+
+    // called with the log's lock held
+    private void ageOut(CollectionLog collectionLog) {
+        SpillLog log = collectionLog.log;
+        long readIndex = log.getReadIndex();
+        // the events of the last batch read may be in flight, so the oldest ones after them go
+        long from = Math.max(readIndex, Math.max(collectionLog.heldUntil, collectionLog.agedOutUntil));
+        long to = Math.min(from + HatariConstants.NUMBER_EVENTS_TO_FORGET, log.getWriteIndex());
+        if (from == readIndex) {
+            log.commit(to);
+        } else {
+            // they can only leave the log behind the batch, see CollectionLog.settle
+            collectionLog.agedOutUntil = to;
+        }
+        hatariClient.getMetrics().recordEvents(collectionLog.eventCollection, EventOutcome.DROPPED, to - from);
+        HatariLogging.log("Collection %s is full, aged out %d events.", collectionLog.eventCollection, to - from);
+        for (long index = from; index < to; index++) {
+            UploadCallbacks.notify(collectionLog.callbacks.remove(index), 0, false,
+                    "The event was aged out of the local store before it could be delivered.");
+        }
+    }
+
+    private void drain() {
+        for (CollectionLog collectionLog : logs.values()) {
+            try {
+                drain(collectionLog);
+            } catch (RuntimeException e) {
+                collectionLog.inFlight.set(false);
+                HatariLogging.log(GeneralUtil.getStackTraceFromThrowable(e));
+            }
+        }
+    }
+
+    private void drain(CollectionLog collectionLog) {
+        // one batch per collection at a time keeps delivery in order
+        if (!collectionLog.inFlight.compareAndSet(false, true)) {
+            return;
+        }
+        SpillLog log = collectionLog.log;
+        long firstIndex;
+        List<byte[]> events;
+        synchronized (log) {
+            firstIndex = log.getReadIndex();
+            if (collectionLog.heldUntil > firstIndex) {
+                // the last batch wasn't settled; send exactly its events again, the ones after may be aged out
+                events = log.read((int) (collectionLog.heldUntil - firstIndex), Integer.MAX_VALUE);
+            } else {
+                events = log.read(HatariConfig.BATCH_MAX_EVENTS, HatariConfig.BATCH_MAX_BYTES);
+                collectionLog.heldUntil = firstIndex + events.size();
+            }
+        }
+        if (events.isEmpty()) {
+            collectionLog.inFlight.set(false);
+            return;
+        }
+        try {
+            uploadQueue.enqueue(new HatariBatchRequestRunnable(hatariClient, uploadQueue,
+                    collectionLog.eventCollection, events, new DrainCallback(collectionLog, firstIndex, events.size())));
+        } catch (QueueFullException e) {
+            // the events are safe on disk, try again on the next pass
+            collectionLog.inFlight.set(false);
+        }
+    }
+
+    private CollectionLog logFor(String eventCollection) throws EventStoreException {
+        CollectionLog collectionLog = logs.get(eventCollection);
+        if (collectionLog != null) {
+            return collectionLog;
+        }
+        synchronized (logs) {
+            collectionLog = logs.get(eventCollection);
+            if (collectionLog == null) {
+                File directory = new File(projectDirectory, hash(eventCollection));
+                try {
+                    collectionLog = new CollectionLog(eventCollection, new SpillLog(directory,
+                            HatariConfig.SPILL_SEGMENT_BYTES));
+                    writeCollectionName(directory, eventCollection);
+                } catch (IOException e) {
+                    throw new EventStoreException("Could not open the local store for collection " + eventCollection
+                            + ": " + e.getMessage());
+                }
+                logs.put(eventCollection, collectionLog);
+            }
+            return collectionLog;
+        }
+    }
+
+    private void replay() throws EventStoreException {
+        File[] directories = projectDirectory.listFiles();
+        if (directories == null) {
+            return;
+        }
+        for (File directory : directories) {
+            File collectionFile = new File(directory, COLLECTION_FILE);
+            if (!collectionFile.isFile()) {
+                continue;
+            }
+            try {
+                String eventCollection = readCollectionName(collectionFile);
+                CollectionLog collectionLog = logFor(eventCollection);
+                HatariLogging.log("Replaying %d stored events for collection %s.",
+                        collectionLog.log.size(), eventCollection);
+            } catch (IOException e) {
+                HatariLogging.log("Skipping unreadable local store %s: %s", directory, e.getMessage());
+            }
+        }
+    }
+
+    private static void writeCollectionName(File directory, String eventCollection) throws IOException {
+        File collectionFile = new File(directory, COLLECTION_FILE);
+        if (collectionFile.isFile()) {
+            return;
+        }
+        OutputStream out = new FileOutputStream(collectionFile);
+        try {
+            out.write(eventCollection.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String readCollectionName(File collectionFile) throws IOException {
+        InputStream in = new FileInputStream(collectionFile);
+        try {
+            ByteArrayOutputStream name = new ByteArrayOutputStream();
+            byte[] buffer = new byte[512];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                name.write(buffer, 0, read);
+            }
+            return name.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    // collection names may hold any character, so directories are named after their hash instead
+    private static String hash(String name) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(name.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 10; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CollectionLog {
+        private final String eventCollection;
+        private final SpillLog log;
+        private final ConcurrentMap<Long, UploadEventCallback> callbacks =
+                new ConcurrentHashMap<Long, UploadEventCallback>();
+        private final AtomicBoolean inFlight = new AtomicBoolean();
+        // guarded by the log: the end of the last batch read, and of the events aged out behind it
+        private long heldUntil;
+        private long agedOutUntil;
+
+        private CollectionLog(String eventCollection, SpillLog log) {
+            this.eventCollection = eventCollection;
+            this.log = log;
+        }
+
+        /**
+         * @return how many events are waiting to be delivered, not counting aged out ones that are still in the log.
+         */
+        private long undeliveredCount() {
+            long agedOut = agedOutUntil - Math.max(log.getReadIndex(), heldUntil);
+            return log.size() - Math.max(0, agedOut);
+        }
+
+        /**
+         * Removes a batch that won't be sent again from the log, along with the events aged out behind it.
+         */
+        private void settle(long batchEnd) {
+            synchronized (log) {
+                log.commit(Math.max(batchEnd, agedOutUntil));
+            }
+            inFlight.set(false);
+        }
+    }
+
+    private static class DrainCallback implements BatchCallback {
+        private final CollectionLog collectionLog;
+        private final long firstIndex;
+        private final int eventCount;
+        private int settled;
+
+        private DrainCallback(CollectionLog collectionLog, long firstIndex, int eventCount) {
+            this.collectionLog = collectionLog;
+            this.firstIndex = firstIndex;
+            this.eventCount = eventCount;
+        }
+
+        @Override
+        public void onEventResult(int index, int statusCode, boolean success, String error) {
+            // the API answered for this event, so there's no point in sending it again
+            UploadCallbacks.notify(collectionLog.callbacks.remove(firstIndex + index), statusCode, success, error);
+            if (++settled == eventCount) {
+                collectionLog.settle(firstIndex + eventCount);
+            }
+        }
+
+        @Override
+        public void onBatchError(int statusCode, String reason) {
+            // without a response, e.g. after a network error, the failure is retryable
+            if (statusCode != 0 && !ResponseClassifier.isRetryable(new HatariResponse(statusCode, reason, null))) {
+                // sending the batch again can't succeed, and would hold up the rest of the log forever
+                HatariLogging.log("Stored events for collection %s were rejected with %d, giving up on them.",
+                        collectionLog.eventCollection, statusCode);
+                for (int i = 0; i < eventCount; i++) {
+                    UploadCallbacks.notify(collectionLog.callbacks.remove(firstIndex + i), statusCode, false,
+                            reason);
+                }
+                collectionLog.settle(firstIndex + eventCount);
+                return;
+            }
+            // keep the events and send them again on the next pass
+            HatariLogging.log("Delivering stored events for collection %s failed, will retry.",
+                    collectionLog.eventCollection);
+            collectionLog.inFlight.set(false);
+        }
+
+        @Override
+        public void onBatchDropped(String reason) {
+            // nothing is lost, the events are still on disk
+            HatariLogging.log("Stored events for collection %s were not sent, will retry: %s",
+                    collectionLog.eventCollection, reason);
+            collectionLog.inFlight.set(false);
+        }
+    }
+}
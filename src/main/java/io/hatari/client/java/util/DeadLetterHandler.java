@@ -0,0 +1,28 @@
+package io.hatari.client.java.util;
+
+import io.hatari.client.java.exceptions.HatariException;
+
+import java.util.Map;
+
+/**
+ * Hears about events the {@link io.hatari.client.java.HatariClient}'s event pipeline took but couldn't queue for
+ * upload, e.g. because they failed validation, so they can be logged, fixed or stored elsewhere. With the pipeline,
+ * <code>addEvent</code> has returned long before that is known.
+ * <p/>
+ * The handler is called on a pipeline thread, after the event's own callback, and should return quickly.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public interface DeadLetterHandler {
+
+    /**
+     * @param eventCollection  The collection the event was added to.
+     * @param event            The event, as it was added.
+     * @param hatariProperties The properties the caller set in the <code>hatari</code> block, may be null.
+     * @param cause            Why the event couldn't be queued, the same exception <code>addEvent</code> would
+     *                         have thrown without the pipeline.
+     */
+    void onDeadLetter(String eventCollection, Map<String, Object> event, Map<String, Object> hatariProperties,
+                      HatariException cause);
+}
@@ -0,0 +1,53 @@
+package io.hatari.client.java.util;
+
+/**
+ * 64-bit hashes for deciding about events on the client, e.g. for sampling and duplicate detection. They are
+ * stable across JVMs and restarts, unlike {@link Object#hashCode()} of most types.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class Hashing {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashing() {
+    }
+
+    /**
+     * FNV-1a over the characters, finished with {@link #mix(long)} so similar strings spread evenly.
+     */
+    public static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * FNV-1a over a range of bytes, finished with {@link #mix(long)}.
+     */
+    public static long hash(byte[] value, int offset, int length) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= value[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The murmur3 finalizer: every bit of the input affects every bit of the output.
+     */
+    public static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,5 +1,7 @@
 package io.hatari.client.java.util;
 
+import io.hatari.client.java.io.WireFormat;
+
 /**
  * HatariConfig
  *
@@ -8,6 +10,158 @@ package io.hatari.client.java.util;
  */
 public class HatariConfig {
 
-    public static int NUM_THREADS_FOR_HTTP_REQUESTS = 4;
+    // how many upload threads there may be at most, across all clients; they are started on demand, see
+    // io.hatari.client.java.io.AdaptiveConcurrencyLimit for how many each client actually uses
+    public static int NUM_THREADS_FOR_HTTP_REQUESTS = 64;
+    // how long an upload thread may sit idle before it is stopped
+    public static long UPLOAD_THREAD_KEEP_ALIVE_MILLIS = 60000;
+
+    // how long to wait for a connection to the Hatari API
+    public static int CONNECT_TIMEOUT_MILLIS = 10000;
+    // how long to wait for the Hatari API to answer a request
+    public static int READ_TIMEOUT_MILLIS = 30000;
+
+    // upload queues, see io.hatari.client.java.io.UploadQueue and io.hatari.client.java.io.UploadScheduler
+
+    // how many uploads of one client may wait for an upload thread before the overflow policy kicks in
+    public static int UPLOAD_QUEUE_CAPACITY = 10000;
+    // what to do with an upload when the queue is full
+    public static OverflowPolicy OVERFLOW_POLICY = OverflowPolicy.BLOCK;
+    // how long OverflowPolicy.BLOCK waits for room before failing
+    public static long OVERFLOW_BLOCK_TIMEOUT_MILLIS = 1000;
+    // how many uploads a client may start on its turn, relative to the other clients
+    public static int UPLOAD_WEIGHT = 1;
+    // how long HatariClient.close() waits for pending events to be delivered
+    public static long CLOSE_TIMEOUT_MILLIS = 10000;
+
+    // event pipeline, see HatariClient.setPipelineEnabled(boolean)
+
+    // how many added events may wait for the pipeline of a client before the overflow policy kicks in
+    public static int PIPELINE_CAPACITY = 65536;
+    // how many threads the pipeline of each client runs
+    public static int PIPELINE_THREADS = 2;
+    // the longest an idle pipeline thread sleeps before it looks for events again
+    public static long PIPELINE_MAX_PARK_MICROS = 1000;
+
+    // pending events, see io.hatari.client.java.io.SlabPool
+
+    // how much direct memory each client may keep serialized events waiting for their upload in, before the
+    // overflow policy kicks in, so one client with a backlog can't hold up the events of the others; read when a
+    // client is created
+    public static long PENDING_EVENT_BUFFER_BYTES = 64L * 1024 * 1024;
+    // how big each slab of that memory is; bigger events wait on the heap. A slab is only reused once every event
+    // in it is done with, so a single event that is retried, or waits behind a slow upload, pins its whole slab:
+    // smaller slabs waste less of the budget that way, bigger ones take bigger events
+    public static int PENDING_EVENT_SLAB_BYTES = 1024 * 1024;
+
+    // adaptive concurrency, see io.hatari.client.java.io.AdaptiveConcurrencyLimit
+
+    // how many uploads of one client may run at once to begin with
+    public static int CONCURRENCY_INITIAL_LIMIT = 4;
+    // the fewest uploads of one client the limit allows, however badly the API is doing
+    public static int CONCURRENCY_MIN_LIMIT = 1;
+    // the most uploads of one client the limit allows, however well the API is doing
+    public static int CONCURRENCY_MAX_LIMIT = 64;
+    // how many times slower than the fastest recent round trip a request may be before the limit is cut
+    public static double CONCURRENCY_LATENCY_TOLERANCE = 2.0;
+    // what the limit is multiplied with when the API is overloaded
+    public static double CONCURRENCY_BACKOFF_RATIO = 0.9;
+
+    // retries, see io.hatari.client.java.io.RetryPolicy
+
+    // how often an upload is tried in total before its callback is told it failed
+    public static int RETRY_MAX_ATTEMPTS = 5;
+    // the delay before the first retry, doubled for every further retry
+    public static long RETRY_INITIAL_DELAY_MILLIS = 500;
+    // the longest delay between two attempts
+    public static long RETRY_MAX_DELAY_MILLIS = 60000;
+
+    // circuit breaker, see io.hatari.client.java.io.CircuitBreaker
+
+    // how many consecutive failures open the circuit breaker
+    public static int CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+    // how long an open circuit breaker refuses requests before trying one again
+    public static long CIRCUIT_BREAKER_OPEN_MILLIS = 30000;
+
+    // endpoints, see HatariClient.setEndpoints(String...)
+
+    // the base URLs new clients send requests to
+    public static String[] ENDPOINTS = {HatariConstants.SERVER_ADDRESS};
+    // how many consecutive failures take an endpoint out of rotation
+    public static int ENDPOINT_FAILURE_THRESHOLD = 3;
+    // how long an endpoint stays out of rotation before it is tried again
+    public static long ENDPOINT_EJECT_MILLIS = 10000;
+    // how quickly the latency estimate of an endpoint forgets old round trips
+    public static long ENDPOINT_LATENCY_DECAY_MILLIS = 10000;
+
+    // hedging, see HatariClient.setHedgingEnabled(String, boolean)
+
+    // which percentile of recent round trips a hedged request waits for before it is sent again
+    public static double HEDGE_PERCENTILE = 95;
+    // the shortest a hedged request waits before it is sent again
+    public static long HEDGE_MIN_DELAY_MILLIS = 5;
+    // how many hedges may be sent per hedged request
+    public static double HEDGE_BUDGET_RATIO = 0.1;
+
+    // compression, see HatariClient.setCompressionEnabled(boolean)
+
+    // request bodies smaller than this are sent uncompressed
+    public static int COMPRESSION_THRESHOLD_BYTES = 1024;
+    // the zlib compression level, from 1 (fastest) to 9 (smallest)
+    public static int COMPRESSION_LEVEL = 6;
+    // how many idle deflaters, of a few hundred KB of native memory each, are kept for the next compressed request;
+    // read once, when the first request is compressed
+    public static int COMPRESSION_POOL_SIZE = 16;
+
+    // wire format, see HatariClient.setWireFormat(io.hatari.client.java.io.WireFormat)
+
+    // what new clients encode request bodies in
+    public static WireFormat WIRE_FORMAT = WireFormat.JSON;
+
+    // batching, see HatariClient.setBatchingEnabled(boolean)
+
+    // how many events a batch may hold before it is sent
+    public static int BATCH_MAX_EVENTS = 500;
+    // how many bytes of serialized events a batch may hold before it is sent
+    public static int BATCH_MAX_BYTES = 512 * 1024;
+    // how long the first event of a batch may wait for company before the batch is sent anyway
+    public static long BATCH_LINGER_MILLIS = 1000;
+
+    // bulk adds, see HatariClient.addEvents(String, Iterable)
+
+    // how many events are read, validated and handed to the upload queue at a time
+    public static int BULK_CHUNK_EVENTS = 4096;
+    // chunks with at least this many events are validated in parallel, on the fork-join common pool
+    public static int BULK_PARALLEL_THRESHOLD = 512;
+    // how many batches of one bulk add may wait for an answer before reading the input waits too
+    public static int BULK_MAX_PENDING_BATCHES = 16;
+
+    // aggregation, see HatariClient.count(String, java.util.Map) and HatariClient.record(String, java.util.Map, double)
+
+    // how long counts and values are rolled up before each series is sent as one summary event
+    public static long AGGREGATION_WINDOW_MILLIS = 10000;
+    // how many series, distinct collections and dimensions, a window may hold before values of new ones are dropped
+    public static int AGGREGATION_MAX_SERIES = 10000;
+    // how far the percentiles of a summary may be off, relative to their value
+    public static double AGGREGATION_RELATIVE_ACCURACY = 0.01;
+    // the percentiles of recorded values each summary carries
+    public static double[] AGGREGATION_PERCENTILES = {50, 90, 99};
+
+    // validation, see io.hatari.client.java.validation.EventValidator
+
+    // how many distinct property names each client remembers as valid, so they aren't checked again
+    public static int VALIDATION_NAME_CACHE_SIZE = 4096;
+
+    // idempotency ids, see io.hatari.client.java.dedup.EventIds
+
+    // the node part of every id, from 0 to 2^20 - 1, or -1 to pick one at random when the first id is handed out
+    public static long NODE_ID = -1;
+
+    // local store, see HatariClient.setSpillDirectory(java.io.File)
+
+    // how big each memory-mapped segment file of a collection's log is
+    public static int SPILL_SEGMENT_BYTES = 8 * 1024 * 1024;
+    // how often stored events are picked up for delivery
+    public static long SPILL_DRAIN_INTERVAL_MILLIS = 250;
 
 }
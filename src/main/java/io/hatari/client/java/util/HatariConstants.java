@@ -8,6 +8,7 @@ package io.hatari.client.java.util;
  */
 public class HatariConstants {
 
+    // the default endpoint, see HatariConfig.ENDPOINTS
     public static final String SERVER_ADDRESS = "https://api.hatario.io";
     public static final String API_VERSION = "1";
 
@@ -17,10 +18,18 @@ public class HatariConstants {
     public static final String DESCRIPTION_PARAM = "description";
     public static final String SUCCESS_PARAM = "success";
     public static final String ERROR_PARAM = "error";
+    public static final String SAMPLE_RATE_PARAM = "sample_rate";
+    public static final String ID_PARAM = "id";
     public static final String INVALID_COLLECTION_NAME_ERROR = "InvalidProjectError";
     public static final String INVALID_PROPERTY_NAME_ERROR = "InvalidPropertyNameError";
     public static final String INVALID_PROPERTY_VALUE_ERROR = "InvalidPropertyValueError";
 
+    // client-side errors, reported to callbacks in the same format as the API's
+
+    public static final String SAMPLED_OUT_ERROR = "SampledOutError";
+    public static final String RATE_LIMITED_ERROR = "RateLimitedError";
+    public static final String DUPLICATE_EVENT_ERROR = "DuplicateEventError";
+
     // Hatari constants related to how much data we'll cache on the device before aging it out
 
     // how many events can be stored for a single collection before aging them out
@@ -23,6 +23,20 @@ public class HatariLogging {
         LOGGER.log(Level.FINER, msg);
     }
 
+    /**
+     * Logs a message built with {@link String#format(String, Object...)}, but only formats it if logging is
+     * enabled. Guard calls on hot paths with {@link #isLoggingEnabled()} too, to save the varargs array.
+     */
+    public static void log(String format, Object... args) {
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.log(Level.FINER, String.format(format, args));
+        }
+    }
+
+    public static boolean isLoggingEnabled() {
+        return LOGGER.isLoggable(Level.FINER);
+    }
+
     /**
      * Call this to enable logging.
      */
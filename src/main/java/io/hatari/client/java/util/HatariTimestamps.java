@@ -0,0 +1,94 @@
+package io.hatari.client.java.util;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Formats epoch milliseconds the way the SDK's {@link com.fasterxml.jackson.databind.ObjectMapper} formats a
+ * {@link Calendar}, e.g. <code>2014-01-31T23:59:59.999+0000</code>, without creating a {@link Calendar} or a
+ * {@link java.text.DateFormat}.
+ * <p/>
+ * Only the date part needs calendar arithmetic, and it only changes once a day, so it is cached; the time of day
+ * is plain division.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class HatariTimestamps {
+
+    /**
+     * How many characters a formatted timestamp has.
+     */
+    public static final int LENGTH = 28;
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private static volatile Day cachedDay = new Day(0);
+
+    private HatariTimestamps() {
+    }
+
+    /**
+     * Writes a timestamp into a buffer of at least {@link #LENGTH} characters.
+     *
+     * @param epochMillis The timestamp, as returned by {@link System#currentTimeMillis()}.
+     * @param buffer      Where to write it, starting at index 0.
+     * @return the number of characters written, always {@link #LENGTH}.
+     */
+    public static int format(long epochMillis, char[] buffer) {
+        long dayStart = Math.floorDiv(epochMillis, MILLIS_PER_DAY) * MILLIS_PER_DAY;
+        Day day = cachedDay;
+        if (day.startMillis != dayStart) {
+            day = new Day(dayStart);
+            cachedDay = day;
+        }
+        System.arraycopy(day.prefix, 0, buffer, 0, day.prefix.length);
+
+        int millisOfDay = (int) (epochMillis - dayStart);
+        int i = day.prefix.length;
+        i = writeTwoDigits(millisOfDay / 3600000, buffer, i);
+        buffer[i++] = ':';
+        i = writeTwoDigits(millisOfDay / 60000 % 60, buffer, i);
+        buffer[i++] = ':';
+        i = writeTwoDigits(millisOfDay / 1000 % 60, buffer, i);
+        buffer[i++] = '.';
+        int millis = millisOfDay % 1000;
+        buffer[i++] = (char) ('0' + millis / 100);
+        buffer[i++] = (char) ('0' + millis / 10 % 10);
+        buffer[i++] = (char) ('0' + millis % 10);
+        buffer[i++] = '+';
+        buffer[i++] = '0';
+        buffer[i++] = '0';
+        buffer[i++] = '0';
+        buffer[i++] = '0';
+        return i;
+    }
+
+    /**
+     * @return the timestamp formatted as a new String.
+     */
+    public static String format(long epochMillis) {
+        char[] buffer = new char[LENGTH];
+        return new String(buffer, 0, format(epochMillis, buffer));
+    }
+
+    private static int writeTwoDigits(int value, char[] buffer, int i) {
+        buffer[i] = (char) ('0' + value / 10);
+        buffer[i + 1] = (char) ('0' + value % 10);
+        return i + 2;
+    }
+
+    private static class Day {
+        private final long startMillis;
+        private final char[] prefix;
+
+        private Day(long startMillis) {
+            Calendar calendar = Calendar.getInstance(UTC);
+            calendar.setTimeInMillis(startMillis);
+            this.startMillis = startMillis;
+            this.prefix = String.format("%04d-%02d-%02dT", calendar.get(Calendar.YEAR),
+                    calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH)).toCharArray();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package io.hatari.client.java.util;
+
+/**
+ * What the {@link io.hatari.client.java.HatariClient} does with a new upload when its upload queue is full.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public enum OverflowPolicy {
+    /**
+     * Wait up to {@link HatariConfig#OVERFLOW_BLOCK_TIMEOUT_MILLIS} for room, then fail with a
+     * {@link io.hatari.client.java.exceptions.QueueFullException}.
+     */
+    BLOCK,
+    /**
+     * Drop the new upload and report it to its callback.
+     */
+    DROP_NEWEST,
+    /**
+     * Drop the oldest queued upload to make room and report it to its callback.
+     */
+    DROP_OLDEST,
+    /**
+     * Fail right away with a {@link io.hatari.client.java.exceptions.QueueFullException}.
+     */
+    FAIL
+}
@@ -0,0 +1,32 @@
+package io.hatari.client.java.util;
+
+/**
+ * Notifies {@link UploadEventCallback}s, passing the status code on to those that want it.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class UploadCallbacks {
+
+    private UploadCallbacks() {
+    }
+
+    /**
+     * @param callback     The callback to notify, may be null.
+     * @param statusCode   The HTTP status code of the last response, or 0 if there was none.
+     * @param success      Whether the API accepted the event.
+     * @param responseBody The body of the last response, or a description of the failure.
+     */
+    public static void notify(UploadEventCallback callback, int statusCode, boolean success, String responseBody) {
+        if (callback == null) {
+            return;
+        }
+        if (callback instanceof UploadResponseCallback) {
+            ((UploadResponseCallback) callback).onResponse(statusCode, success, responseBody);
+        } else if (success) {
+            callback.onSuccess();
+        } else {
+            callback.onError(responseBody);
+        }
+    }
+}
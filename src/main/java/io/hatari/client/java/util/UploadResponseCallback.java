@@ -0,0 +1,21 @@
+package io.hatari.client.java.util;
+
+/**
+ * An {@link UploadEventCallback} that also wants the HTTP status code. If a callback implements this interface,
+ * {@link #onResponse(int, boolean, String)} is invoked instead of {@link #onSuccess()} or
+ * {@link #onError(String)}.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public interface UploadResponseCallback extends UploadEventCallback {
+
+    /**
+     * Invoked once the outcome of the upload is known.
+     *
+     * @param statusCode   The HTTP status code of the last response, or 0 if there was none.
+     * @param success      Whether the API accepted the event.
+     * @param responseBody The body of the last response, or a description of the failure if there was none.
+     */
+    void onResponse(int statusCode, boolean success, String responseBody);
+}
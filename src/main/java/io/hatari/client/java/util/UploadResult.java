@@ -0,0 +1,68 @@
+package io.hatari.client.java.util;
+
+/**
+ * The outcome of uploading a single event, as returned by
+ * {@link io.hatari.client.java.HatariClient#addEventAsync(String, java.util.Map)}.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class UploadResult {
+
+    private final boolean success;
+    private final int statusCode;
+    private final long latencyNanos;
+    private final String errorName;
+    private final String responseBody;
+
+    public UploadResult(boolean success, int statusCode, long latencyNanos, String errorName, String responseBody) {
+        this.success = success;
+        this.statusCode = statusCode;
+        this.latencyNanos = latencyNanos;
+        this.errorName = errorName;
+        this.responseBody = responseBody;
+    }
+
+    /**
+     * @return whether the Hatari API accepted the event.
+     */
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * @return the HTTP status code of the last response, or 0 if the event failed without a response, e.g.
+     * because of a network error or because it was dropped.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the time from adding the event until its outcome was known, in nanoseconds.
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @return the name of the error the API reported, e.g.
+     * {@link HatariConstants#INVALID_PROPERTY_NAME_ERROR}, or null if it reported none.
+     */
+    public String getErrorName() {
+        return errorName;
+    }
+
+    /**
+     * @return the body of the last response, or a description of the failure if there was no response.
+     */
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    @Override
+    public String toString() {
+        return "UploadResult{success=" + success + ", statusCode=" + statusCode + ", latencyNanos=" + latencyNanos
+                + ", errorName=" + errorName + "}";
+    }
+}
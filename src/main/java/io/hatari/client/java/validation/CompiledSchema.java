@@ -0,0 +1,140 @@
+package io.hatari.client.java.validation;
+
+import io.hatari.client.java.exceptions.InvalidEventException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An {@link EventSchema} compiled for checking: each declared property is looked up once per event property in a
+ * single hash map, and the required properties are counted instead of being looked up again.
+ * <p/>
+ * The declared names were checked when the schema was compiled, so {@link EventValidator} doesn't check them
+ * again for each event.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class CompiledSchema {
+
+    private final String eventCollection;
+    private final Map<String, Property> properties = new HashMap<String, Property>();
+    private final int requiredCount;
+    private final boolean allowUndeclared;
+
+    CompiledSchema(String eventCollection, EventSchema schema) throws InvalidEventException {
+        this.eventCollection = eventCollection;
+        int required = 0;
+        for (Map.Entry<String, PropertyType> declared : schema.getTypes().entrySet()) {
+            String name = declared.getKey();
+            String problem = EventValidator.checkPropertyName(name);
+            if (problem == null && "hatari".equals(name)) {
+                problem = "An event cannot contain a root-level property named 'hatari'.";
+            }
+            if (problem != null) {
+                throw new InvalidEventException("Invalid schema for collection " + eventCollection + ": " + problem);
+            }
+            boolean isRequired = schema.isRequired(name);
+            properties.put(name, new Property(declared.getValue(), isRequired));
+            if (isRequired) {
+                required++;
+            }
+        }
+        this.requiredCount = required;
+        this.allowUndeclared = schema.isUndeclaredAllowed();
+    }
+
+    /**
+     * @return whether the schema declares a property of this name, whose name therefore needs no further checks.
+     */
+    public boolean isDeclared(String name) {
+        return properties.containsKey(name);
+    }
+
+    /**
+     * Checks a single root-level property.
+     *
+     * @param name The name of the property.
+     * @param type The type of its value, null for a null value.
+     * @return why the property doesn't fit the schema, or null if it's fine.
+     */
+    public String checkProperty(String name, PropertyType type) {
+        Property property = properties.get(name);
+        if (property == null) {
+            return allowUndeclared ? null : String.format(
+                    "Events of collection %s cannot contain the undeclared property '%s'.", eventCollection, name);
+        }
+        if (type == null) {
+            return property.required ? String.format(
+                    "The required property '%s' of collection %s cannot be null.", name, eventCollection) : null;
+        }
+        if (!property.type.accepts(type)) {
+            return String.format("The property '%s' of collection %s must be of type %s, not %s.",
+                    name, eventCollection, property.type, type);
+        }
+        return null;
+    }
+
+    /**
+     * Checks that an event has every required property, once each of its properties passed
+     * {@link #checkProperty(String, PropertyType)}.
+     *
+     * @param names The names of the event's root-level properties.
+     * @param count How many of the names are used.
+     * @return why the event doesn't fit the schema, or null if it's fine.
+     */
+    public String checkRequired(String[] names, int count) {
+        if (requiredCount == 0) {
+            return null;
+        }
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            Property property = properties.get(names[i]);
+            if (property != null && property.required) {
+                found++;
+            }
+        }
+        return found == requiredCount ? null : missingRequired(names, count);
+    }
+
+    String checkRequired(Map<String, Object> event) {
+        if (requiredCount == 0) {
+            return null;
+        }
+        int found = 0;
+        for (Map.Entry<String, Property> property : properties.entrySet()) {
+            if (property.getValue().required && event.containsKey(property.getKey())) {
+                found++;
+            }
+        }
+        return found == requiredCount ? null : missingRequired(event.keySet().toArray(new String[0]), event.size());
+    }
+
+    // only on the error path, so it doesn't matter that it's slow
+    private String missingRequired(String[] names, int count) {
+        for (Map.Entry<String, Property> property : properties.entrySet()) {
+            if (!property.getValue().required) {
+                continue;
+            }
+            boolean present = false;
+            for (int i = 0; i < count && !present; i++) {
+                present = property.getKey().equals(names[i]);
+            }
+            if (!present) {
+                return String.format("Events of collection %s must contain the property '%s'.",
+                        eventCollection, property.getKey());
+            }
+        }
+        return null;
+    }
+
+    private static class Property {
+        private final PropertyType type;
+        private final boolean required;
+
+        private Property(PropertyType type, boolean required) {
+            this.type = type;
+            this.required = required;
+        }
+    }
+}
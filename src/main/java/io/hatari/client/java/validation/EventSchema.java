@@ -0,0 +1,72 @@
+package io.hatari.client.java.validation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Describes the root-level properties the events of one collection may have. Register it with
+ * {@link io.hatari.client.java.HatariClient#registerSchema(String, EventSchema)}, which compiles it into a
+ * {@link CompiledSchema} that every event of the collection is checked against.
+ * <p/>
+ * Example usage:
+ * <pre>
+ *     HatariClient.client().registerSchema("transactions", new EventSchema()
+ *             .required("amount", PropertyType.NUMBER)
+ *             .required("currency", PropertyType.STRING)
+ *             .optional("card", PropertyType.OBJECT)
+ *             .allowUndeclared(false));
+ * </pre>
+ * Nested values are still checked against the general event rules, but not against the schema.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class EventSchema {
+
+    private final Map<String, PropertyType> types = new LinkedHashMap<String, PropertyType>();
+    private final Map<String, Boolean> required = new LinkedHashMap<String, Boolean>();
+    private boolean allowUndeclared = true;
+
+    /**
+     * Declares a property every event must have, with a non-null value of the given type.
+     */
+    public EventSchema required(String name, PropertyType type) {
+        return declare(name, type, true);
+    }
+
+    /**
+     * Declares a property events may have. If they do, its value must be null or of the given type.
+     */
+    public EventSchema optional(String name, PropertyType type) {
+        return declare(name, type, false);
+    }
+
+    /**
+     * @param allowUndeclared Whether events may have properties the schema doesn't declare. Defaults to true.
+     */
+    public EventSchema allowUndeclared(boolean allowUndeclared) {
+        this.allowUndeclared = allowUndeclared;
+        return this;
+    }
+
+    Map<String, PropertyType> getTypes() {
+        return types;
+    }
+
+    boolean isRequired(String name) {
+        return required.get(name);
+    }
+
+    boolean isUndeclaredAllowed() {
+        return allowUndeclared;
+    }
+
+    private EventSchema declare(String name, PropertyType type, boolean isRequired) {
+        if (name == null || type == null) {
+            throw new IllegalArgumentException("A schema property needs a name and a type.");
+        }
+        types.put(name, type);
+        required.put(name, isRequired);
+        return this;
+    }
+}
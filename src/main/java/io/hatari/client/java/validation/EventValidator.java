@@ -0,0 +1,216 @@
+package io.hatari.client.java.validation;
+
+import io.hatari.client.java.exceptions.InvalidEventException;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * EventValidator checks events against the Hatari naming rules and against the {@link EventSchema}s registered for
+ * their collections.
+ * <p/>
+ * Events tend to use the same few property names over and over, so names that passed the rules once are remembered
+ * and only looked up after that. The set of remembered names is bounded: once it holds
+ * <code>maxApprovedNames</code> names, further names are checked every time they are used. Names declared in a
+ * schema are never checked per event at all.
+ * <p/>
+ * Values are checked all the way down, including Maps inside Lists and arrays.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class EventValidator {
+
+    private static final int MAX_STRING_LENGTH = 10000;
+
+    private final int maxApprovedNames;
+    private final ConcurrentMap<String, Boolean> approvedNames = new ConcurrentHashMap<String, Boolean>();
+    private final ConcurrentMap<String, CompiledSchema> schemas = new ConcurrentHashMap<String, CompiledSchema>();
+
+    private final LongAdder validatedEvents = new LongAdder();
+    private final LongAdder rejectedEvents = new LongAdder();
+    private final LongAdder validationNanos = new LongAdder();
+    private final LongAdder nameCacheHits = new LongAdder();
+    private final LongAdder nameCacheMisses = new LongAdder();
+
+    public EventValidator(int maxApprovedNames) {
+        this.maxApprovedNames = maxApprovedNames;
+    }
+
+    /**
+     * Compiles a schema and checks every event of the collection against it from now on.
+     *
+     * @param eventCollection The collection the schema applies to.
+     * @param schema          The schema, or null to stop checking the collection against a schema.
+     * @throws InvalidEventException if the schema declares a property name no event may have.
+     */
+    public void registerSchema(String eventCollection, EventSchema schema) throws InvalidEventException {
+        if (schema == null) {
+            schemas.remove(eventCollection);
+        } else {
+            schemas.put(eventCollection, new CompiledSchema(eventCollection, schema));
+        }
+    }
+
+    /**
+     * @return the compiled schema of the collection, or null if it has none.
+     */
+    public CompiledSchema getSchema(String eventCollection) {
+        return schemas.isEmpty() ? null : schemas.get(eventCollection);
+    }
+
+    /**
+     * Checks a whole event.
+     *
+     * @param eventCollection The collection the event is added to.
+     * @param event           The event, without the <code>hatari</code> block.
+     * @throws InvalidEventException with the first problem found.
+     */
+    public void validateEvent(String eventCollection, Map<String, Object> event) throws InvalidEventException {
+        long start = System.nanoTime();
+        boolean valid = false;
+        try {
+            if (event == null || event.size() == 0) {
+                throw new InvalidEventException("You must specify a non-null, non-empty event.");
+            }
+            if (event.containsKey("hatari")) {
+                throw new InvalidEventException("An event cannot contain a root-level property named 'hatari'.");
+            }
+            CompiledSchema schema = getSchema(eventCollection);
+            for (Map.Entry<String, Object> entry : event.entrySet()) {
+                String key = entry.getKey();
+                Object value = entry.getValue();
+                if (schema == null || !schema.isDeclared(key)) {
+                    failIfProblem(checkName(key));
+                }
+                if (schema != null) {
+                    failIfProblem(schema.checkProperty(key, PropertyType.of(value)));
+                }
+                validateValue(value, 1);
+            }
+            if (schema != null) {
+                failIfProblem(schema.checkRequired(event));
+            }
+            valid = true;
+        } finally {
+            validationNanos.add(System.nanoTime() - start);
+            validatedEvents.increment();
+            if (!valid) {
+                rejectedEvents.increment();
+            }
+        }
+    }
+
+    /**
+     * Checks a property value and everything nested in it.
+     *
+     * @param value The value.
+     * @param depth How deep the value is nested, 1 for a root-level property.
+     * @throws InvalidEventException with the first problem found.
+     */
+    @SuppressWarnings("unchecked") // cast to generic Map will always be okay in this case
+    public void validateValue(Object value, int depth) throws InvalidEventException {
+        if (value instanceof String) {
+            if (((String) value).length() >= MAX_STRING_LENGTH) {
+                throw new InvalidEventException("An event cannot contain a string property value longer than 10,000 characters.");
+            }
+        } else if (value instanceof Map) {
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                failIfProblem(checkName(entry.getKey()));
+                validateValue(entry.getValue(), depth + 1);
+            }
+        } else if (value instanceof Collection) {
+            for (Object element : (Collection<Object>) value) {
+                validateValue(element, depth + 1);
+            }
+        } else if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                validateValue(element, depth + 1);
+            }
+        }
+    }
+
+    /**
+     * Checks a property name, remembering names that are fine.
+     *
+     * @return why the property name is invalid, or null if it's fine.
+     */
+    public String checkName(String key) {
+        if (key == null) {
+            return "An event cannot contain a property without a name.";
+        }
+        if (approvedNames.containsKey(key)) {
+            nameCacheHits.increment();
+            return null;
+        }
+        nameCacheMisses.increment();
+        String problem = checkPropertyName(key);
+        // a racy size check may overshoot by a few names, which is fine for a bound
+        if (problem == null && approvedNames.size() < maxApprovedNames) {
+            approvedNames.put(key, Boolean.TRUE);
+        }
+        return problem;
+    }
+
+    /**
+     * Checks a property name against the naming rules, without remembering it.
+     *
+     * @return why the property name is invalid, or null if it's fine.
+     */
+    public static String checkPropertyName(String key) {
+        if (key.contains(".")) {
+            return "An event cannot contain a property with the period (.) character in it.";
+        }
+        if (key.startsWith("$")) {
+            return "An event cannot contain a property that starts with the dollar sign ($) character in it.";
+        }
+        if (key.length() > 256) {
+            return "An event cannot contain a property name longer than 256 characters.";
+        }
+        return null;
+    }
+
+    /**
+     * @return how many events were validated as a whole.
+     */
+    public long getValidatedEventCount() {
+        return validatedEvents.sum();
+    }
+
+    /**
+     * @return how many of the validated events were invalid.
+     */
+    public long getRejectedEventCount() {
+        return rejectedEvents.sum();
+    }
+
+    /**
+     * @return the total time spent validating events as a whole, in nanoseconds.
+     */
+    public long getValidationNanos() {
+        return validationNanos.sum();
+    }
+
+    /**
+     * @return how often a property name was found among the remembered names.
+     */
+    public long getNameCacheHitCount() {
+        return nameCacheHits.sum();
+    }
+
+    /**
+     * @return how often a property name had to be checked against the rules.
+     */
+    public long getNameCacheMissCount() {
+        return nameCacheMisses.sum();
+    }
+
+    private static void failIfProblem(String problem) throws InvalidEventException {
+        if (problem != null) {
+            throw new InvalidEventException(problem);
+        }
+    }
+}
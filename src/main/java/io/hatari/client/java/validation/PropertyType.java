@@ -0,0 +1,78 @@
+package io.hatari.client.java.validation;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * The types of property values an {@link EventSchema} can require, named after what they become in JSON.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public enum PropertyType {
+    /**
+     * A {@link CharSequence} or a {@link Character}.
+     */
+    STRING,
+    /**
+     * Any {@link Number}.
+     */
+    NUMBER,
+    /**
+     * A {@link Boolean}.
+     */
+    BOOLEAN,
+    /**
+     * A {@link Date} or a {@link Calendar}, sent as an ISO-8601 string.
+     */
+    TIMESTAMP,
+    /**
+     * A nested {@link Map}.
+     */
+    OBJECT,
+    /**
+     * A {@link Collection} or an array.
+     */
+    ARRAY,
+    /**
+     * Any value at all.
+     */
+    ANY;
+
+    /**
+     * @return the type of the value, or null if the value is null.
+     */
+    public static PropertyType of(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof CharSequence || value instanceof Character) {
+            return STRING;
+        }
+        if (value instanceof Number) {
+            return NUMBER;
+        }
+        if (value instanceof Boolean) {
+            return BOOLEAN;
+        }
+        if (value instanceof Date || value instanceof Calendar) {
+            return TIMESTAMP;
+        }
+        if (value instanceof Map) {
+            return OBJECT;
+        }
+        if (value instanceof Collection || value.getClass().isArray()) {
+            return ARRAY;
+        }
+        return ANY;
+    }
+
+    /**
+     * @return whether a value of the given type may be used where this type is declared.
+     */
+    public boolean accepts(PropertyType type) {
+        return this == ANY || this == type;
+    }
+}
@@ -0,0 +1,41 @@
+package io.hatari.client.java.io;
+
+import io.hatari.client.java.util.HatariConfig;
+
+/**
+ * Factory methods for the {@link HatariTransport}s shipped with the SDK.
+ * <p/>
+ * This is the Java 11 version of this class, which can also create a transport on top of
+ * <code>java.net.http.HttpClient</code>.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class HatariTransports {
+
+    private HatariTransports() {
+    }
+
+    /**
+     * @return a transport on top of {@link java.net.HttpURLConnection} using the timeouts from {@link HatariConfig}.
+     */
+    public static HatariTransport urlConnection() {
+        return new UrlConnectionTransport(HatariConfig.CONNECT_TIMEOUT_MILLIS, HatariConfig.READ_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @return whether {@link #http2()} is available on this JVM.
+     */
+    public static boolean isHttp2Supported() {
+        return true;
+    }
+
+    /**
+     * Creates a transport that multiplexes all requests over a few HTTP/2 connections.
+     *
+     * @return an HTTP/2 transport using the timeouts from {@link HatariConfig}.
+     */
+    public static HatariTransport http2() {
+        return new HttpClientTransport(HatariConfig.CONNECT_TIMEOUT_MILLIS, HatariConfig.READ_TIMEOUT_MILLIS);
+    }
+}
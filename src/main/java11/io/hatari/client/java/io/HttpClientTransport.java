@@ -0,0 +1,84 @@
+package io.hatari.client.java.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link HatariTransport} on top of <code>java.net.http.HttpClient</code>, which negotiates HTTP/2 and then
+ * multiplexes concurrent requests over a single connection per host, so adding upload threads doesn't add
+ * connections or handshakes. Falls back to HTTP/1.1 if the server doesn't speak HTTP/2.
+ * <p/>
+ * Only available on Java 11 and newer; use {@link HatariTransports#http2()} to create one.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+class HttpClientTransport implements HatariTransport {
+
+    private final HttpClient httpClient;
+    private final Duration requestTimeout;
+
+    HttpClientTransport(int connectTimeoutMillis, int readTimeoutMillis) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .build();
+        this.requestTimeout = Duration.ofMillis(readTimeoutMillis);
+    }
+
+    @Override
+    public HatariResponse post(String url, Map<String, String> headers, RequestBody body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(requestTimeout)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(out.toByteArray()));
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.header(header.getKey(), header.getValue());
+        }
+
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the Hatari API.");
+        }
+
+        Map<String, String> responseHeaders = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+            if (!header.getValue().isEmpty()) {
+                responseHeaders.put(header.getKey().toLowerCase(), header.getValue().get(0));
+            }
+        }
+        return new HatariResponse(response.statusCode(), response.body(), responseHeaders);
+    }
+
+    /**
+     * Sends a HEAD request to the endpoint's root, which also settles whether the endpoint speaks HTTP/2.
+     */
+    @Override
+    public void connect(String address) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(address + "/"))
+                .timeout(requestTimeout)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .build();
+        try {
+            httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting to the Hatari API.");
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package io.hatari.client.java.io;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Factory methods for executors to run uploads on, see
+ * {@link io.hatari.client.java.HatariClient#setUploadExecutor(java.util.concurrent.Executor, int)}.
+ * <p/>
+ * This is the Java 21 version of this class, which creates virtual-thread executors directly.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class HatariExecutors {
+
+    private HatariExecutors() {
+    }
+
+    /**
+     * @return whether {@link #virtualThreadPerTask()} is available on this JVM.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return true;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for every upload. Blocking on the network then no
+     * longer ties up a platform thread, so the number of concurrent uploads is only limited by the
+     * <code>maxConcurrentUploads</code> it is installed with.
+     *
+     * @return a virtual-thread-per-task executor.
+     */
+    public static ExecutorService virtualThreadPerTask() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
@@ -0,0 +1,201 @@
+package io.hatari.client.java;
+
+import io.hatari.client.java.io.RecordingTransport;
+import io.hatari.client.java.io.WireFormat;
+import io.hatari.client.java.util.UploadResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * What arrives at the API for events added in each way, in each built-in {@link WireFormat}: the events must
+ * decode to what was added, plus the <code>hatari</code> properties, whether they were serialized on the spot or
+ * kept as JSON and transcoded when sent.
+ */
+class EventEncodingTest {
+
+    // 2021-03-04T05:06:07.089Z
+    private static final long EPOCH_MILLIS = 1614834367089L;
+    private static final String DATE = "2021-03-04T05:06:07.089+0000";
+
+    @TempDir
+    File spillDirectory;
+
+    private HatariClient client;
+    private RecordingTransport transport;
+
+    static List<WireFormat> formats() {
+        return Arrays.asList(WireFormat.JSON, WireFormat.SMILE, WireFormat.CBOR);
+    }
+
+    @BeforeEach
+    void setUp() {
+        client = new HatariClient("project", "key");
+        transport = new RecordingTransport();
+        client.setTransport(transport);
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    void encodesMapEvent(WireFormat format) throws Exception {
+        client.setWireFormat(format);
+
+        assertTrue(client.addEventAsync("purchases", event()).get(10, TimeUnit.SECONDS).isSuccess());
+
+        RecordingTransport.Request request = onlyRequest(format);
+        assertEvent(request.decode());
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    void encodesBuiltEvent(WireFormat format) throws Exception {
+        client.setWireFormat(format);
+
+        UploadResult result = client.newEvent("purchases")
+                .timestamp(EPOCH_MILLIS)
+                .put("name", "purchase")
+                .put("amount", 42.5)
+                .put("count", 3)
+                .put("gift", false)
+                .put("date", new Date(EPOCH_MILLIS))
+                .beginObject("card")
+                    .put("type", "visa")
+                    .put("issued", new Date(EPOCH_MILLIS))
+                .endObject()
+                .beginArray("items")
+                    .add("book")
+                    .add(2.5)
+                    .beginObject()
+                        .put("type", "visa")
+                        .put("issued", new Date(EPOCH_MILLIS))
+                    .endObject()
+                .endArray()
+                .sendAsync()
+                .get(10, TimeUnit.SECONDS);
+
+        assertTrue(result.isSuccess());
+        Map<String, Object> decoded = onlyRequest(format).decode();
+        assertEvent(decoded);
+        assertEquals(DATE, hatariProperties(decoded).get("timestamp"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    void encodesBatch(WireFormat format) throws Exception {
+        client.setWireFormat(format);
+        client.setBatchingEnabled(true);
+
+        assertBatchDelivered(format);
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    void encodesStoredEvents(WireFormat format) throws Exception {
+        client.setWireFormat(format);
+        // the events are read back from the log as JSON and transcoded when the batch is sent
+        client.setSpillDirectory(spillDirectory);
+
+        assertBatchDelivered(format);
+    }
+
+    private void assertBatchDelivered(WireFormat format) throws Exception {
+        List<CompletableFuture<UploadResult>> results = new ArrayList<CompletableFuture<UploadResult>>();
+        for (int i = 0; i < 3; i++) {
+            results.add(client.addEventAsync("purchases", event()));
+        }
+        assertTrue(client.flush(10000));
+        for (CompletableFuture<UploadResult> result : results) {
+            assertTrue(result.get(10, TimeUnit.SECONDS).isSuccess());
+        }
+
+        // a drain pass may have started while the events were added, so they may come in more than one batch
+        int eventCount = 0;
+        for (RecordingTransport.Request request : transport.getRequests()) {
+            assertEquals(format.getContentType(), request.getContentType());
+            assertTrue(request.getUrl().endsWith("/batch"));
+            Map<String, Object> decoded = request.decode();
+            assertEquals(1, decoded.size());
+            for (Object event : (List<?>) decoded.get("purchases")) {
+                assertEvent(castToMap(event));
+                eventCount++;
+            }
+        }
+        assertEquals(3, eventCount);
+    }
+
+    private RecordingTransport.Request onlyRequest(WireFormat format) {
+        List<RecordingTransport.Request> requests = transport.getRequests();
+        assertEquals(1, requests.size());
+        assertEquals(format.getContentType(), requests.get(0).getContentType());
+        return requests.get(0);
+    }
+
+    private static Map<String, Object> event() {
+        Map<String, Object> card = new LinkedHashMap<String, Object>();
+        card.put("type", "visa");
+        card.put("issued", new Date(EPOCH_MILLIS));
+        List<Object> items = new ArrayList<Object>();
+        items.add("book");
+        items.add(2.5);
+        items.add(card);
+
+        Map<String, Object> event = new LinkedHashMap<String, Object>();
+        event.put("name", "purchase");
+        event.put("amount", 42.5);
+        event.put("count", 3);
+        event.put("gift", false);
+        event.put("date", new Date(EPOCH_MILLIS));
+        event.put("card", card);
+        event.put("items", items);
+        return event;
+    }
+
+    private static void assertEvent(Map<String, Object> decoded) {
+        Map<String, Object> card = new LinkedHashMap<String, Object>();
+        card.put("type", "visa");
+        card.put("issued", DATE);
+
+        assertEquals("purchase", decoded.get("name"));
+        assertEquals(42.5, decoded.get("amount"));
+        assertEquals(3, decoded.get("count"));
+        assertEquals(false, decoded.get("gift"));
+        assertEquals(DATE, decoded.get("date"));
+        assertEquals(card, decoded.get("card"));
+        assertEquals(Arrays.asList("book", 2.5, card), decoded.get("items"));
+
+        Map<String, Object> hatari = hatariProperties(decoded);
+        String timestamp = (String) hatari.get("timestamp");
+        assertTrue(timestamp.matches("\\d{4}-\\d\\d-\\d\\dT\\d\\d:\\d\\d:\\d\\d\\.\\d{3}\\+0000"), timestamp);
+        assertNotNull(hatari.get("id"));
+    }
+
+    private static Map<String, Object> hatariProperties(Map<String, Object> decoded) {
+        return castToMap(decoded.get("hatari"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castToMap(Object value) {
+        return (Map<String, Object>) value;
+    }
+}
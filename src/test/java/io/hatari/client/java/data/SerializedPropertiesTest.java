@@ -0,0 +1,49 @@
+package io.hatari.client.java.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Serialized properties stay as they were, whatever the application does with its map afterwards.
+ */
+class SerializedPropertiesTest {
+
+    @Test
+    void ignoresLaterChangesToSerializedMap() {
+        Map<String, Object> properties = properties();
+        SerializedProperties serialized = SerializedProperties.serialize(properties);
+
+        properties.put("region", "us");
+        properties.put("added", true);
+        properties.remove("version");
+
+        assertEquals(properties(), serialized.asMap());
+        assertTrue(serialized.containsKey("version"));
+        assertFalse(serialized.containsKey("added"));
+        assertEquals(2, serialized.size());
+    }
+
+    @Test
+    void ignoresLaterChangesToWrappedMap() {
+        Map<String, Object> properties = properties();
+        SerializedProperties wrapped = SerializedProperties.wrap(properties);
+
+        properties.clear();
+
+        assertEquals(properties(), wrapped.asMap());
+        assertTrue(wrapped.containsKey("region"));
+    }
+
+    private static Map<String, Object> properties() {
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        properties.put("region", "eu");
+        properties.put("version", 3);
+        return properties;
+    }
+}
@@ -0,0 +1,110 @@
+package io.hatari.client.java.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Bodies gzipped with pooled deflaters must read back like any gzip stream, however many requests share the pool.
+ */
+class GzipRequestBodyTest {
+
+    @Test
+    void writesGzip() throws IOException {
+        byte[] body = body(0);
+
+        assertArrayEquals(body, gunzip(gzip(body)));
+    }
+
+    @Test
+    void sharesDeflatersBetweenThreads() throws Exception {
+        // more threads than the pool keeps deflaters, each with a thread of its own like virtual threads
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 64; i++) {
+                final int seed = i;
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws IOException {
+                        for (int j = 0; j < 20; j++) {
+                            byte[] body = body(seed * 100 + j);
+                            assertArrayEquals(body, gunzip(gzip(body)));
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void reusesDeflaterAfterFailedBody() throws IOException {
+        final RequestBody failing = new RequestBody() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(body(1), 0, 5000);
+                throw new IOException("The connection was reset.");
+            }
+        };
+        assertThrows(IOException.class, new Executable() {
+            @Override
+            public void execute() throws IOException {
+                new GzipRequestBody(failing).writeTo(new ByteArrayOutputStream());
+            }
+        });
+
+        byte[] body = body(2);
+        assertArrayEquals(body, gunzip(gzip(body)));
+    }
+
+    private static byte[] body(int seed) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            body.append("{\"event\":").append(seed).append(",\"index\":").append(i).append("}");
+        }
+        return body.toString().getBytes();
+    }
+
+    private static byte[] gzip(final byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new GzipRequestBody(new RequestBody() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(body);
+            }
+        }).writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] gzipped) throws IOException {
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
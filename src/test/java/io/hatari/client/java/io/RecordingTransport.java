@@ -0,0 +1,89 @@
+package io.hatari.client.java.io;
+
+import io.hatari.client.java.HatariClient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A transport that keeps the requests it is given instead of sending them, and answers like the Hatari API: 201
+ * for an event, a success per event for a batch, and <code>415 Unsupported Media Type</code> for the content types
+ * it was told to reject.
+ */
+public class RecordingTransport implements HatariTransport {
+
+    private final Set<String> rejectedContentTypes;
+    private final List<Request> requests = new CopyOnWriteArrayList<Request>();
+
+    public RecordingTransport(String... rejectedContentTypes) {
+        this.rejectedContentTypes = new HashSet<String>(Arrays.asList(rejectedContentTypes));
+    }
+
+    @Override
+    public HatariResponse post(String url, Map<String, String> headers, RequestBody body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        Request request = new Request(url, headers.get("Content-Type"), out.toByteArray());
+        requests.add(request);
+        if (rejectedContentTypes.contains(request.contentType)) {
+            return new HatariResponse(415, "{\"message\":\"Unsupported Media Type\"}", null);
+        }
+        if (!url.endsWith("/batch")) {
+            return new HatariResponse(201, "{\"created\":true}", null);
+        }
+        Map<String, Object> results = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, Object> collection : request.decode().entrySet()) {
+            List<Object> successes = new ArrayList<Object>();
+            for (int i = 0; i < ((List<?>) collection.getValue()).size(); i++) {
+                successes.add(Collections.singletonMap("success", true));
+            }
+            results.put(collection.getKey(), successes);
+        }
+        return new HatariResponse(200, HatariClient.MAPPER.writeValueAsString(results), null);
+    }
+
+    public List<Request> getRequests() {
+        return requests;
+    }
+
+    public static class Request {
+        private final String url;
+        private final String contentType;
+        private final byte[] body;
+
+        private Request(String url, String contentType, byte[] body) {
+            this.url = url;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return the body, read in the format its content type names.
+         */
+        @SuppressWarnings("unchecked")
+        public Map<String, Object> decode() throws IOException {
+            return WireFormat.forContentType(contentType).readValue(body, Map.class);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package io.hatari.client.java.io;
+
+import io.hatari.client.java.HatariClient;
+import io.hatari.client.java.util.UploadResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * How an upload reacts to the API rejecting its wire format.
+ */
+class RetryingUploadTaskTest {
+
+    private HatariClient client;
+
+    @BeforeEach
+    void setUp() {
+        client = new HatariClient("project", "key");
+    }
+
+    @AfterEach
+    void tearDown() {
+        client.close();
+    }
+
+    @Test
+    void fallsBackToJsonWhenFormatIsRejected() throws Exception {
+        RecordingTransport transport = new RecordingTransport(WireFormat.SMILE.getContentType());
+        client.setTransport(transport);
+        client.setWireFormat(WireFormat.SMILE);
+
+        UploadResult result = send(event(1));
+
+        assertTrue(result.isSuccess());
+        assertEquals(201, result.getStatusCode());
+        List<RecordingTransport.Request> requests = transport.getRequests();
+        assertEquals(2, requests.size());
+        assertEquals(WireFormat.SMILE.getContentType(), requests.get(0).getContentType());
+        assertEquals(WireFormat.JSON.getContentType(), requests.get(1).getContentType());
+        // the same event, only in another format
+        assertEquals(requests.get(0).decode(), requests.get(1).decode());
+        assertEquals(1, requests.get(1).decode().get("number"));
+        assertSame(WireFormat.JSON, client.getWireFormat());
+    }
+
+    @Test
+    void sendsJsonAfterFallingBack() throws Exception {
+        RecordingTransport transport = new RecordingTransport(WireFormat.CBOR.getContentType());
+        client.setTransport(transport);
+        client.setWireFormat(WireFormat.CBOR);
+
+        assertTrue(send(event(1)).isSuccess());
+        assertTrue(send(event(2)).isSuccess());
+
+        List<RecordingTransport.Request> requests = transport.getRequests();
+        assertEquals(3, requests.size());
+        assertEquals(WireFormat.JSON.getContentType(), requests.get(2).getContentType());
+        assertEquals(2, requests.get(2).decode().get("number"));
+    }
+
+    @Test
+    void fallsBackToJsonForBatches() throws Exception {
+        RecordingTransport transport = new RecordingTransport(WireFormat.SMILE.getContentType());
+        client.setTransport(transport);
+        client.setWireFormat(WireFormat.SMILE);
+        client.setBatchingEnabled(true);
+
+        CompletableFuture<UploadResult> first = client.addEventAsync("purchases", event(1));
+        CompletableFuture<UploadResult> second = client.addEventAsync("purchases", event(2));
+        assertTrue(client.flush(10000));
+
+        assertTrue(first.get(10, TimeUnit.SECONDS).isSuccess());
+        assertTrue(second.get(10, TimeUnit.SECONDS).isSuccess());
+        List<RecordingTransport.Request> requests = transport.getRequests();
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(1).getUrl().endsWith("/batch"));
+        assertEquals(WireFormat.JSON.getContentType(), requests.get(1).getContentType());
+        assertEquals(requests.get(0).decode(), requests.get(1).decode());
+    }
+
+    @Test
+    void doesNotRetryRejectedJson() throws Exception {
+        RecordingTransport transport = new RecordingTransport(WireFormat.JSON.getContentType());
+        client.setTransport(transport);
+
+        UploadResult result = send(event(1));
+
+        assertFalse(result.isSuccess());
+        assertEquals(415, result.getStatusCode());
+        assertEquals(1, transport.getRequests().size());
+        assertSame(WireFormat.JSON, client.getWireFormat());
+    }
+
+    @Test
+    void keepsFormatChangedSinceTheRequest() {
+        client.setWireFormat(WireFormat.CBOR);
+
+        // a 415 to a SMILE request that was still out doesn't undo the change
+        client.onWireFormatRejected(WireFormat.SMILE);
+
+        assertSame(WireFormat.CBOR, client.getWireFormat());
+    }
+
+    private UploadResult send(Map<String, Object> event) throws Exception {
+        return client.addEventAsync("purchases", event).get(10, TimeUnit.SECONDS);
+    }
+
+    private static Map<String, Object> event(int number) {
+        Map<String, Object> event = new LinkedHashMap<String, Object>();
+        event.put("number", number);
+        event.put("items", Arrays.asList("book", "pen"));
+        return event;
+    }
+}
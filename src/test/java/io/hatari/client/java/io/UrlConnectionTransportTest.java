@@ -0,0 +1,91 @@
+package io.hatari.client.java.io;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * What the default transport puts on the wire.
+ */
+class UrlConnectionTransportTest {
+
+    private HttpServer server;
+    private String address;
+    private volatile String transferEncoding;
+    private volatile String receivedBody;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                transferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+                InputStream in = exchange.getRequestBody();
+                if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                    in = new GZIPInputStream(in);
+                }
+                receivedBody = new String(readFully(in), "UTF-8");
+                byte[] response = "{\"created\":true}".getBytes("UTF-8");
+                exchange.sendResponseHeaders(201, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        server.start();
+        address = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void streamsCompressedBodyInChunks() throws IOException {
+        StringBuilder event = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < 1000; i++) {
+            event.append(i == 0 ? "" : ",").append("\"item-").append(i).append('"');
+        }
+        final byte[] body = event.append("]}").toString().getBytes("UTF-8");
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("Content-Type", "application/json");
+        RequestBody requestBody = GzipRequestBody.compressIfWorthIt(new RequestBody() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(body);
+            }
+        }, body.length, headers);
+
+        HatariResponse response = new UrlConnectionTransport(5000, 5000).post(address + "/events", headers,
+                requestBody);
+
+        assertEquals(201, response.getStatusCode());
+        assertEquals("chunked", transferEncoding);
+        assertEquals(new String(body, "UTF-8"), receivedBody);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
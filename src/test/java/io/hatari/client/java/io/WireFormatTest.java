@@ -0,0 +1,170 @@
+package io.hatari.client.java.io;
+
+import io.hatari.client.java.HatariClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Round trips through each built-in {@link WireFormat}: what is written in a format must read back as the same
+ * event that JSON would give.
+ */
+class WireFormatTest {
+
+    // 2021-03-04T05:06:07.089Z
+    private static final long EPOCH_MILLIS = 1614834367089L;
+
+    static List<WireFormat> formats() {
+        return Arrays.asList(WireFormat.JSON, WireFormat.SMILE, WireFormat.CBOR);
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    void writesEvent(WireFormat format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.writeValue(out, event());
+
+        assertEquals(expectedEvent(), format.readValue(out.toByteArray(), Map.class));
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    void writesDatesWithoutColonInZone(WireFormat format) throws IOException {
+        Map<String, Object> event = new LinkedHashMap<String, Object>();
+        event.put("date", new Date(EPOCH_MILLIS));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.writeValue(out, event);
+
+        assertEquals("2021-03-04T05:06:07.089+0000", format.readValue(out.toByteArray(), Map.class).get("date"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    void transcodesSerializedEvent(WireFormat format) throws IOException {
+        byte[] json = HatariClient.MAPPER.writeValueAsBytes(event());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.writeSerializedEvent(out, json);
+
+        assertEquals(expectedEvent(), format.readValue(out.toByteArray(), Map.class));
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    void transcodesSerializedEventFromBuffer(WireFormat format) throws IOException {
+        byte[] json = HatariClient.MAPPER.writeValueAsBytes(event());
+        // somewhere in the middle of a slab, like a pending event
+        ByteBuffer slab = ByteBuffer.allocateDirect(json.length + 20);
+        slab.position(10);
+        slab.put(json);
+        slab.flip();
+        slab.position(10);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.writeSerializedEvent(out, slab);
+
+        assertEquals(expectedEvent(), format.readValue(out.toByteArray(), Map.class));
+        assertEquals(10, slab.position());
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    void writesBatch(WireFormat format) throws IOException {
+        Map<String, Object> other = new LinkedHashMap<String, Object>();
+        other.put("name", "second");
+        List<byte[]> events = Arrays.asList(HatariClient.MAPPER.writeValueAsBytes(event()),
+                HatariClient.MAPPER.writeValueAsBytes(other));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.writeBatch(out, "purchases", events);
+
+        Map<String, Object> expected = new LinkedHashMap<String, Object>();
+        expected.put("purchases", Arrays.asList(expectedEvent(), other));
+        assertEquals(expected, format.readValue(out.toByteArray(), Map.class));
+    }
+
+    @ParameterizedTest
+    @MethodSource("formats")
+    void writesSerializedEventAsIsOnlyForJson(WireFormat format) throws IOException {
+        byte[] json = HatariClient.MAPPER.writeValueAsBytes(event());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        format.writeSerializedEvent(out, json);
+
+        assertEquals(format.isJson(), Arrays.equals(json, out.toByteArray()));
+    }
+
+    @Test
+    void looksUpFormatByContentType() {
+        assertSame(WireFormat.JSON, WireFormat.forContentType("application/json; charset=UTF-8"));
+        assertSame(WireFormat.SMILE, WireFormat.forContentType("application/x-jackson-smile"));
+        assertSame(WireFormat.CBOR, WireFormat.forContentType("Application/CBOR"));
+        assertNull(WireFormat.forContentType("text/plain"));
+        assertNull(WireFormat.forContentType(null));
+    }
+
+    @Test
+    void keepsJsonBytesOfSerializedEvent() throws IOException {
+        byte[] json = "{\"a\":1}".getBytes("UTF-8");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WireFormat.JSON.writeSerializedEvent(out, json);
+
+        assertArrayEquals(json, out.toByteArray());
+    }
+
+    private static Map<String, Object> event() {
+        Map<String, Object> card = new LinkedHashMap<String, Object>();
+        card.put("type", "visa");
+        card.put("issued", new Date(EPOCH_MILLIS));
+        List<Object> items = new ArrayList<Object>();
+        items.add("book");
+        items.add(Arrays.asList(1, 2.5, true));
+        items.add(card);
+
+        Map<String, Object> event = new LinkedHashMap<String, Object>();
+        event.put("name", "purchase");
+        event.put("amount", 42.5);
+        event.put("count", 3);
+        event.put("big", 1L << 40);
+        event.put("gift", false);
+        event.put("note", null);
+        event.put("card", card);
+        event.put("items", items);
+        event.put("empty", new LinkedHashMap<String, Object>());
+        return event;
+    }
+
+    // what the event reads back as, the same for every format
+    private static Map<String, Object> expectedEvent() {
+        Map<String, Object> card = new LinkedHashMap<String, Object>();
+        card.put("type", "visa");
+        card.put("issued", "2021-03-04T05:06:07.089+0000");
+        List<Object> items = new ArrayList<Object>();
+        items.add("book");
+        items.add(Arrays.asList(1, 2.5, true));
+        items.add(card);
+
+        Map<String, Object> event = new LinkedHashMap<String, Object>();
+        event.put("name", "purchase");
+        event.put("amount", 42.5);
+        event.put("count", 3);
+        event.put("big", 1L << 40);
+        event.put("gift", false);
+        event.put("note", null);
+        event.put("card", card);
+        event.put("items", items);
+        event.put("empty", new LinkedHashMap<String, Object>());
+        return event;
+    }
+}
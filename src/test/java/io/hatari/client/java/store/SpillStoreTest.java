@@ -0,0 +1,149 @@
+package io.hatari.client.java.store;
+
+import io.hatari.client.java.HatariClient;
+import io.hatari.client.java.io.HatariResponse;
+import io.hatari.client.java.io.HatariTransport;
+import io.hatari.client.java.io.RecordingTransport;
+import io.hatari.client.java.io.RequestBody;
+import io.hatari.client.java.io.RetryPolicy;
+import io.hatari.client.java.metrics.EventOutcome;
+import io.hatari.client.java.util.HatariConstants;
+import io.hatari.client.java.util.UploadResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Events kept in a spill directory: aging out a full collection, and replaying what a previous store left behind.
+ */
+class SpillStoreTest {
+
+    @TempDir
+    File spillDirectory;
+
+    private final List<HatariClient> clients = new ArrayList<HatariClient>();
+
+    @AfterEach
+    void tearDown() {
+        for (HatariClient client : clients) {
+            client.close();
+        }
+    }
+
+    @Test
+    void agesOutEventsBehindBatchInFlight() throws Exception {
+        final CountDownLatch sent = new CountDownLatch(1);
+        final CountDownLatch answer = new CountDownLatch(1);
+        final RecordingTransport recorder = new RecordingTransport();
+        HatariClient client = newClient(new HatariTransport() {
+            @Override
+            public HatariResponse post(String url, Map<String, String> headers, RequestBody body)
+                    throws IOException {
+                sent.countDown();
+                try {
+                    // hold the first batch until the collection is full
+                    answer.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return recorder.post(url, headers, body);
+            }
+        });
+        client.setSpillDirectory(spillDirectory);
+
+        CompletableFuture<UploadResult> first = client.addEventAsync("purchases", event(0));
+        assertTrue(sent.await(10, TimeUnit.SECONDS));
+        List<CompletableFuture<UploadResult>> later = new ArrayList<CompletableFuture<UploadResult>>();
+        for (int i = 1; i <= HatariConstants.MAX_EVENTS_PER_COLLECTION; i++) {
+            later.add(client.addEventAsync("purchases", event(i)));
+        }
+
+        // the event in flight is left alone, the oldest ones after it make room
+        assertFalse(first.isDone());
+        for (int i = 0; i < HatariConstants.NUMBER_EVENTS_TO_FORGET; i++) {
+            assertFalse(later.get(i).get(10, TimeUnit.SECONDS).isSuccess());
+        }
+        assertFalse(later.get(HatariConstants.NUMBER_EVENTS_TO_FORGET).isDone());
+        assertEquals(HatariConstants.NUMBER_EVENTS_TO_FORGET,
+                client.getMetrics().getEventCount("purchases", EventOutcome.DROPPED));
+
+        answer.countDown();
+        assertTrue(client.flush(30000));
+        assertTrue(first.get(10, TimeUnit.SECONDS).isSuccess());
+        for (int i = HatariConstants.NUMBER_EVENTS_TO_FORGET; i < later.size(); i++) {
+            assertTrue(later.get(i).get(10, TimeUnit.SECONDS).isSuccess());
+        }
+        assertEquals(HatariConstants.NUMBER_EVENTS_TO_FORGET,
+                client.getMetrics().getEventCount("purchases", EventOutcome.DROPPED));
+
+        // every event was sent once, except the aged out ones, which weren't sent at all
+        List<Object> numbers = sentNumbers(recorder);
+        assertEquals(1 + HatariConstants.MAX_EVENTS_PER_COLLECTION - HatariConstants.NUMBER_EVENTS_TO_FORGET,
+                numbers.size());
+        assertEquals(0, numbers.get(0));
+        assertEquals(HatariConstants.NUMBER_EVENTS_TO_FORGET + 1, numbers.get(1));
+    }
+
+    @Test
+    void replaysEventsAfterReopening() throws Exception {
+        // the API is down, so the events stay on disk
+        HatariClient failing = newClient(new HatariTransport() {
+            @Override
+            public HatariResponse post(String url, Map<String, String> headers, RequestBody body) {
+                return new HatariResponse(503, "", null);
+            }
+        });
+        failing.setRetryPolicy(new RetryPolicy(1, 10, 10));
+        failing.setSpillDirectory(spillDirectory);
+        for (int i = 0; i < 3; i++) {
+            failing.addEventAsync("purchases", event(i));
+        }
+        failing.setSpillDirectory(null);
+
+        RecordingTransport recorder = new RecordingTransport();
+        HatariClient client = newClient(recorder);
+        client.setSpillDirectory(spillDirectory);
+
+        assertTrue(client.flush(10000));
+        List<Object> numbers = sentNumbers(recorder);
+        assertEquals(3, numbers.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, numbers.get(i));
+        }
+    }
+
+    private HatariClient newClient(HatariTransport transport) {
+        HatariClient client = new HatariClient("project", "key");
+        client.setTransport(transport);
+        clients.add(client);
+        return client;
+    }
+
+    private static List<Object> sentNumbers(RecordingTransport recorder) throws IOException {
+        List<Object> numbers = new ArrayList<Object>();
+        for (RecordingTransport.Request request : recorder.getRequests()) {
+            for (Object event : (List<?>) request.decode().get("purchases")) {
+                numbers.add(((Map<?, ?>) event).get("number"));
+            }
+        }
+        return numbers;
+    }
+
+    private static Map<String, Object> event(int number) {
+        return Collections.<String, Object>singletonMap("number", number);
+    }
+}
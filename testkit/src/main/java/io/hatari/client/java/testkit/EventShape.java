@@ -0,0 +1,98 @@
+package io.hatari.client.java.testkit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The shapes of events the {@link LoadGenerator} sends, modelled on the ones we see in production. Values vary from
+ * event to event, so a duplicate filter or compression don't see the same bytes over and over.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public enum EventShape {
+
+    /**
+     * A handful of flat properties, like a page view.
+     */
+    SMALL {
+        @Override
+        public Map<String, Object> newEvent() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Map<String, Object> event = new HashMap<String, Object>();
+            event.put("user_id", "u-" + Long.toHexString(random.nextLong()));
+            event.put("page", "/products/" + random.nextInt(1000));
+            event.put("duration_ms", random.nextInt(10000));
+            return event;
+        }
+    },
+
+    /**
+     * A typical transaction: a dozen flat properties and one small nested object.
+     */
+    TYPICAL {
+        @Override
+        public Map<String, Object> newEvent() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Map<String, Object> card = new HashMap<String, Object>();
+            card.put("type", random.nextBoolean() ? "visa" : "mastercard");
+            card.put("bin", String.valueOf(400000 + random.nextInt(100000)));
+            card.put("country", "DE");
+
+            Map<String, Object> event = new HashMap<String, Object>();
+            event.put("transaction_id", "tx-" + Long.toHexString(random.nextLong()));
+            event.put("user_id", "u-" + Long.toHexString(random.nextLong()));
+            event.put("amount", random.nextInt(100000) / 100.0);
+            event.put("currency", "EUR");
+            event.put("items", 1 + random.nextInt(10));
+            event.put("ip", "203.0.113." + random.nextInt(256));
+            event.put("user_agent", "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)");
+            event.put("email_domain", "example.com");
+            event.put("first_purchase", random.nextInt(10) == 0);
+            event.put("created_at", new Date());
+            event.put("tags", Arrays.asList("web", "checkout", "promo"));
+            event.put("card", card);
+            return event;
+        }
+    },
+
+    /**
+     * A typical transaction plus a basket of 100 line items, some 10KB as JSON.
+     */
+    LARGE {
+        @Override
+        public Map<String, Object> newEvent() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Map<String, Object> event = TYPICAL.newEvent();
+            List<Object> basket = new ArrayList<Object>();
+            for (int i = 0; i < 100; i++) {
+                Map<String, Object> item = new HashMap<String, Object>();
+                item.put("sku", "sku-" + random.nextInt(100000));
+                item.put("name", "Item number " + i + " with a reasonably descriptive name");
+                item.put("price", random.nextInt(10000) / 100.0);
+                item.put("quantity", 1 + random.nextInt(3));
+                basket.add(item);
+            }
+            event.put("basket", basket);
+            return event;
+        }
+    };
+
+    /**
+     * @return a new event of this shape, which the caller may change.
+     */
+    public abstract Map<String, Object> newEvent();
+
+    /**
+     * @return the shape with the given name, in any case.
+     */
+    public static EventShape forName(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,427 @@
+package io.hatari.client.java.testkit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.hatari.client.java.HatariClient;
+import io.hatari.client.java.io.WireFormat;
+import io.hatari.client.java.util.HatariConstants;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An in-process stand-in for the Hatari API's event endpoints, for tests, soak tests and benchmarks that must not
+ * reach <code>api.hatario.io</code>. Point a client at it with {@link HatariClient#setEndpoints(String...)}.
+ * <p/>
+ * It answers <code>POST /1/events/{project}</code> and <code>POST /1/events/{project}/batch</code> the way the API
+ * does, decoding bodies by their <code>Content-Type</code> and <code>Content-Encoding</code>, and answers formats
+ * it wasn't told to accept with <code>415 Unsupported Media Type</code>. Faults can be injected with a given
+ * probability per request: latency, server errors, <code>429 Too Many Requests</code> with a
+ * <code>Retry-After</code> header, and connections closed without an answer.
+ * <p/>
+ * It counts requests, bytes, answers by status code and events, tells events apart by their <code>hatari.id</code>
+ * to count duplicates, and keeps the first {@link #setRecordLimit(int) few} events it accepted for inspection.
+ * <p/>
+ * Example usage:
+ * <pre>
+ * HatariStubServer server = new HatariStubServer();
+ * server.setErrorRate(0.1);
+ * client.setEndpoints(server.getAddress());
+ * ...
+ * server.awaitEvents(1000, 10000);
+ * </pre>
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public class HatariStubServer implements Closeable {
+
+    private static final byte[] CREATED = "{\"created\": true}".getBytes();
+    private static final Map<String, Object> SUCCESS = Collections.<String, Object>singletonMap("success", true);
+    private static final String EVENTS_PATH = "/" + HatariConstants.API_VERSION + "/events/";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private volatile List<WireFormat> acceptedFormats = Arrays.asList(WireFormat.JSON, WireFormat.SMILE,
+            WireFormat.CBOR);
+    private volatile long minLatencyMillis;
+    private volatile long maxLatencyMillis;
+    private volatile double errorRate;
+    private volatile int errorStatusCode = 503;
+    private volatile double throttleRate;
+    private volatile long retryAfterSeconds = 1;
+    private volatile double dropRate;
+    private volatile int recordLimit = 100000;
+    private volatile boolean duplicateTracking = true;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong droppedConnections = new AtomicLong();
+    private final ConcurrentHashMap<Integer, AtomicLong> responses = new ConcurrentHashMap<Integer, AtomicLong>();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong duplicateEvents = new AtomicLong();
+    private final Set<String> eventIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ConcurrentLinkedQueue<ReceivedEvent> recordedEvents = new ConcurrentLinkedQueue<ReceivedEvent>();
+    private final AtomicInteger recordedCount = new AtomicInteger();
+
+    /**
+     * Starts a server on a free port of the loopback interface.
+     */
+    public HatariStubServer() throws IOException {
+        this("127.0.0.1", 0);
+    }
+
+    /**
+     * Starts a server, e.g. on all interfaces to take load from other machines.
+     *
+     * @param host The address to listen on.
+     * @param port The port to listen on, or 0 for a free one.
+     */
+    public HatariStubServer(String host, int port) throws IOException {
+        // otherwise Nagle's algorithm holds back the response body and every request takes ~40ms
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        // injected latency blocks a thread per request, so the pool grows with the requests in flight
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "hatari-stub-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    respond(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @return the address to send requests to, e.g. <code>http://127.0.0.1:54321</code>.
+     */
+    public String getAddress() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Limits the formats the server accepts, e.g. to see a client fall back to JSON. All three are accepted by
+     * default.
+     */
+    public void setAcceptedFormats(WireFormat... acceptedFormats) {
+        this.acceptedFormats = Arrays.asList(acceptedFormats);
+    }
+
+    /**
+     * Delays every answer by a random time between the two, the same for all answers if they are equal.
+     */
+    public void setLatency(long minLatencyMillis, long maxLatencyMillis) {
+        if (minLatencyMillis < 0 || maxLatencyMillis < minLatencyMillis) {
+            throw new IllegalArgumentException("Invalid latency range: " + minLatencyMillis + "-" + maxLatencyMillis);
+        }
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    /**
+     * Answers requests with <code>503 Service Unavailable</code> with the given probability.
+     */
+    public void setErrorRate(double errorRate) {
+        setErrorRate(errorRate, 503);
+    }
+
+    /**
+     * Answers requests with the given status code with the given probability, e.g. 500 or 400.
+     */
+    public void setErrorRate(double errorRate, int statusCode) {
+        this.errorRate = checkRate(errorRate);
+        this.errorStatusCode = statusCode;
+    }
+
+    /**
+     * Answers requests with <code>429 Too Many Requests</code> and a <code>Retry-After</code> header with the given
+     * probability.
+     */
+    public void setThrottleRate(double throttleRate, long retryAfterSeconds) {
+        this.throttleRate = checkRate(throttleRate);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Closes the connection of requests without an answer with the given probability, after reading the body.
+     */
+    public void setDropRate(double dropRate) {
+        this.dropRate = checkRate(dropRate);
+    }
+
+    /**
+     * Sets how many accepted events are kept for {@link #getReceivedEvents()}, 100,000 by default. Events beyond
+     * that are still counted.
+     */
+    public void setRecordLimit(int recordLimit) {
+        this.recordLimit = recordLimit;
+    }
+
+    /**
+     * Sets whether the ids of accepted events are kept to tell duplicates apart, which it does by default. At some
+     * 100 bytes per event, long soak tests may rather not; events are then all counted as accepted.
+     */
+    public void setDuplicateTracking(boolean duplicateTracking) {
+        this.duplicateTracking = duplicateTracking;
+    }
+
+    /**
+     * @return how many requests the server received, whatever it answered.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return how many bytes of request bodies the server received, as they were sent.
+     */
+    public long getRequestBytes() {
+        return requestBytes.get();
+    }
+
+    /**
+     * @return how many requests were answered with the status code.
+     */
+    public long getResponseCount(int statusCode) {
+        AtomicLong count = responses.get(statusCode);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return how many connections were closed without an answer.
+     */
+    public long getDroppedConnectionCount() {
+        return droppedConnections.get();
+    }
+
+    /**
+     * @return how many events the server accepted, counting each id once unless duplicates aren't tracked.
+     */
+    public long getEventCount() {
+        return events.get();
+    }
+
+    /**
+     * @return how many events the server accepted again, with an id it had accepted before.
+     */
+    public long getDuplicateEventCount() {
+        return duplicateEvents.get();
+    }
+
+    /**
+     * @return the first events the server accepted, in the order it accepted them, up to the record limit.
+     */
+    public List<ReceivedEvent> getReceivedEvents() {
+        return new ArrayList<ReceivedEvent>(recordedEvents);
+    }
+
+    /**
+     * Waits until the server accepted the given number of distinct events.
+     *
+     * @return false if the timeout passed first.
+     */
+    public boolean awaitEvents(long count, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (events.get() < count) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    /**
+     * Forgets everything that was counted and recorded, but not the faults.
+     */
+    public void reset() {
+        requests.set(0);
+        requestBytes.set(0);
+        droppedConnections.set(0);
+        responses.clear();
+        events.set(0);
+        duplicateEvents.set(0);
+        eventIds.clear();
+        recordedEvents.clear();
+        recordedCount.set(0);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        // drain the request so the connection can be kept alive
+        byte[] body = readBody(exchange.getRequestBody());
+        requests.incrementAndGet();
+        requestBytes.addAndGet(body.length);
+
+        long latencyMillis = minLatencyMillis == maxLatencyMillis ? minLatencyMillis
+                : ThreadLocalRandom.current().nextLong(minLatencyMillis, maxLatencyMillis + 1);
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                // the server is closing
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        String path = exchange.getRequestURI().getPath();
+        if (!"POST".equals(exchange.getRequestMethod()) || !path.startsWith(EVENTS_PATH)) {
+            send(exchange, 404, null);
+            return;
+        }
+        double dice = ThreadLocalRandom.current().nextDouble();
+        if (dice < dropRate) {
+            // closing the exchange before answering closes the connection
+            droppedConnections.incrementAndGet();
+            return;
+        }
+        if (dice < dropRate + throttleRate) {
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+            send(exchange, 429, null);
+            return;
+        }
+        if (dice < dropRate + throttleRate + errorRate) {
+            send(exchange, errorStatusCode, null);
+            return;
+        }
+
+        WireFormat format = WireFormat.forContentType(exchange.getRequestHeaders().getFirst("Content-Type"));
+        if (format == null || !acceptedFormats.contains(format)) {
+            send(exchange, 415, null);
+            return;
+        }
+        if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            body = readBody(new GZIPInputStream(new ByteArrayInputStream(body)));
+        }
+        Map<String, Object> decoded = decode(format, body);
+        if (decoded == null) {
+            send(exchange, 400, null);
+            return;
+        }
+        boolean batch = path.endsWith("/batch");
+        String project = path.substring(EVENTS_PATH.length(), batch ? path.length() - "/batch".length()
+                : path.length());
+        if (batch) {
+            send(exchange, 200, batchResults(project, decoded));
+        } else {
+            accept(project, project, decoded);
+            send(exchange, 201, CREATED);
+        }
+    }
+
+    private void send(HttpExchange exchange, int statusCode, byte[] response) throws IOException {
+        AtomicLong count = responses.get(statusCode);
+        if (count == null) {
+            AtomicLong existing = responses.putIfAbsent(statusCode, count = new AtomicLong());
+            count = existing == null ? count : existing;
+        }
+        count.incrementAndGet();
+        if (response == null) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, response.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(response);
+        out.close();
+    }
+
+    private void accept(String project, String eventCollection, Map<String, Object> event) {
+        ReceivedEvent received = new ReceivedEvent(project, eventCollection, event, System.currentTimeMillis());
+        String id = received.getId();
+        if (id != null && duplicateTracking && !eventIds.add(id)) {
+            duplicateEvents.incrementAndGet();
+            return;
+        }
+        events.incrementAndGet();
+        if (recordedCount.get() < recordLimit && recordedCount.incrementAndGet() <= recordLimit) {
+            recordedEvents.add(received);
+        }
+    }
+
+    // one success per event, under the collection the events came in
+    @SuppressWarnings("unchecked")
+    private byte[] batchResults(String project, Map<String, Object> batch) throws IOException {
+        Map<Object, Object> results = new HashMap<Object, Object>();
+        for (Map.Entry<String, Object> collection : batch.entrySet()) {
+            List<Object> successes = new ArrayList<Object>();
+            for (Object event : (List<Object>) collection.getValue()) {
+                accept(project, collection.getKey(), (Map<String, Object>) event);
+                successes.add(SUCCESS);
+            }
+            results.put(collection.getKey(), successes);
+        }
+        return HatariClient.MAPPER.writeValueAsBytes(results);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> decode(WireFormat format, byte[] body) {
+        try {
+            return format.readValue(body, Map.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+        }
+        in.close();
+        return body.toByteArray();
+    }
+
+    private static double checkRate(double rate) {
+        if (!(rate >= 0 && rate <= 1)) {
+            throw new IllegalArgumentException("A rate must be between 0 and 1: " + rate);
+        }
+        return rate;
+    }
+}
@@ -0,0 +1,367 @@
+package io.hatari.client.java.testkit;
+
+import io.hatari.client.java.HatariClient;
+import io.hatari.client.java.exceptions.HatariException;
+import io.hatari.client.java.io.AdaptiveConcurrencyLimit;
+import io.hatari.client.java.io.WireFormat;
+import io.hatari.client.java.metrics.LatencyHistogram;
+import io.hatari.client.java.util.UploadEventCallback;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a {@link HatariClient} with generated events from a number of threads, against a {@link HatariStubServer}
+ * in the same process or a server given by address, and reports what it took:
+ * <ul>
+ * <li>throughput, of events added and of events the server acknowledged;</li>
+ * <li>percentiles of the time <code>addEvent</code> took, and of the time from adding an event to its callback
+ * hearing it was delivered;</li>
+ * <li>allocation rate and garbage collection of the whole process;</li>
+ * <li>loss: events that were added but failed or never heard back from, and, with the embedded server, that never
+ * arrived there.</li>
+ * </ul>
+ * With a rate, each thread adds events on a fixed schedule and latencies count from when an event was due, so a
+ * stalled client shows up as latency instead of as a lower rate. Without one, threads add events as fast as they
+ * can. Nothing is measured during the warmup, but its events count towards loss.
+ * <p/>
+ * Options are given as <code>--name=value</code>; run with <code>--help</code> for the list. The process exits with
+ * 1 if events were lost, and with 2 if the acknowledged throughput stayed below <code>--min-throughput</code>.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class LoadGenerator {
+
+    private static final String USAGE = "Usage: java -jar hatari-java-testkit-1.0-cli.jar [--name=value ...]\n"
+            + "\n"
+            + "  --address=URL            send to this server instead of an embedded stub server\n"
+            + "  --project=ID             the project key (default: load-test)\n"
+            + "  --duration=SECONDS       how long to measure (default: 30)\n"
+            + "  --warmup=SECONDS         how long to run before measuring (default: 5)\n"
+            + "  --threads=N              threads adding events (default: 4)\n"
+            + "  --rate=N                 events per second over all threads, 0 for as fast as possible (default: 0)\n"
+            + "  --shape=NAME             small, typical or large (default: typical)\n"
+            + "  --collections=N          collections to spread the events over (default: 1)\n"
+            + "  --batching=BOOL          send events in batches (default: false)\n"
+            + "  --compression=BOOL       gzip request bodies (default: false)\n"
+            + "  --pipeline=BOOL          add events through the event pipeline (default: false)\n"
+            + "  --format=NAME            json, smile or cbor (default: json)\n"
+            + "  --concurrency=N          a fixed limit of uploads in flight, 0 for the adaptive one (default: 0)\n"
+            + "  --flush-timeout=SECONDS  how long to wait for the last events (default: 30)\n"
+            + "  --min-throughput=N       fail unless this many events per second were acknowledged (default: 0)\n"
+            + "  --json=BOOL              also print the results as one line of JSON (default: false)\n"
+            + "\n"
+            + "The embedded stub server:\n"
+            + "  --count-duplicates=BOOL  keep every event id to count duplicates (default: true)\n"
+            + "  --latency=MIN[-MAX]      milliseconds to delay every answer by (default: 0)\n"
+            + "  --error-rate=P           share of requests answered with 503 (default: 0)\n"
+            + "  --throttle-rate=P        share of requests answered with 429 (default: 0)\n"
+            + "  --drop-rate=P            share of connections closed without an answer (default: 0)\n";
+
+    private final Map<String, String> options;
+    private final AtomicLong added = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong acknowledged = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong measuredAdded = new AtomicLong();
+    private final AtomicLong measuredAcknowledged = new AtomicLong();
+    private volatile boolean measuring;
+    private volatile boolean running = true;
+    private volatile LatencyHistogram addLatencies = new LatencyHistogram();
+    private volatile LatencyHistogram deliveryLatencies = new LatencyHistogram();
+
+    LoadGenerator(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            if (arg.equals("--help") || arg.equals("-h")) {
+                System.out.print(USAGE);
+                return;
+            }
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                System.err.println("Unknown argument: " + arg);
+                System.err.print(USAGE);
+                System.exit(64);
+            }
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        System.exit(new LoadGenerator(options).run());
+    }
+
+    int run() throws Exception {
+        final long durationSeconds = getLong("duration", 30);
+        long warmupSeconds = getLong("warmup", 5);
+        int threads = (int) getLong("threads", 4);
+        double rate = getDouble("rate", 0);
+        final EventShape shape = EventShape.forName(getString("shape", "typical"));
+        final int collections = (int) getLong("collections", 1);
+        String format = getString("format", "json");
+        WireFormat wireFormat = "smile".equals(format) ? WireFormat.SMILE
+                : "cbor".equals(format) ? WireFormat.CBOR : WireFormat.JSON;
+
+        HatariStubServer server = null;
+        String address = options.get("address");
+        if (address == null) {
+            server = new HatariStubServer();
+            server.setRecordLimit(0);
+            server.setDuplicateTracking(getBoolean("count-duplicates", true));
+            String[] latency = getString("latency", "0").split("-");
+            server.setLatency(Long.parseLong(latency[0]), Long.parseLong(latency[latency.length - 1]));
+            server.setErrorRate(getDouble("error-rate", 0));
+            server.setThrottleRate(getDouble("throttle-rate", 0), 1);
+            server.setDropRate(getDouble("drop-rate", 0));
+            address = server.getAddress();
+        }
+
+        final HatariClient client = new HatariClient(getString("project", "load-test"), "load-test-key");
+        client.setEndpoints(address);
+        client.setWireFormat(wireFormat);
+        client.setBatchingEnabled(getBoolean("batching", false));
+        client.setCompressionEnabled(getBoolean("compression", false));
+        client.setPipelineEnabled(getBoolean("pipeline", false));
+        int concurrency = (int) getLong("concurrency", 0);
+        if (concurrency > 0) {
+            client.setConcurrencyLimit(AdaptiveConcurrencyLimit.fixed(concurrency));
+        }
+        System.out.printf(Locale.ROOT, "Sending %s events to %s for %ds after a %ds warmup, %d threads, %s%n",
+                shape.name().toLowerCase(Locale.ROOT), address, durationSeconds, warmupSeconds, threads,
+                rate > 0 ? rate + " events/s" : "as fast as possible");
+
+        final long intervalNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * threads / rate) : 0;
+        Thread[] generators = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            generators[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    generate(client, shape, collections, intervalNanos);
+                }
+            }, "load-generator-" + (i + 1));
+            generators[i].start();
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+        addLatencies = new LatencyHistogram();
+        deliveryLatencies = new LatencyHistogram();
+        ResourceUsage before = ResourceUsage.now();
+        long start = System.nanoTime();
+        measuring = true;
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        measuring = false;
+        long elapsedNanos = System.nanoTime() - start;
+        ResourceUsage after = ResourceUsage.now();
+        running = false;
+        for (Thread generator : generators) {
+            generator.join();
+        }
+
+        boolean flushed = client.flush(TimeUnit.SECONDS.toMillis(getLong("flush-timeout", 30)));
+        client.close();
+        long received = -1;
+        long duplicates = -1;
+        if (server != null) {
+            received = server.getEventCount();
+            duplicates = server.getDuplicateEventCount();
+            server.close();
+        }
+
+        double seconds = elapsedNanos / 1e9;
+        double addedPerSecond = measuredAdded.get() / seconds;
+        double acknowledgedPerSecond = measuredAcknowledged.get() / seconds;
+        long unanswered = added.get() - acknowledged.get() - failed.get();
+        long lost = added.get() - acknowledged.get();
+        if (server != null) {
+            // the callbacks may have missed an answer the server sent, but not the other way round
+            lost = Math.max(lost, added.get() - received);
+        }
+        LatencyHistogram.Snapshot addSnapshot = addLatencies.snapshot();
+        LatencyHistogram.Snapshot deliverySnapshot = deliveryLatencies.snapshot();
+        double allocationRate = after.allocatedBytes < 0 ? -1
+                : (after.allocatedBytes - before.allocatedBytes) / seconds;
+
+        System.out.printf(Locale.ROOT, "%nThroughput%n");
+        System.out.printf(Locale.ROOT, "  added         %12.0f events/s%n", addedPerSecond);
+        System.out.printf(Locale.ROOT, "  acknowledged  %12.0f events/s%n", acknowledgedPerSecond);
+        System.out.printf(Locale.ROOT, "%nLatency (us)        p50        p90        p99      p99.9        max%n");
+        printLatencies("  addEvent", addSnapshot);
+        printLatencies("  delivery", deliverySnapshot);
+        System.out.printf(Locale.ROOT, "%nResources%n");
+        System.out.printf(Locale.ROOT, "  allocation    %12.1f MB/s%n", allocationRate / (1024 * 1024));
+        System.out.printf(Locale.ROOT, "  gc            %12d collections, %d ms%n",
+                after.gcCount - before.gcCount, after.gcMillis - before.gcMillis);
+        System.out.printf(Locale.ROOT, "%nEvents%n");
+        System.out.printf(Locale.ROOT, "  added         %12d%n", added.get());
+        System.out.printf(Locale.ROOT, "  rejected      %12d (addEvent threw)%n", rejected.get());
+        System.out.printf(Locale.ROOT, "  acknowledged  %12d%n", acknowledged.get());
+        System.out.printf(Locale.ROOT, "  failed        %12d%n", failed.get());
+        System.out.printf(Locale.ROOT, "  unanswered    %12d%s%n", unanswered, flushed ? "" : " (the flush timed out)");
+        if (server != null) {
+            System.out.printf(Locale.ROOT, "  received      %12d%n", received);
+            System.out.printf(Locale.ROOT, "  duplicates    %12d%n", duplicates);
+        }
+        System.out.printf(Locale.ROOT, "  lost          %12d%n", lost);
+
+        if (getBoolean("json", false)) {
+            Map<String, Object> results = new HashMap<String, Object>();
+            results.put("added_per_second", addedPerSecond);
+            results.put("acknowledged_per_second", acknowledgedPerSecond);
+            results.put("add_latency_micros", percentiles(addSnapshot));
+            results.put("delivery_latency_micros", percentiles(deliverySnapshot));
+            results.put("allocation_bytes_per_second", allocationRate);
+            results.put("gc_count", after.gcCount - before.gcCount);
+            results.put("gc_millis", after.gcMillis - before.gcMillis);
+            results.put("added", added.get());
+            results.put("rejected", rejected.get());
+            results.put("acknowledged", acknowledged.get());
+            results.put("failed", failed.get());
+            results.put("unanswered", unanswered);
+            results.put("lost", lost);
+            if (server != null) {
+                results.put("received", received);
+                results.put("duplicates", duplicates);
+            }
+            System.out.println(HatariClient.MAPPER.writeValueAsString(results));
+        }
+
+        if (lost > 0) {
+            return 1;
+        }
+        return acknowledgedPerSecond < getDouble("min-throughput", 0) ? 2 : 0;
+    }
+
+    private void generate(HatariClient client, EventShape shape, int collections, long intervalNanos) {
+        long due = System.nanoTime();
+        int sequence = 0;
+        while (running) {
+            if (intervalNanos > 0) {
+                due += intervalNanos;
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            } else {
+                due = System.nanoTime();
+            }
+            Map<String, Object> event = shape.newEvent();
+            String collection = "load_" + (sequence++ % collections);
+            boolean measured = measuring;
+            try {
+                client.addEvent(collection, event, null, new DeliveryCallback(due, measured));
+                addLatencies.record(System.nanoTime() - due);
+                added.incrementAndGet();
+                if (measured) {
+                    measuredAdded.incrementAndGet();
+                }
+            } catch (HatariException e) {
+                rejected.incrementAndGet();
+            }
+        }
+    }
+
+    private static void printLatencies(String name, LatencyHistogram.Snapshot snapshot) {
+        System.out.printf(Locale.ROOT, "%-12s %10.1f %10.1f %10.1f %10.1f %10.1f%n", name,
+                snapshot.getPercentile(50) / 1e3, snapshot.getPercentile(90) / 1e3,
+                snapshot.getPercentile(99) / 1e3, snapshot.getPercentile(99.9) / 1e3, snapshot.getMax() / 1e3);
+    }
+
+    private static Map<String, Object> percentiles(LatencyHistogram.Snapshot snapshot) {
+        Map<String, Object> percentiles = new HashMap<String, Object>();
+        percentiles.put("p50", snapshot.getPercentile(50) / 1e3);
+        percentiles.put("p90", snapshot.getPercentile(90) / 1e3);
+        percentiles.put("p99", snapshot.getPercentile(99) / 1e3);
+        percentiles.put("p99.9", snapshot.getPercentile(99.9) / 1e3);
+        percentiles.put("max", snapshot.getMax() / 1e3);
+        return percentiles;
+    }
+
+    private String getString(String name, String defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private long getLong(String name, long defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    private double getDouble(String name, double defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    private boolean getBoolean(String name, boolean defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    private class DeliveryCallback implements UploadEventCallback {
+        private final long dueNanos;
+        private final boolean measured;
+
+        private DeliveryCallback(long dueNanos, boolean measured) {
+            this.dueNanos = dueNanos;
+            this.measured = measured;
+        }
+
+        @Override
+        public void onSuccess() {
+            acknowledged.incrementAndGet();
+            if (measured) {
+                deliveryLatencies.record(System.nanoTime() - dueNanos);
+            }
+            // throughput counts what was acknowledged in the window, whenever it was added
+            if (measuring) {
+                measuredAcknowledged.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onError(String responseBody) {
+            failed.incrementAndGet();
+        }
+    }
+
+    // what the whole process used so far, allocation as far as the JVM can tell per thread
+    private static final class ResourceUsage {
+        private final long allocatedBytes;
+        private final long gcCount;
+        private final long gcMillis;
+
+        private ResourceUsage(long allocatedBytes, long gcCount, long gcMillis) {
+            this.allocatedBytes = allocatedBytes;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        private static ResourceUsage now() {
+            long allocatedBytes = -1;
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean) {
+                // threads that end in between take their allocations with them, so this is a lower bound
+                allocatedBytes = 0;
+                for (long allocated : ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(
+                        threads.getAllThreadIds())) {
+                    allocatedBytes += Math.max(allocated, 0);
+                }
+            }
+            long gcCount = 0;
+            long gcMillis = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(collector.getCollectionCount(), 0);
+                gcMillis += Math.max(collector.getCollectionTime(), 0);
+            }
+            return new ResourceUsage(allocatedBytes, gcCount, gcMillis);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package io.hatari.client.java.testkit;
+
+import java.util.Map;
+
+/**
+ * An event a {@link HatariStubServer} accepted, as it was decoded from the request.
+ *
+ * @author Ebot Tabi
+ * @since 1.1.0
+ */
+public final class ReceivedEvent {
+
+    private final String project;
+    private final String eventCollection;
+    private final Map<String, Object> event;
+    private final long receivedAtMillis;
+
+    ReceivedEvent(String project, String eventCollection, Map<String, Object> event, long receivedAtMillis) {
+        this.project = project;
+        this.eventCollection = eventCollection;
+        this.event = event;
+        this.receivedAtMillis = receivedAtMillis;
+    }
+
+    /**
+     * @return the project from the request path.
+     */
+    public String getProject() {
+        return project;
+    }
+
+    /**
+     * @return the collection a batch named the event under, or the project for events sent one by one.
+     */
+    public String getEventCollection() {
+        return eventCollection;
+    }
+
+    /**
+     * @return the event's properties, including the <code>hatari</code> block.
+     */
+    public Map<String, Object> getEvent() {
+        return event;
+    }
+
+    /**
+     * @return the idempotency id the client gave the event, or null if it has none.
+     */
+    public String getId() {
+        Object hatari = event.get("hatari");
+        Object id = hatari instanceof Map ? ((Map<?, ?>) hatari).get("id") : null;
+        return id == null ? null : id.toString();
+    }
+
+    public long getReceivedAtMillis() {
+        return receivedAtMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ReceivedEvent{collection=" + eventCollection + ", event=" + event + "}";
+    }
+}